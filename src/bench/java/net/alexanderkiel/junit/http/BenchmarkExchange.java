@@ -0,0 +1,148 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+/**
+ * An exchange without a connection which discards the response, so that benchmarks measure the handlers only.
+ * <p/>
+ * Call {@link #reset()} before each use.
+ *
+ * @author Alexander Kiel
+ */
+class BenchmarkExchange extends HttpExchange {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", 0);
+
+    private final String method;
+    private final URI uri;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders;
+    private final DiscardingOutputStream responseBody;
+    private int responseCode;
+
+    BenchmarkExchange(String method, URI uri) {
+        this.method = method;
+        this.uri = uri;
+        requestHeaders = new Headers();
+        responseHeaders = new Headers();
+        responseBody = new DiscardingOutputStream();
+    }
+
+    void reset() {
+        responseHeaders.clear();
+        responseBody.count = 0;
+        responseCode = -1;
+    }
+
+    /**
+     * Returns the number of response body bytes written since the last reset.
+     */
+    long getResponseBodyCount() {
+        return responseBody.count;
+    }
+
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    public String getRequestMethod() {
+        return method;
+    }
+
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    public void close() {
+    }
+
+    public InputStream getRequestBody() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        responseCode = rCode;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    public Object getAttribute(String name) {
+        return null;
+    }
+
+    public void setAttribute(String name, Object value) {
+    }
+
+    public void setStreams(InputStream i, OutputStream o) {
+    }
+
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
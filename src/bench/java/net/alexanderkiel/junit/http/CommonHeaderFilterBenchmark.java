@@ -0,0 +1,78 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link CommonHeaderFilter} takes to add the common headers to a response.
+ *
+ * @author Alexander Kiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonHeaderFilterBenchmark {
+
+    @Param({"0", "4", "16"})
+    private int headers;
+
+    private CommonHeaderFilter filter;
+    private HttpHandler handler;
+    private BenchmarkExchange exchange;
+
+    @Setup
+    public void setUp() {
+        filter = new CommonHeaderFilter();
+        for (int i = 0; i < headers; i++) {
+            filter.setHeader("X-Common-Header-" + i, "value-" + i);
+        }
+        handler = new HttpHandler() {
+            public void handle(HttpExchange httpExchange) throws IOException {
+            }
+        };
+        exchange = new BenchmarkExchange("GET", URI.create("/foo/bar"));
+    }
+
+    @Benchmark
+    public int doFilter() throws IOException {
+        exchange.reset();
+        filter.doFilter(exchange, new Filter.Chain(Collections.<Filter>emptyList(), handler));
+        return exchange.getResponseHeaders().size();
+    }
+}
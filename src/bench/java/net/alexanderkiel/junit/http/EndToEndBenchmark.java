@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+
+/**
+ * Measures throughput and latency of GET requests against a mock server on localhost at different concurrencies.
+ * <p/>
+ * The clients use keep-alive connections, so the numbers include request parsing, routing, the filters and
+ * response writing of the server but hardly any connection setup.
+ *
+ * @author Alexander Kiel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"jdk", "nio"})
+    private String engine;
+
+    @Param({"64", "65536"})
+    private int bodySize;
+
+    private HttpMockServer server;
+    private URL url;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpMock.create("localhost", 0, "/foo", "nio".equals(engine) ? HttpEngines.nio() : HttpEngines.jdk(),
+                ExecutorStrategies.fixedThreadPool(64));
+        server.given(GET, "bar").willRespond(GeneratedResponse.fixed(200, "text/plain", bodySize, (byte) 'x'));
+        server.start();
+        url = new URL(server.getBaseUri() + "/bar");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long get1() throws IOException {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long get8() throws IOException {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long get64() throws IOException {
+        return get();
+    }
+
+    /**
+     * Reads the whole body, which returns the connection to the keep-alive cache.
+     */
+    private long get() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        InputStream in = connection.getInputStream();
+        byte[] buffer = new byte[8192];
+        long count = 0;
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                count += length;
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+}
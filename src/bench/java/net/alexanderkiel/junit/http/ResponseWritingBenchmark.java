@@ -0,0 +1,156 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+
+/**
+ * Measures how long a mocking takes to write response bodies of different kinds and sizes into a discarding
+ * exchange.
+ *
+ * @author Alexander Kiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseWritingBenchmark {
+
+    @Param({"64", "65536", "4194304"})
+    private int bodySize;
+
+    private File file;
+    private ReadonlyOngoingMocking stringMocking;
+    private ReadonlyOngoingMocking fileMocking;
+    private ReadonlyOngoingMocking generatedMocking;
+    private ReadonlyOngoingMocking streamedMocking;
+    private BenchmarkExchange exchange;
+
+    @Setup
+    public void setUp() throws IOException {
+        char[] chars = new char[bodySize];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+
+        file = File.createTempFile("response-writing-benchmark", ".txt");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(body.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        stringMocking = mocking(new StringResponse(200, "text/plain", body));
+        fileMocking = mocking(new FileResponse(200, "text/plain", file));
+        generatedMocking = mocking(GeneratedResponse.fixed(200, "text/plain", bodySize, (byte) 'x'));
+        streamedMocking = mocking(new StreamedResponse(body.getBytes("UTF-8")));
+        exchange = new BenchmarkExchange("GET", URI.create("/foo/bar"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static ReadonlyOngoingMocking mocking(Response response) {
+        ReadonlyOngoingMocking mocking = new ReadonlyOngoingMocking(GET, "bar");
+        mocking.willRespond(response);
+        return mocking;
+    }
+
+    @Benchmark
+    public long stringResponse() throws IOException {
+        return handle(stringMocking);
+    }
+
+    @Benchmark
+    public long fileResponse() throws IOException {
+        return handle(fileMocking);
+    }
+
+    @Benchmark
+    public long generatedResponse() throws IOException {
+        return handle(generatedMocking);
+    }
+
+    @Benchmark
+    public long streamedResponse() throws IOException {
+        return handle(streamedMocking);
+    }
+
+    private long handle(ReadonlyOngoingMocking mocking) throws IOException {
+        exchange.reset();
+        mocking.handle(exchange);
+        return exchange.getResponseBodyCount();
+    }
+
+    /**
+     * A response which is neither byte nor buffer addressable and therefore copied from its stream.
+     */
+    private static class StreamedResponse extends BaseResponse {
+
+        private final byte[] body;
+
+        private StreamedResponse(byte[] body) {
+            super(200);
+            this.body = body;
+        }
+
+        public String getContentType() {
+            return "text/plain";
+        }
+
+        public boolean hasBody() {
+            return true;
+        }
+
+        public long getBodyLength() {
+            return body.length;
+        }
+
+        public InputStream getBodyInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
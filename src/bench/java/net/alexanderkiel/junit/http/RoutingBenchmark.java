@@ -0,0 +1,118 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+
+/**
+ * Measures how long {@link DefaultHandler} takes to dispatch a request to one of many registered paths or to one of
+ * many mockings of the same path which are distinguished by {@link RequestMatcher}s.
+ *
+ * @author Alexander Kiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int routes;
+
+    /**
+     * Keeps the logger with the changed level reachable. Otherwise the unknown path would log every request.
+     */
+    private Logger logger;
+    private DefaultHandler defaultHandler;
+    private BenchmarkExchange staticPath;
+    private BenchmarkExchange templatePath;
+    private BenchmarkExchange unknownPath;
+    private BenchmarkExchange queryVariant;
+    private int handled;
+
+    @Setup
+    public void setUp() {
+        logger = Logger.getLogger(DefaultHandler.class.getName());
+        logger.setLevel(Level.OFF);
+        defaultHandler = new DefaultHandler(URI.create("/foo"));
+        HttpHandler handler = new HttpHandler() {
+            public void handle(HttpExchange httpExchange) throws IOException {
+                handled++;
+            }
+        };
+        for (int i = 0; i < routes; i++) {
+            defaultHandler.registerSubHandler(GET, "resource-" + i + "/items", handler);
+            defaultHandler.registerSubHandler(GET, "template-" + i + "/{id}", handler);
+            defaultHandler.registerSubHandler(GET, "variants", Arrays.asList(RequestMatcher.query("id",
+                    String.valueOf(i)), RequestMatcher.header("Accept", "application/json")), handler);
+        }
+        int last = routes - 1;
+        staticPath = new BenchmarkExchange("GET", URI.create("/foo/resource-" + last + "/items"));
+        templatePath = new BenchmarkExchange("GET", URI.create("/foo/template-" + last + "/4711"));
+        unknownPath = new BenchmarkExchange("GET", URI.create("/foo/resource-" + routes + "/items"));
+        queryVariant = new BenchmarkExchange("GET", URI.create("/foo/variants?id=" + last));
+        queryVariant.getRequestHeaders().set("Accept", "application/json");
+    }
+
+    @Benchmark
+    public int staticPath() throws IOException {
+        defaultHandler.handle(staticPath);
+        return handled;
+    }
+
+    @Benchmark
+    public int templatePath() throws IOException {
+        defaultHandler.handle(templatePath);
+        return handled;
+    }
+
+    @Benchmark
+    public int queryVariant() throws IOException {
+        defaultHandler.handle(queryVariant);
+        return handled;
+    }
+
+    @Benchmark
+    public int unknownPath() throws IOException {
+        unknownPath.reset();
+        defaultHandler.handle(unknownPath);
+        return unknownPath.getResponseCode();
+    }
+}
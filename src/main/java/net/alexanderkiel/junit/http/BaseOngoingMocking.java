@@ -20,50 +20,379 @@ import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.FINER;
+import static org.junit.Assert.fail;
 
 /**
  * @author Alexander Kiel
  */
 abstract class BaseOngoingMocking implements OngoingMocking, HttpHandler {
 
-    static final int BUFFER_SIZE = 1024;
-
     private static final Logger LOGGER = Logger.getLogger(BaseOngoingMocking.class.getName());
     private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String VARY_HEADER = "Vary";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final Response UNAUTHORIZED = new EmptyResponse(401);
+    private static final Response FORBIDDEN = new EmptyResponse(403);
+
+    private final HttpMock.Method method;
+    private final String path;
+    private final StripedCounter callCounter;
+    private final CallSignal received;
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram handling;
+    private final LatencyHistogram bodyWrite;
+    private volatile List<RequestMatcher> matchers;
+    private volatile Responses responses;
+    private volatile Map<Response, CompiledHeaders> compiledHeaders;
+    private volatile BasicAuthToken basicAuthToken;
+    private volatile Latency latency;
+    private volatile boolean compression;
+    private final Throttle throttle;
+    private ResponseScheduler responseScheduler;
+    private Throttle serverThrottle;
+
+    BaseOngoingMocking(HttpMock.Method method, String path) {
+        this.method = method;
+        this.path = path;
+        matchers = Collections.emptyList();
+        compiledHeaders = Collections.emptyMap();
+        callCounter = new StripedCounter();
+        received = new CallSignal();
+        queueWait = new LatencyHistogram();
+        handling = new LatencyHistogram();
+        bodyWrite = new LatencyHistogram();
+        throttle = new Throttle();
+        serverThrottle = new Throttle();
+    }
+
+    HttpMock.Method getMethod() {
+        return method;
+    }
 
-    private final byte[] buffer;
-    private Response response;
-    private BasicAuthToken basicAuthToken;
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the matchers which select this mocking among other mockings of the same method and path. They only show up
+     * in assertion messages; the selection itself is done by the {@link RequestIndex} of the route.
+     */
+    void setMatchers(List<RequestMatcher> matchers) {
+        this.matchers = matchers;
+    }
 
-    BaseOngoingMocking() {
-        buffer = new byte[BUFFER_SIZE];
+    /**
+     * Returns the request in the form used by assertion messages, e.g. {@code GET /foo} or
+     * {@code GET /foo [header accept = 'application/json']}.
+     */
+    String describeRequest() {
+        return matchers.isEmpty() ? method + " " + path : method + " " + path + " " + matchers;
+    }
+
+    /**
+     * Counts the call and records how long the request waited for a thread.
+     *
+     * @return the start time of the handling as returned by {@link System#nanoTime()}.
+     */
+    long startCall() {
+        callCounter.increment();
+        long wait = QueueTimingExecutor.currentQueueWait();
+        if (wait >= 0) {
+            queueWait.record(wait);
+        }
+        return System.nanoTime();
+    }
+
+    RouteMetrics getMetrics() {
+        return new RouteMetrics(method, path, getCallCount(), queueWait.snapshot(), handling.snapshot(),
+                bodyWrite.snapshot());
+    }
+
+    public long getCallCount() {
+        return callCounter.sum();
+    }
+
+    public void awaitCalled(long times, long timeout, TimeUnit unit) throws InterruptedException {
+        awaitCalled(times, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Waits until the request was received the given number of times.
+     *
+     * @param deadlineNanos the deadline as returned by {@link System#nanoTime()}
+     * @throws AssertionError if the request wasn't received often enough before the deadline.
+     */
+    void awaitCalled(long times, long deadlineNanos) throws InterruptedException {
+        if (!received.await(times, deadlineNanos)) {
+            fail(format("request %s called at least %d times within the timeout but was called %d times",
+                    describeRequest(), times, received.count()));
+        }
     }
 
     public OngoingMocking willRespond(Response response) {
-        this.response = response;
+        return willRespond(Responses.single(response));
+    }
+
+    public OngoingMocking willRespond(Responses responses) {
+        if (responses == null) {
+            throw new NullPointerException("Can't resolve the argument 'responses'.");
+        }
+        compiledHeaders = compileHeaders(responses);
+        this.responses = responses;
         return this;
     }
 
+    /**
+     * Compiles the headers of all responses of the given selection into header blocks. Only responses with
+     * immutable headers are compiled.
+     */
+    private static Map<Response, CompiledHeaders> compileHeaders(Responses responses) {
+        Map<Response, CompiledHeaders> compiledHeaders = new IdentityHashMap<Response, CompiledHeaders>();
+        for (Response response : responses.responses()) {
+            if (response instanceof BaseResponse && !compiledHeaders.containsKey(response)) {
+                HeaderBlock headers = HeaderBlock.of(response.getHeaders());
+                if (response.hasBody()) {
+                    headers = headers.with("Content-Type", response.getContentType());
+                }
+                if (PartialResponse.isRangeable(response)) {
+                    headers = headers.with("Accept-Ranges", "bytes");
+                }
+                compiledHeaders.put(response, new CompiledHeaders(headers));
+            }
+        }
+        return compiledHeaders;
+    }
+
     public OngoingMocking withBasicAuth(String username, String password) {
         basicAuthToken = new BasicAuthToken(username, password);
         return this;
     }
 
-    void setResponseHeaders(Headers headers) {
+    public OngoingMocking withLatency(Latency latency) {
+        if (latency == null) {
+            throw new NullPointerException("Can't resolve the argument 'latency'.");
+        }
+        this.latency = latency;
+        return this;
+    }
+
+    public OngoingMocking withCompression() {
+        compression = true;
+        return this;
+    }
+
+    public OngoingMocking withBandwidth(long bytesPerSecond) {
+        throttle.setBytesPerSecond(bytesPerSecond);
+        return this;
+    }
+
+    void setResponseScheduler(ResponseScheduler responseScheduler) {
+        this.responseScheduler = responseScheduler;
+    }
+
+    /**
+     * Sets the throttle which limits the bandwidth of all mockings of the server in addition to the bandwidth of this
+     * mocking.
+     */
+    void setServerThrottle(Throttle serverThrottle) {
+        this.serverThrottle = serverThrottle;
+    }
+
+    private ResponseScheduler responseScheduler() {
+        if (responseScheduler == null) {
+            throw new IllegalStateException("The mocking " + describeRequest() + " isn't registered at a server.");
+        }
+        return responseScheduler;
+    }
+
+    private boolean isThrottled() {
+        return throttle.isLimited() || serverThrottle.isLimited();
+    }
+
+    private int chunkSize() {
+        if (!throttle.isLimited()) {
+            return serverThrottle.chunkSize();
+        }
+        if (!serverThrottle.isLimited()) {
+            return throttle.chunkSize();
+        }
+        return Math.min(throttle.chunkSize(), serverThrottle.chunkSize());
+    }
+
+    /**
+     * Reserves the bandwidth of the mocking and of the server for the given number of bytes.
+     *
+     * @return the number of nanoseconds to wait before transferring more bytes.
+     */
+    private long reserve(int bytes) {
+        return Math.max(throttle.reserve(bytes), serverThrottle.reserve(bytes));
+    }
+
+    /**
+     * Receives the request body in consecutive parts.
+     */
+    interface BodySink {
+
+        void update(byte[] bytes, int offset, int length) throws IOException;
+
+        /**
+         * Is called at the end of the body, before the response is sent.
+         */
+        void finish() throws IOException;
+
+        /**
+         * Is called after {@link #finish()} or instead of it if receiving the body failed, and releases the resources
+         * of the sink.
+         */
+        void close();
+    }
+
+    /**
+     * Reads the request body into the given sink and responds afterwards.
+     * <p/>
+     * If the bandwidth is limited, the body is read in chunks which are paced by the response scheduler, so no thread
+     * waits between two chunks. In this case this method returns before the body is read.
+     */
+    void receive(HttpExchange httpExchange, BodySink sink, long startNanos) throws IOException {
+        if (isThrottled()) {
+            new ThrottledReader(httpExchange, sink, startNanos).run();
+            return;
+        }
+        try {
+            InputStream requestBodyInputStream = httpExchange.getRequestBody();
+            byte[] buffer = BufferPool.DEFAULT.acquire(contentLength(httpExchange));
+            try {
+                int length;
+                while ((length = requestBodyInputStream.read(buffer)) >= 0) {
+                    sink.update(buffer, 0, length);
+                }
+            } finally {
+                BufferPool.DEFAULT.release(buffer);
+                requestBodyInputStream.close();
+            }
+            sink.finish();
+        } finally {
+            sink.close();
+        }
+        respond(httpExchange, startNanos);
+    }
+
+    static long contentLength(HttpExchange httpExchange) {
+        String header = httpExchange.getRequestHeaders().getFirst("Content-Length");
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Sends the response for the given request. If this mocking has a latency, the response is sent later on the
+     * response scheduler and this method returns right away. The request body has to be consumed already.
+     */
+    void respond(final HttpExchange httpExchange, final long startNanos) throws IOException {
+        received.signal();
+        final Response response = selectResponse(httpExchange);
+        Latency latency = this.latency;
+        if (latency == null) {
+            sendResponse(httpExchange, response, startNanos);
+        } else {
+            JournalFilter.hold(httpExchange);
+            responseScheduler().schedule(new ResponseScheduler.Continuation() {
+                public void run() {
+                    try {
+                        sendResponse(httpExchange, response, startNanos);
+                    } catch (IOException e) {
+                        LOGGER.log(FINE, "Error while sending the delayed response to " + describeRequest() + ".", e);
+                        httpExchange.close();
+                    } finally {
+                        JournalFilter.release(httpExchange);
+                    }
+                }
+
+                public void abort() {
+                    httpExchange.close();
+                    JournalFilter.release(httpExchange);
+                }
+            }, latency.sampleNanos());
+        }
+    }
+
+    private void sendResponse(HttpExchange httpExchange, Response response, long startNanos) throws IOException {
+        boolean vary = compression && response.hasBody();
+        if (!setHeaderBlock(httpExchange, response, vary)) {
+            Headers headers = httpExchange.getResponseHeaders();
+            setResponseHeaders(headers, response);
+            if (vary) {
+                headers.put(VARY_HEADER, EncodedResponse.varyByAcceptEncoding(headers.get(VARY_HEADER)));
+            }
+        }
+        sendResponseHeaders(httpExchange, response);
+        long headersSentNanos = System.nanoTime();
+        handling.record(headersSentNanos - startNanos);
+        if (response.hasBody() && isThrottled()) {
+            new ThrottledWriter(httpExchange, response.getBodyInputStream(), headersSentNanos).run();
+            return;
+        }
+        sendResponseBody(httpExchange.getResponseBody(), response);
+        httpExchange.close();
+        bodyWrite.record(System.nanoTime() - headersSentNanos);
+    }
+
+    /**
+     * Hands the compiled headers of the given response, merged with the common headers, to an exchange of the {@link
+     * NioHttpServer}, which writes them as they are.
+     *
+     * @param vary whether the body could have been encoded, so the headers have to carry {@code Vary:
+     *             Accept-Encoding}
+     * @return {@code false} if the headers have to be set as response headers instead, because the exchange isn't
+     *         one of the {@link NioHttpServer} or the response was derived from a defined one, e.g. by compression.
+     */
+    private boolean setHeaderBlock(HttpExchange httpExchange, Response response, boolean vary) {
+        if (!(httpExchange instanceof NioHttpExchange)) {
+            return false;
+        }
+        CompiledHeaders headers = compiledHeaders.get(response);
+        if (headers == null) {
+            return false;
+        }
+        if (vary) {
+            headers = headers.varying();
+        }
+        NioHttpExchange nioHttpExchange = (NioHttpExchange) httpExchange;
+        nioHttpExchange.setHeaderBlock(headers.withCommonHeaders(nioHttpExchange.getHeaderBlock()));
+        return true;
+    }
+
+    static void setResponseHeaders(Headers headers, Response response) {
         headers.putAll(response.getHeaders());
         if (response.hasBody()) {
             headers.set("Content-Type", response.getContentType());
         }
+        if (PartialResponse.isRangeable(response)) {
+            headers.set("Accept-Ranges", "bytes");
+        }
     }
 
-    void sendResponseHeaders(HttpExchange httpExchange) throws IOException {
+    static void sendResponseHeaders(HttpExchange httpExchange, Response response) throws IOException {
         if (response.hasBody()) {
             httpExchange.sendResponseHeaders(response.getStatusCode(), response.getBodyLength());
         } else {
@@ -71,38 +400,343 @@ abstract class BaseOngoingMocking implements OngoingMocking, HttpHandler {
         }
     }
 
-    void sendResponseBody(OutputStream responseBodyOutputStream) throws IOException {
-        if (response.hasBody()) {
-            copyBody(responseBodyOutputStream);
+    static void sendResponseBody(OutputStream responseBodyOutputStream, Response response) throws IOException {
+        if (response instanceof ByteArrayResponse) {
+            responseBodyOutputStream.write(((ByteArrayResponse) response).getBodyBytes());
+            responseBodyOutputStream.close();
+        } else if (response instanceof ByteBufferResponse) {
+            sendBufferedBody((ByteBufferResponse) response, responseBodyOutputStream);
+        } else if (response.hasBody()) {
+            copyBody(responseBodyOutputStream, response);
         } else {
             responseBodyOutputStream.close();
         }
     }
 
-    private void copyBody(OutputStream responseBodyOutputStream) throws IOException {
-        BufferedInputStream inputStream = new BufferedInputStream(response.getBodyInputStream());
+    private static void sendBufferedBody(ByteBufferResponse response, OutputStream responseBodyOutputStream)
+            throws IOException {
+        long length = response.getBodyLength();
+        if (length > 0 && writeBody(response, 0, length, responseBodyOutputStream)) {
+            responseBodyOutputStream.close();
+        } else {
+            copyBody(responseBodyOutputStream, response);
+        }
+    }
+
+    /**
+     * Writes a part of the body of the given response from its buffers. If the buffers end after a part was written
+     * already, e.g. because a multipart response continues with a range of a generated body, the rest is written from
+     * the body stream.
+     *
+     * @return {@code false} if the body isn't available as buffer and nothing was written.
+     */
+    static boolean writeBody(ByteBufferResponse response, long offset, long length, OutputStream out)
+            throws IOException {
+        long start = offset;
+        byte[] bytes = null;
         try {
-            int length = 0;
-            while (length >= 0) {
-                length = inputStream.read(buffer);
+            while (length > 0) {
+                ByteBuffer buffer = response.getBodyBuffer(offset, length);
+                if (buffer == null) {
+                    if (offset == start) {
+                        return false;
+                    }
+                    copyBody(response, offset, length, out);
+                    return true;
+                }
+                offset += buffer.remaining();
+                length -= buffer.remaining();
+                if (out instanceof WritableByteChannel) {
+                    WritableByteChannel channel = (WritableByteChannel) out;
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } else {
+                    if (bytes == null) {
+                        bytes = BufferPool.DEFAULT.acquire(buffer.remaining() + length);
+                    }
+                    while (buffer.hasRemaining()) {
+                        int count = Math.min(bytes.length, buffer.remaining());
+                        buffer.get(bytes, 0, count);
+                        out.write(bytes, 0, count);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            if (bytes != null) {
+                BufferPool.DEFAULT.release(bytes);
+            }
+        }
+    }
+
+    /**
+     * Writes a part of the body of the given response from its stream, which is skipped to the offset.
+     */
+    private static void copyBody(Response response, long offset, long length, OutputStream out) throws IOException {
+        InputStream inputStream = response.getBodyInputStream();
+        byte[] buffer = BufferPool.DEFAULT.acquire(length);
+        try {
+            while (offset > 0) {
+                long count = inputStream.skip(offset);
+                if (count <= 0) {
+                    if (inputStream.read() < 0) {
+                        throw new IOException("The body of " + response + " ended before its length.");
+                    }
+                    count = 1;
+                }
+                offset -= count;
+            }
+            while (length > 0) {
+                int count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length));
+                if (count < 0) {
+                    throw new IOException("The body of " + response + " ended before its length.");
+                }
+                out.write(buffer, 0, count);
+                length -= count;
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            inputStream.close();
+        }
+    }
+
+    private static void copyBody(OutputStream responseBodyOutputStream, Response response) throws IOException {
+        InputStream inputStream = response.getBodyInputStream();
+        byte[] buffer = BufferPool.DEFAULT.acquire(response.getBodyLength());
+        try {
+            int length;
+            while ((length = inputStream.read(buffer)) >= 0) {
                 responseBodyOutputStream.write(buffer, 0, length);
             }
             responseBodyOutputStream.close();
         } finally {
+            BufferPool.DEFAULT.release(buffer);
             inputStream.close();
         }
     }
 
-    protected void checkAuthorisation(HttpExchange httpExchange) {
+    /**
+     * Returns the response for the given request, which is an error response if the request isn't authorised. The
+     * body is compressed if compression is enabled and the client accepts it. GET requests with a Range header get
+     * only the requested ranges of byte-addressable bodies.
+     */
+    private Response selectResponse(HttpExchange httpExchange) throws IOException {
+        Response response = authorisedResponse(httpExchange);
+        Headers requestHeaders = httpExchange.getRequestHeaders();
+        if (compression && response.hasBody() && !response.getHeaders().containsKey("Content-Encoding")) {
+            ContentEncoding encoding = ContentEncoding.negotiate(requestHeaders.getFirst(ACCEPT_ENCODING_HEADER));
+            if (encoding != null) {
+                response = EncodedResponse.encode(response, encoding);
+            }
+        }
+        if ("GET".equals(httpExchange.getRequestMethod())) {
+            return PartialResponse.select(response, requestHeaders.getFirst("Range"),
+                    requestHeaders.getFirst("If-Range"));
+        }
+        return response;
+    }
+
+    private Response authorisedResponse(HttpExchange httpExchange) {
+        BasicAuthToken basicAuthToken = this.basicAuthToken;
         if (basicAuthToken != null) {
             Headers requestHeaders = httpExchange.getRequestHeaders();
             if (requestHeaders.containsKey(AUTHORIZATION_HEADER)) {
                 String authHeader = requestHeaders.getFirst(AUTHORIZATION_HEADER);
                 if (!authHeader.equals(basicAuthToken.getAuthHeaderValue())) {
-                    response = new EmptyResponse(403);
+                    return FORBIDDEN;
                 }
             } else {
-                response = new EmptyResponse(401);
+                return UNAUTHORIZED;
+            }
+        }
+        return responses.next();
+    }
+
+    /**
+     * The header block of one response and its last merge with the common headers of the server, which only change
+     * when common headers are set.
+     */
+    private static class CompiledHeaders {
+
+        private final HeaderBlock headers;
+        private volatile HeaderBlock[] lastMerge;
+        private volatile CompiledHeaders varying;
+
+        private CompiledHeaders(HeaderBlock headers) {
+            this.headers = headers;
+            lastMerge = new HeaderBlock[]{HeaderBlock.EMPTY, headers};
+        }
+
+        /**
+         * Returns these headers with {@code Accept-Encoding} in their Vary header.
+         */
+        CompiledHeaders varying() {
+            CompiledHeaders varying = this.varying;
+            if (varying == null) {
+                List<String> vary = headers.getHeaders().get(VARY_HEADER);
+                List<String> newVary = EncodedResponse.varyByAcceptEncoding(vary);
+                varying = newVary == vary ? this : new CompiledHeaders(headers.with(HeaderBlock.of(
+                        Collections.singletonMap(VARY_HEADER, newVary))));
+                this.varying = varying;
+            }
+            return varying;
+        }
+
+        HeaderBlock withCommonHeaders(HeaderBlock commonHeaders) {
+            HeaderBlock[] lastMerge = this.lastMerge;
+            if (lastMerge[0] == commonHeaders) {
+                return lastMerge[1];
+            }
+            HeaderBlock merged = commonHeaders.with(headers);
+            this.lastMerge = new HeaderBlock[]{commonHeaders, merged};
+            return merged;
+        }
+    }
+
+    /**
+     * Transfers a body chunk by chunk. After each chunk it reserves the bandwidth and continues on the response
+     * scheduler once the bandwidth is available again.
+     */
+    private abstract class ThrottledTransfer implements ResponseScheduler.Continuation {
+
+        final HttpExchange httpExchange;
+        final byte[] buffer;
+        final int chunkSize;
+        private boolean bufferReleased;
+
+        ThrottledTransfer(HttpExchange httpExchange) {
+            this.httpExchange = httpExchange;
+            chunkSize = chunkSize();
+            buffer = BufferPool.DEFAULT.acquire(chunkSize);
+            JournalFilter.hold(httpExchange);
+        }
+
+        public void run() {
+            try {
+                long wait;
+                do {
+                    int length = transferChunk();
+                    if (length < 0) {
+                        releaseBuffer();
+                        finish();
+                        JournalFilter.release(httpExchange);
+                        return;
+                    }
+                    wait = reserve(length);
+                } while (wait <= 0);
+                responseScheduler().schedule(this, wait);
+            } catch (IOException e) {
+                abort(e);
+            } catch (RuntimeException e) {
+                abort(e);
+            }
+        }
+
+        private void abort(Exception e) {
+            LOGGER.log(FINE, "Error while transferring a throttled body of " + describeRequest() + ".", e);
+            abort();
+        }
+
+        public void abort() {
+            releaseBuffer();
+            close();
+            httpExchange.close();
+            JournalFilter.release(httpExchange);
+        }
+
+        private void releaseBuffer() {
+            if (!bufferReleased) {
+                bufferReleased = true;
+                BufferPool.DEFAULT.release(buffer);
+            }
+        }
+
+        /**
+         * Transfers up to one chunk.
+         *
+         * @return the number of bytes transferred or -1 at the end of the body.
+         */
+        abstract int transferChunk() throws IOException;
+
+        abstract void finish() throws IOException;
+
+        /**
+         * Releases the resources of a transfer which failed.
+         */
+        abstract void close();
+    }
+
+    private class ThrottledReader extends ThrottledTransfer {
+
+        private final InputStream requestBodyInputStream;
+        private final BodySink sink;
+        private final long startNanos;
+
+        private ThrottledReader(HttpExchange httpExchange, BodySink sink, long startNanos) {
+            super(httpExchange);
+            requestBodyInputStream = httpExchange.getRequestBody();
+            this.sink = sink;
+            this.startNanos = startNanos;
+        }
+
+        int transferChunk() throws IOException {
+            int length = requestBodyInputStream.read(buffer, 0, chunkSize);
+            if (length > 0) {
+                sink.update(buffer, 0, length);
+            }
+            return length;
+        }
+
+        void finish() throws IOException {
+            requestBodyInputStream.close();
+            try {
+                sink.finish();
+            } finally {
+                sink.close();
+            }
+            respond(httpExchange, startNanos);
+        }
+
+        void close() {
+            sink.close();
+        }
+    }
+
+    private class ThrottledWriter extends ThrottledTransfer {
+
+        private final InputStream bodyInputStream;
+        private final OutputStream responseBodyOutputStream;
+        private final long headersSentNanos;
+
+        private ThrottledWriter(HttpExchange httpExchange, InputStream bodyInputStream, long headersSentNanos) {
+            super(httpExchange);
+            this.bodyInputStream = bodyInputStream;
+            responseBodyOutputStream = httpExchange.getResponseBody();
+            this.headersSentNanos = headersSentNanos;
+        }
+
+        int transferChunk() throws IOException {
+            int length = bodyInputStream.read(buffer, 0, chunkSize);
+            if (length > 0) {
+                responseBodyOutputStream.write(buffer, 0, length);
+                responseBodyOutputStream.flush();
+            }
+            return length;
+        }
+
+        void finish() throws IOException {
+            bodyInputStream.close();
+            responseBodyOutputStream.close();
+            httpExchange.close();
+            bodyWrite.record(System.nanoTime() - headersSentNanos);
+        }
+
+        void close() {
+            try {
+                bodyInputStream.close();
+            } catch (IOException e) {
+                LOGGER.log(FINE, "Error while closing the body of " + describeRequest() + ".", e);
             }
         }
     }
@@ -117,6 +751,6 @@ abstract class BaseOngoingMocking implements OngoingMocking, HttpHandler {
 
     @Override
     public String toString() {
-        return "response = " + response;
+        return "response = " + responses;
     }
 }
@@ -0,0 +1,128 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free pool of byte arrays used to copy request and response bodies.
+ * <p/>
+ * A mocking is invoked by many threads concurrently, so it can't own a buffer itself. Instead every request borrows a
+ * buffer from this pool and returns it afterwards. Threads start probing at a slot derived from their id, so
+ * concurrent threads rarely compete for the same slot. If no suitable buffer is pooled, a new one is allocated, which
+ * keeps the pool correct with any number of threads, including virtual threads.
+ * <p/>
+ * Buffers are sized adaptively: bodies of known length get a buffer just large enough for them, bodies of unknown
+ * length get {@link #DEFAULT_SIZE} bytes. Sizes are powers of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}.
+ *
+ * @author Alexander Kiel
+ */
+final class BufferPool {
+
+    static final int MIN_SIZE = 1024;
+    static final int DEFAULT_SIZE = 8 * 1024;
+    static final int MAX_SIZE = 64 * 1024;
+
+    static final BufferPool DEFAULT = new BufferPool(slotCount(Runtime.getRuntime().availableProcessors()));
+
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<byte[]> slots;
+    private final int mask;
+
+    /**
+     * Creates a pool.
+     *
+     * @param slotCount the maximum number of pooled buffers, has to be a power of two
+     */
+    BufferPool(int slotCount) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("The slot count has to be a power of two but was " + slotCount + ".");
+        }
+        slots = new AtomicReferenceArray<byte[]>(slotCount);
+        mask = slotCount - 1;
+    }
+
+    private static int slotCount(int processors) {
+        int count = 16;
+        while (count < 4 * processors && count < 256) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a buffer for a body of the given length.
+     *
+     * @param length the length of the body or a value less or equal zero if it is unknown
+     * @return a buffer of at least {@link #bufferSize(long) bufferSize(length)} bytes.
+     */
+    byte[] acquire(long length) {
+        int size = bufferSize(length);
+        int start = probeStart();
+        for (int i = 0; i < PROBES; i++) {
+            int index = (start + i) & mask;
+            byte[] buffer = slots.get(index);
+            if (buffer != null && buffer.length >= size && slots.compareAndSet(index, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     */
+    void release(byte[] buffer) {
+        if (buffer.length > MAX_SIZE) {
+            return;
+        }
+        int start = probeStart();
+        for (int i = 0; i < PROBES; i++) {
+            int index = (start + i) & mask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    static int bufferSize(long length) {
+        if (length <= 0) {
+            return DEFAULT_SIZE;
+        }
+        if (length >= MAX_SIZE) {
+            return MAX_SIZE;
+        }
+        return Math.max(MIN_SIZE, Integer.highestOneBit((int) length - 1) << 1);
+    }
+
+    private int probeStart() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & mask;
+    }
+
+    int pooledCount() {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
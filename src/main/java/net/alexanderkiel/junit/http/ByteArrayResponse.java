@@ -0,0 +1,35 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+/**
+ * A response whose body is held completely in memory.
+ * <p/>
+ * Mockings write such bodies with one call instead of copying them through a stream, so serving them doesn't allocate
+ * anything per request.
+ *
+ * @author Alexander Kiel
+ */
+interface ByteArrayResponse extends Response {
+
+    /**
+     * Returns the body of this response. The array is shared between all requests and must not be modified.
+     *
+     * @return the body of this response.
+     */
+    byte[] getBodyBytes();
+}
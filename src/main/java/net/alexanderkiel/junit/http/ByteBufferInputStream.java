@@ -0,0 +1,91 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the body of a {@link ByteBufferResponse} from its buffers, so that a cached body isn't read from its source
+ * again for callers which need a stream.
+ *
+ * @author Alexander Kiel
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBufferResponse response;
+    private final long length;
+    private long offset;
+    private ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBufferResponse response) {
+        this.response = response;
+        length = response.getBodyLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextBuffer() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBuffer()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextBuffer()) {
+            int count = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    /**
+     * Makes sure that the current buffer has bytes left.
+     *
+     * @return {@code false} at the end of the body.
+     */
+    private boolean nextBuffer() throws IOException {
+        if (buffer != null && buffer.hasRemaining()) {
+            return true;
+        }
+        if (offset >= length) {
+            return false;
+        }
+        buffer = response.getBodyBuffer(offset, length - offset);
+        offset += buffer.remaining();
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A response whose body is available as byte buffers, e.g. a memory mapped file.
+ * <p/>
+ * Mockings write such bodies directly from the buffers, so the NIO engine hands them to the socket without copying
+ * them through heap buffers.
+ *
+ * @author Alexander Kiel
+ */
+interface ByteBufferResponse extends Response {
+
+    /**
+     * Returns a read-only view of a part of the body which starts at the given offset.
+     * <p/>
+     * The view may be shorter than the requested length, so callers have to ask again for the rest.
+     *
+     * @param offset the offset of the part in the body
+     * @param length the length of the part
+     * @return a view of at least one and at most {@code length} bytes or {@code null} if the body isn't available as
+     *         buffer and has to be read through {@link #getBodyInputStream()}.
+     * @throws IOException if the body can't be mapped
+     */
+    ByteBuffer getBodyBuffer(long offset, long length) throws IOException;
+}
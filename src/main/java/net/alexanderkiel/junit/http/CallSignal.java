@@ -0,0 +1,97 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts received requests and lets threads wait until a number of requests arrived.
+ * <p/>
+ * Counting stays as cheap as a {@link StripedCounter} increment while nobody waits. Waiting threads register
+ * themselves and park on a {@link Phaser} which the counting threads advance, so a waiting thread wakes up as soon as
+ * the request it waits for is counted.
+ *
+ * @author Alexander Kiel
+ */
+class CallSignal {
+
+    private final StripedCounter counter;
+    private final AtomicInteger waiters;
+    private final Phaser phaser;
+
+    CallSignal() {
+        counter = new StripedCounter();
+        waiters = new AtomicInteger();
+        phaser = new Phaser(1);
+    }
+
+    /**
+     * Counts one request and wakes up waiting threads.
+     */
+    void signal() {
+        counter.increment();
+        // The waiter registers before it reads the count, so either it sees this increment or we see the waiter.
+        if (waiters.get() > 0) {
+            phaser.arrive();
+        }
+    }
+
+    long count() {
+        return counter.sum();
+    }
+
+    /**
+     * Waits until at least the given number of requests were counted.
+     *
+     * @param count         the number of requests to wait for
+     * @param deadlineNanos the deadline as returned by {@link System#nanoTime()}
+     * @return {@code true} if the requests were counted before the deadline.
+     */
+    boolean await(long count, long deadlineNanos) throws InterruptedException {
+        if (counter.sum() >= count) {
+            return true;
+        }
+        waiters.incrementAndGet();
+        try {
+            while (true) {
+                int phase = phaser.getPhase();
+                if (counter.sum() >= count) {
+                    return true;
+                }
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    phaser.awaitAdvanceInterruptibly(phase, remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    return counter.sum() >= count;
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return counter.toString();
+    }
+}
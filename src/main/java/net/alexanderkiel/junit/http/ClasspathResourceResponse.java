@@ -16,34 +16,71 @@
 
 package net.alexanderkiel.junit.http;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * A response which serves a classpath resource.
+ * <p/>
+ * By default the resource is opened for every request and sent chunked because its length isn't known. In caching
+ * mode the length is resolved once at construction and the content is served from memory. Resources which are plain
+ * files are mapped into memory, all others are read once into a byte array.
+ * <p/>
+ * Compressed bodies are computed on first use in both modes and reused for all further requests, so the resource must
+ * not change.
+ *
  * @author Alexander Kiel
  */
-public class ClasspathResourceResponse extends BaseResponse {
+public class ClasspathResourceResponse extends BaseResponse implements ByteBufferResponse, EncodableResponse {
 
     private final String contentType;
     private final URL classpathResponse;
+    private final MappedFile mappedFile;
+    private final ByteBuffer content;
+    private final EncodedBodyCache encodedBodies;
 
     public ClasspathResourceResponse(int statusCode, String contentType, URL classpathResponse) {
-        super(statusCode);
-        if (contentType == null) {
-            throw new NullPointerException("Can't resolve the argument 'contentType'.");
-        }
-        if (classpathResponse == null) {
-            throw new NullPointerException("Can't resolve the argument 'classpathResponse'.");
-        }
-        this.contentType = contentType;
-        this.classpathResponse = classpathResponse;
+        this(statusCode, Collections.<String, List<String>>emptyMap(), contentType, classpathResponse, false);
     }
 
     public ClasspathResourceResponse(int statusCode, Map<String, List<String>> headers, String contentType,
                                      URL classpathResponse) {
+        this(statusCode, headers, contentType, classpathResponse, false);
+    }
+
+    /**
+     * Creates a response which serves a classpath resource.
+     *
+     * @param statusCode        the status code of the response
+     * @param contentType       the content type of the response
+     * @param classpathResponse the URL of the classpath resource
+     * @param cached            whether the resource should be resolved once and served from memory
+     * @throws IllegalArgumentException if the resource can't be read in caching mode
+     */
+    public ClasspathResourceResponse(int statusCode, String contentType, URL classpathResponse, boolean cached) {
+        this(statusCode, Collections.<String, List<String>>emptyMap(), contentType, classpathResponse, cached);
+    }
+
+    /**
+     * Creates a response which serves a classpath resource.
+     *
+     * @param statusCode        the status code of the response
+     * @param headers           additional headers of the response
+     * @param contentType       the content type of the response
+     * @param classpathResponse the URL of the classpath resource
+     * @param cached            whether the resource should be resolved once and served from memory
+     * @throws IllegalArgumentException if the resource can't be read in caching mode
+     */
+    public ClasspathResourceResponse(int statusCode, Map<String, List<String>> headers, String contentType,
+                                     URL classpathResponse, boolean cached) {
         super(statusCode, headers);
         if (contentType == null) {
             throw new NullPointerException("Can't resolve the argument 'contentType'.");
@@ -53,6 +90,41 @@ public class ClasspathResourceResponse extends BaseResponse {
         }
         this.contentType = contentType;
         this.classpathResponse = classpathResponse;
+        File file = cached ? toFile(classpathResponse) : null;
+        mappedFile = file == null ? null : new MappedFile(file, file.length());
+        content = cached && file == null ? ByteBuffer.wrap(readContent(classpathResponse)).asReadOnlyBuffer() : null;
+        encodedBodies = new EncodedBodyCache();
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            File file = new File(url.toURI());
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readContent(URL url) {
+        try {
+            InputStream in = url.openStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[BufferPool.DEFAULT_SIZE];
+                int length;
+                while ((length = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, length);
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read the classpath resource '" + url + "'.", e);
+        }
     }
 
     public String getContentType() {
@@ -64,19 +136,50 @@ public class ClasspathResourceResponse extends BaseResponse {
     }
 
     public long getBodyLength() {
-        return 0;
+        if (mappedFile != null) {
+            return mappedFile.getLength();
+        }
+        return content == null ? 0 : content.capacity();
     }
 
     public InputStream getBodyInputStream() throws IOException {
+        if (mappedFile != null || content != null) {
+            return new ByteBufferInputStream(this);
+        }
         return classpathResponse.openStream();
     }
 
+    public ByteBuffer getBodyBuffer(long offset, long length) throws IOException {
+        if (mappedFile != null) {
+            return mappedFile.slice(offset, length);
+        }
+        if (content == null) {
+            return null;
+        }
+        if (offset < 0 || length <= 0 || offset + length > content.capacity()) {
+            throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length);
+        }
+        ByteBuffer slice = content.duplicate();
+        slice.position((int) offset);
+        slice.limit((int) (offset + length));
+        return slice;
+    }
+
+    public byte[] getEncodedBody(ContentEncoding encoding) throws IOException {
+        return encodedBodies.get(encoding, this).getBodyBytes();
+    }
+
+    public Response getEncodedResponse(ContentEncoding encoding) throws IOException {
+        return encodedBodies.get(encoding, this);
+    }
+
     @Override
     public String toString() {
         return "ClasspathResourceResponse" +
                 "[" + super.toString() +
                 ", contentType = '" + contentType + "'" +
                 ", classpathResponse = " + classpathResponse +
+                ", cached = " + (mappedFile != null || content != null) +
                 "]";
     }
 }
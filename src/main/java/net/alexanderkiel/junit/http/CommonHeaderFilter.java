@@ -0,0 +1,63 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Sets the common response headers of a server on every response.
+ * <p/>
+ * The headers are kept as {@link HeaderBlock} which is handed to exchanges of the {@link NioHttpServer} as it is and
+ * only copied into the response headers of other exchanges.
+ *
+ * @author Alexander Kiel
+ */
+class CommonHeaderFilter extends Filter {
+
+    private volatile HeaderBlock commonHeaders;
+
+    CommonHeaderFilter() {
+        commonHeaders = HeaderBlock.EMPTY;
+    }
+
+    synchronized void setHeader(String name, String value) {
+        commonHeaders = commonHeaders.with(name, value);
+    }
+
+    @Override
+    public void doFilter(HttpExchange httpExchange, Chain chain) throws IOException {
+        if (httpExchange instanceof NioHttpExchange) {
+            ((NioHttpExchange) httpExchange).setHeaderBlock(commonHeaders);
+        } else {
+            httpExchange.getResponseHeaders().putAll(commonHeaders.getHeaders());
+        }
+        chain.doFilter(httpExchange);
+    }
+
+    @Override
+    public String description() {
+        return "Sets common response headers.";
+    }
+
+    @Override
+    public String toString() {
+        return "CommonHeaderFilter[commonHeaders = " + commonHeaders + "]";
+    }
+}
@@ -0,0 +1,227 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * The content encodings in which response bodies can be compressed.
+ * <p/>
+ * Bodies are compressed while they are read, so encoded bodies can be streamed without buffering them. The streams
+ * hold native memory of the compressor until they are closed.
+ *
+ * @author Alexander Kiel
+ */
+enum ContentEncoding {
+
+    GZIP("gzip") {
+        InputStream encode(InputStream body) {
+            return new GzipInputStream(body);
+        }
+    },
+
+    DEFLATE("deflate") {
+        InputStream encode(InputStream body) {
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            return new DeflaterInputStream(body, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final Pattern COMMA_SPLIT_PATTERN = Pattern.compile(",");
+    private static final Pattern SEMICOLON_SPLIT_PATTERN = Pattern.compile(";");
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Returns the value of the Content-Encoding header.
+     */
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Returns a stream which reads the given body in this encoding.
+     */
+    abstract InputStream encode(InputStream body);
+
+    /**
+     * Reads the given body completely in this encoding.
+     */
+    byte[] encodeFully(InputStream body) throws IOException {
+        InputStream in = encode(body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = BufferPool.DEFAULT.acquire(0);
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Chooses the encoding the client prefers according to the given Accept-Encoding header. Gzip wins over deflate
+     * if both are equally acceptable.
+     *
+     * @param acceptEncoding the value of the Accept-Encoding header or {@code null} if there is none
+     * @return the chosen encoding or {@code null} if the body should be sent unencoded.
+     */
+    static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        ContentEncoding best = null;
+        double bestQuality = 0;
+        double wildcardQuality = -1;
+        double[] qualities = new double[values().length];
+        for (int i = 0; i < qualities.length; i++) {
+            qualities[i] = -1;
+        }
+        for (String element : COMMA_SPLIT_PATTERN.split(acceptEncoding)) {
+            String[] parts = SEMICOLON_SPLIT_PATTERN.split(element);
+            String coding = parts[0].trim();
+            double quality = quality(parts);
+            if ("*".equals(coding)) {
+                wildcardQuality = quality;
+            } else {
+                for (ContentEncoding encoding : values()) {
+                    if (encoding.token.equalsIgnoreCase(coding) ||
+                            (encoding == GZIP && "x-gzip".equalsIgnoreCase(coding))) {
+                        qualities[encoding.ordinal()] = quality;
+                    }
+                }
+            }
+        }
+        for (ContentEncoding encoding : values()) {
+            double quality = qualities[encoding.ordinal()] < 0 ? wildcardQuality : qualities[encoding.ordinal()];
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Reads a body in the gzip format: a fixed header, the raw deflate stream and a trailer with the CRC-32 and the
+     * length of the body.
+     */
+    private static class GzipInputStream extends InputStream {
+
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final CheckedInputStream body;
+        private final Deflater deflater;
+        private final DeflaterInputStream deflated;
+        private final byte[] trailer;
+        private int headerIndex;
+        private int trailerIndex;
+
+        private GzipInputStream(InputStream body) {
+            this.body = new CheckedInputStream(body, new CRC32());
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflated = new DeflaterInputStream(this.body, deflater, BUFFER_SIZE);
+            trailer = new byte[8];
+            trailerIndex = -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (headerIndex < HEADER.length) {
+                int count = Math.min(length, HEADER.length - headerIndex);
+                System.arraycopy(HEADER, headerIndex, bytes, offset, count);
+                headerIndex += count;
+                return count;
+            }
+            if (trailerIndex < 0) {
+                int count = deflated.read(bytes, offset, length);
+                if (count >= 0) {
+                    return count;
+                }
+                writeInt(trailer, 0, body.getChecksum().getValue());
+                writeInt(trailer, 4, deflater.getBytesRead());
+                trailerIndex = 0;
+            }
+            if (trailerIndex == trailer.length) {
+                return -1;
+            }
+            int count = Math.min(length, trailer.length - trailerIndex);
+            System.arraycopy(trailer, trailerIndex, bytes, offset, count);
+            trailerIndex += count;
+            return count;
+        }
+
+        private static void writeInt(byte[] bytes, int offset, long value) {
+            for (int i = 0; i < 4; i++) {
+                bytes[offset + i] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflated.close();
+            deflater.end();
+        }
+    }
+}
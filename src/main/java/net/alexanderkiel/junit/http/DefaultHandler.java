@@ -21,13 +21,17 @@ import com.sun.net.httpserver.HttpHandler;
 
 import java.io.IOException;
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
 import java.util.logging.Logger;
 
 import static java.lang.String.format;
 
 /**
+ * Dispatches requests to the handlers registered for their method and path relative to the base URI.
+ * <p/>
+ * Paths may be templates, see {@link RouteTrie}. If several handlers of a route are distinguished by {@link
+ * RequestMatcher}s, the one with the most matchers of those whose matchers all match the request handles it.
+ *
  * @author Alexander Kiel
  */
 class DefaultHandler implements HttpHandler {
@@ -37,45 +41,147 @@ class DefaultHandler implements HttpHandler {
     private static final int METHOD_NOT_ALLOWED = 405;
 
     private final URI baseUri;
-    private final Map<String, Map<HttpMock.Method, HttpHandler>> handlerMap;
+    private final String basePath;
+    private volatile RouteTrie routes;
+    private volatile RouteTrie stubRoutes;
+    private volatile HttpHandler fallbackHandler;
 
     DefaultHandler(URI baseUri) {
         this.baseUri = baseUri;
-        handlerMap = new HashMap<String, Map<HttpMock.Method, HttpHandler>>();
+        String rawPath = baseUri.getRawPath();
+        basePath = rawPath == null ? "" : rawPath;
+        routes = new RouteTrie();
     }
 
     public void handle(HttpExchange httpExchange) throws IOException {
-        String path = baseUri.relativize(httpExchange.getRequestURI()).getPath();
-
-        if (handlerMap.containsKey(path)) {
-            Map<HttpMock.Method, HttpHandler> map = handlerMap.get(path);
-            HttpMock.Method method = HttpMock.Method.valueOf(httpExchange.getRequestMethod());
-            if (map.containsKey(method)) {
-                map.get(method).handle(httpExchange);
-            } else {
-                LOGGER.severe(format("Method %s on resource '%s' not allowed.", method, path));
-                httpExchange.sendResponseHeaders(METHOD_NOT_ALLOWED, -1);
-                httpExchange.close();
+        URI requestUri = httpExchange.getRequestURI();
+        String path = requestUri.getRawPath();
+        if (path == null) {
+            path = "";
+        } else if (path.indexOf('%') >= 0) {
+            path = requestUri.getPath();
+        }
+
+        int start = relativePathStart(path);
+        HttpMock.Method method = findMethod(httpExchange.getRequestMethod());
+        RouteTrie.Route route = start < 0 ? null : routes.find(path, start, method);
+        HttpHandler handler = findHandler(route, method);
+        RequestView request = null;
+        if (handler instanceof RequestIndex) {
+            request = new RequestView(httpExchange);
+            handler = ((RequestIndex) handler).select(request);
+        }
+        RouteTrie stubRoutes = this.stubRoutes;
+        if (handler == null && stubRoutes != null && start >= 0) {
+            RouteTrie.Route stubRoute = stubRoutes.find(path, start, method);
+            handler = findHandler(stubRoute, method);
+            if (handler instanceof RequestIndex) {
+                handler = ((RequestIndex) handler).select(request == null ? new RequestView(httpExchange) : request);
+            }
+            if (stubRoute != null && (route == null || findHandler(route, method) == null)) {
+                route = stubRoute;
             }
+        }
+        if (handler != null) {
+            handler.handle(httpExchange);
+        } else if (fallbackHandler != null) {
+            fallbackHandler.handle(httpExchange);
+        } else if (route != null && findHandler(route, method) == null) {
+            LOGGER.severe(format("Method %s on resource '%s' not allowed.", httpExchange.getRequestMethod(),
+                    path.substring(start)));
+            httpExchange.sendResponseHeaders(METHOD_NOT_ALLOWED, -1);
+            httpExchange.close();
+        } else if (route != null) {
+            LOGGER.severe(format("No mocking of %s '%s' matches the request.", httpExchange.getRequestMethod(),
+                    path.substring(start)));
+            httpExchange.sendResponseHeaders(NOT_FOUND, -1);
+            httpExchange.close();
         } else {
-            LOGGER.severe(format("Resource '%s' not found.", path));
+            LOGGER.severe(format("Resource '%s' not found.", start < 0 ? path : path.substring(start)));
             httpExchange.sendResponseHeaders(NOT_FOUND, -1);
             httpExchange.close();
         }
     }
 
-    void registerSubHandler(HttpMock.Method method, String path, HttpHandler handler) {
-        if (handlerMap.containsKey(path)) {
-            handlerMap.get(path).put(method, handler);
-        } else {
-            HashMap<HttpMock.Method, HttpHandler> map = new HashMap<HttpMock.Method, HttpHandler>();
-            map.put(method, handler);
-            handlerMap.put(path, map);
+    /**
+     * Returns the index at which the path relative to the base path starts or -1 if the path isn't below the base
+     * path.
+     */
+    private int relativePathStart(String path) {
+        if (!path.startsWith(basePath)) {
+            return -1;
+        }
+        int start = basePath.length();
+        if (start == path.length() || basePath.endsWith("/")) {
+            return start;
         }
+        return path.charAt(start) == '/' ? start + 1 : -1;
+    }
+
+    private static HttpHandler findHandler(RouteTrie.Route route, HttpMock.Method method) {
+        return route == null || method == null ? null : route.getHandler(method);
+    }
+
+    private static HttpMock.Method findMethod(String name) {
+        try {
+            return HttpMock.Method.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers a handler for the given method and path template without matchers.
+     */
+    void registerSubHandler(HttpMock.Method method, String path, HttpHandler handler) {
+        routes.register(method, path, handler);
+    }
+
+    /**
+     * Registers a handler for the given method and path template.
+     *
+     * @param method   the HTTP method
+     * @param path     the path relative to the base URI, which may contain {@code {param}}, {@code *} and {@code **}
+     *                 segments
+     * @param matchers the matchers which select the handler among other handlers of the same method and path
+     * @param handler  the handler
+     */
+    void registerSubHandler(HttpMock.Method method, String path, Collection<RequestMatcher> matchers,
+                            HttpHandler handler) {
+        routes.register(method, path, matchers, handler);
+    }
+
+    /**
+     * Replaces the routes of stubs, which are searched after the registered handlers. Replacing the routes is atomic,
+     * so every request sees either all old or all new stubs.
+     *
+     * @param stubRoutes the routes or {@code null} for none
+     */
+    void setStubRoutes(RouteTrie stubRoutes) {
+        this.stubRoutes = stubRoutes;
+    }
+
+    /**
+     * Removes all registered handlers, stubs and the fallback handler. The route table is replaced as a whole, so
+     * every request sees either all old or no routes.
+     */
+    void reset() {
+        routes = new RouteTrie();
+        stubRoutes = null;
+        fallbackHandler = null;
+    }
+
+    /**
+     * Sets the handler for requests without a registered handler, which get 404 or 405 otherwise.
+     *
+     * @param fallbackHandler the handler or {@code null} for none
+     */
+    void setFallbackHandler(HttpHandler fallbackHandler) {
+        this.fallbackHandler = fallbackHandler;
     }
 
     @Override
     public String toString() {
-        return "DefaultHandler[baseUri = " + baseUri + ", handlerMap = " + handlerMap + "]";
+        return "DefaultHandler[baseUri = " + baseUri + ", routes = " + routes + "]";
     }
 }
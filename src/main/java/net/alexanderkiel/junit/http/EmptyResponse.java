@@ -17,6 +17,8 @@
 package net.alexanderkiel.junit.http;
 
 import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Alexander Kiel
@@ -27,6 +29,10 @@ public class EmptyResponse extends BaseResponse {
         super(statusCode);
     }
 
+    public EmptyResponse(int statusCode, Map<String, List<String>> headers) {
+        super(statusCode, headers);
+    }
+
     public String getContentType() {
         throw new UnsupportedOperationException("This response doesn't have a body.");
     }
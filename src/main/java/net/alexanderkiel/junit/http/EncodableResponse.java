@@ -0,0 +1,46 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+
+/**
+ * A response whose content encoded bodies can be computed once and reused for all requests.
+ *
+ * @author Alexander Kiel
+ */
+interface EncodableResponse extends Response {
+
+    /**
+     * Returns the body of this response in the given content encoding. The array is shared between all requests and
+     * must not be modified.
+     *
+     * @param encoding the content encoding
+     * @return the encoded body.
+     * @throws IOException if the body can't be read
+     */
+    byte[] getEncodedBody(ContentEncoding encoding) throws IOException;
+
+    /**
+     * Returns this response with its body and headers in the given content encoding. The response is computed once
+     * and shared between all requests.
+     *
+     * @param encoding the content encoding
+     * @return the encoded response.
+     * @throws IOException if the body can't be read
+     */
+    Response getEncodedResponse(ContentEncoding encoding) throws IOException;
+}
@@ -0,0 +1,49 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the encoded variants of one response, computing each encoding on first use.
+ * <p/>
+ * Concurrent first requests may encode the body more than once, but all requests share the same result afterwards.
+ *
+ * @author Alexander Kiel
+ */
+final class EncodedBodyCache {
+
+    private final AtomicReferenceArray<ByteArrayResponse> responses;
+
+    EncodedBodyCache() {
+        responses = new AtomicReferenceArray<ByteArrayResponse>(ContentEncoding.values().length);
+    }
+
+    /**
+     * Returns the given response in the given encoding, with its encoded body and headers computed once.
+     */
+    ByteArrayResponse get(ContentEncoding encoding, Response response) throws IOException {
+        ByteArrayResponse encoded = responses.get(encoding.ordinal());
+        if (encoded == null) {
+            encoded = EncodedResponse.precompute(response, encoding);
+            if (!responses.compareAndSet(encoding.ordinal(), null, encoded)) {
+                encoded = responses.get(encoding.ordinal());
+            }
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,158 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * A response whose body is sent in a content encoding.
+ * <p/>
+ * Bodies of {@link EncodableResponse encodable responses} are encoded once and sent with a known length; all other
+ * bodies are encoded while they are sent and therefore sent chunked. The Vary headers of both list {@code
+ * Accept-Encoding}, like the ones of the unencoded bodies of mockings with compression.
+ *
+ * @author Alexander Kiel
+ */
+class EncodedResponse implements Response {
+
+    private static final String VARY = "Vary";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    private final Response response;
+    private final ContentEncoding encoding;
+    private final Map<String, List<String>> headers;
+
+    private EncodedResponse(Response response, ContentEncoding encoding) {
+        this.response = response;
+        this.encoding = encoding;
+        Map<String, List<String>> headers = new HashMap<String, List<String>>(response.getHeaders());
+        headers.put("Content-Encoding", Collections.singletonList(encoding.getToken()));
+        headers.put(VARY, varyByAcceptEncoding(headers.get(VARY)));
+        this.headers = unmodifiableMap(headers);
+    }
+
+    /**
+     * Returns the values of a Vary header with {@code Accept-Encoding} appended, unless they list it or {@code *}
+     * already.
+     *
+     * @param vary the values of the Vary header of a response or {@code null}
+     * @return the given values if they don't change.
+     */
+    static List<String> varyByAcceptEncoding(List<String> vary) {
+        if (vary == null || vary.isEmpty()) {
+            return Collections.singletonList(ACCEPT_ENCODING);
+        }
+        for (String value : vary) {
+            for (String field : value.split(",")) {
+                if (field.trim().equals("*") || field.trim().equalsIgnoreCase(ACCEPT_ENCODING)) {
+                    return vary;
+                }
+            }
+        }
+        List<String> values = new ArrayList<String>(vary);
+        values.add(ACCEPT_ENCODING);
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns the given response with its body in the given encoding.
+     *
+     * @param response a response with body
+     * @param encoding the content encoding
+     * @return the encoded response.
+     * @throws IOException if the body of an encodable response can't be read
+     */
+    static Response encode(Response response, ContentEncoding encoding) throws IOException {
+        if (response instanceof EncodableResponse) {
+            return ((EncodableResponse) response).getEncodedResponse(encoding);
+        }
+        return new EncodedResponse(response, encoding);
+    }
+
+    /**
+     * Encodes the whole body of the given response at once.
+     *
+     * @throws IOException if the body can't be read
+     */
+    static ByteArrayResponse precompute(Response response, ContentEncoding encoding) throws IOException {
+        return new Precomputed(response, encoding, encoding.encodeFully(response.getBodyInputStream()));
+    }
+
+    public int getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return response.getContentType();
+    }
+
+    public boolean hasBody() {
+        return true;
+    }
+
+    public long getBodyLength() {
+        return 0;
+    }
+
+    public InputStream getBodyInputStream() throws IOException {
+        return encoding.encode(response.getBodyInputStream());
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedResponse[encoding = " + encoding.getToken() + ", response = " + response + "]";
+    }
+
+    /**
+     * An encoded response whose body was encoded once in advance.
+     */
+    private static class Precomputed extends EncodedResponse implements ByteArrayResponse {
+
+        private final byte[] body;
+
+        private Precomputed(Response response, ContentEncoding encoding, byte[] body) {
+            super(response, encoding);
+            this.body = body;
+        }
+
+        @Override
+        public long getBodyLength() {
+            return body.length;
+        }
+
+        @Override
+        public InputStream getBodyInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public byte[] getBodyBytes() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory methods for the common {@link ExecutorStrategy executor strategies}.
+ *
+ * @author Alexander Kiel
+ */
+public final class ExecutorStrategies {
+
+    static final int DEFAULT_THREAD_POOL_SIZE = 10;
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+    private ExecutorStrategies() {
+    }
+
+    /**
+     * Returns the strategy used if nothing else is configured, a fixed thread pool of 10 threads.
+     *
+     * @return the default strategy.
+     */
+    public static ExecutorStrategy defaultStrategy() {
+        return fixedThreadPool(DEFAULT_THREAD_POOL_SIZE);
+    }
+
+    /**
+     * Handles requests on a fixed number of threads. Requests queue up if all threads are busy.
+     *
+     * @param size the number of threads
+     * @return the strategy
+     */
+    public static ExecutorStrategy fixedThreadPool(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The thread pool size has to be at least 1 but was " + size + ".");
+        }
+        return new ExecutorStrategy() {
+            public ExecutorService newExecutor() {
+                return Executors.newFixedThreadPool(size);
+            }
+
+            @Override
+            public String toString() {
+                return "fixedThreadPool(" + size + ")";
+            }
+        };
+    }
+
+    /**
+     * Handles requests directly on the I/O thread of the {@link HttpEngine engine} without any thread handoff.
+     * <p/>
+     * This gives the highest throughput with the {@link HttpEngines#nio() NIO engine} as long as the responses are
+     * fast, because one slow request stalls all other connections of the same event loop.
+     *
+     * @return the strategy
+     */
+    public static ExecutorStrategy sameThread() {
+        return new ExecutorStrategy() {
+            public ExecutorService newExecutor() {
+                return MoreExecutors.sameThreadExecutor();
+            }
+
+            @Override
+            public String toString() {
+                return "sameThread()";
+            }
+        };
+    }
+
+    /**
+     * Handles requests on a thread pool which grows as needed and reuses idle threads.
+     *
+     * @return the strategy
+     */
+    public static ExecutorStrategy cachedThreadPool() {
+        return new ExecutorStrategy() {
+            public ExecutorService newExecutor() {
+                return Executors.newCachedThreadPool();
+            }
+
+            @Override
+            public String toString() {
+                return "cachedThreadPool()";
+            }
+        };
+    }
+
+    /**
+     * Handles every request on its own virtual thread, so the number of concurrent requests is not limited by a
+     * thread pool.
+     * <p/>
+     * Virtual threads are available since Java 21. Use {@link #isVirtualThreadSupported()} to check for them.
+     *
+     * @return the strategy
+     * @throws UnsupportedOperationException if the running JVM doesn't support virtual threads.
+     */
+    public static ExecutorStrategy virtualThreadPerRequest() {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later but the running JVM is " +
+                    System.getProperty("java.version") + ".");
+        }
+        return new ExecutorStrategy() {
+            public ExecutorService newExecutor() {
+                return newVirtualThreadPerTaskExecutor();
+            }
+
+            @Override
+            public String toString() {
+                return "virtualThreadPerRequest()";
+            }
+        };
+    }
+
+    /**
+     * Determines whether the running JVM supports virtual threads.
+     *
+     * @return {@code true} if {@link #virtualThreadPerRequest()} can be used; {@code false} otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't create a virtual thread executor.", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Can't create a virtual thread executor.", e.getCause());
+        }
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executor on which a mock server handles its requests.
+ * <p/>
+ * Common strategies are available through {@link ExecutorStrategies}.
+ *
+ * @author Alexander Kiel
+ * @see HttpMockServer#setExecutorStrategy(ExecutorStrategy)
+ */
+public interface ExecutorStrategy {
+
+    /**
+     * Creates a new executor. It is called once every time a mock server is started.
+     *
+     * @return a new executor, never {@code null}.
+     */
+    ExecutorService newExecutor();
+}
@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response which serves the content of a file.
+ * <p/>
+ * The length of the file is resolved once at construction, so the response is sent with a Content-Length header. The
+ * file is mapped into memory on the first request and served from the mapping, which makes large fixture files cheap
+ * to serve repeatedly. The file must not change while the response is in use.
+ *
+ * @author Alexander Kiel
+ */
+public class FileResponse extends BaseResponse implements ByteBufferResponse {
+
+    private final String contentType;
+    private final File file;
+    private final MappedFile mappedFile;
+
+    public FileResponse(int statusCode, String contentType, File file) {
+        this(statusCode, Collections.<String, List<String>>emptyMap(), contentType, file);
+    }
+
+    public FileResponse(int statusCode, Map<String, List<String>> headers, String contentType, File file) {
+        super(statusCode, headers);
+        if (contentType == null) {
+            throw new NullPointerException("Can't resolve the argument 'contentType'.");
+        }
+        this.contentType = contentType;
+        this.file = checkFile(file);
+        mappedFile = new MappedFile(file, file.length());
+    }
+
+    private static File checkFile(File file) {
+        if (file == null) {
+            throw new NullPointerException("Can't resolve the argument 'file'.");
+        }
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("The file '" + file + "' doesn't exist.");
+        }
+        return file;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean hasBody() {
+        return true;
+    }
+
+    public long getBodyLength() {
+        return mappedFile.getLength();
+    }
+
+    public InputStream getBodyInputStream() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    public ByteBuffer getBodyBuffer(long offset, long length) throws IOException {
+        return mappedFile.slice(offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "FileResponse" +
+                "[" + super.toString() +
+                ", contentType = '" + contentType + "'" +
+                ", file = " + file +
+                "]";
+    }
+}
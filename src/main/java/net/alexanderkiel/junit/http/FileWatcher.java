@@ -0,0 +1,104 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Watches one file and runs a task on a daemon thread whenever the file is created or modified.
+ * <p/>
+ * The directory of the file is watched, so replacing the file by renaming another one over it is noticed as well.
+ *
+ * @author Alexander Kiel
+ */
+class FileWatcher implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(FileWatcher.class.getName());
+
+    private final File file;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    FileWatcher(File file, final Runnable onChange) throws IOException {
+        this.file = file.getAbsoluteFile();
+        final Path directory = this.file.getParentFile().toPath();
+        final Path fileName = this.file.toPath().getFileName();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        WatchKey key = watchService.take();
+                        boolean changed = false;
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= fileName.equals(event.context());
+                        }
+                        if (changed) {
+                            onChange.run();
+                        }
+                        if (!key.reset()) {
+                            LOGGER.severe("Stop watching " + FileWatcher.this.file + " because its directory is gone.");
+                            return;
+                        }
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    // closed
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    LOGGER.log(SEVERE, "Stop watching " + FileWatcher.this.file + ".", e);
+                }
+            }
+        }, "http-mock-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching and waits until a task which is still running is done, so that it can't interfere with
+     * anything which happens after closing.
+     */
+    public void close() throws IOException {
+        watchService.close();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileWatcher[file = " + file + "]";
+    }
+}
@@ -0,0 +1,318 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * A response whose body is generated on the fly, for testing the download path of clients with bodies of any size.
+ * <p/>
+ * Bodies consist of a fixed byte, a repeating pattern or seeded pseudo-random bytes. Every byte is a function of its
+ * offset, so the body never occupies disk or heap and parts of it can be generated independently. Fixed and pattern
+ * bodies are served from one shared chunk of at most 64 KB; random bodies are generated into the copy buffer of the
+ * request.
+ * <p/>
+ * Clients can check the integrity of what they received with {@link #getSha256()}.
+ *
+ * @author Alexander Kiel
+ */
+public class GeneratedResponse extends BaseResponse implements ByteBufferResponse {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String contentType;
+    private final long length;
+    private final Generator generator;
+    private volatile String sha256;
+
+    private GeneratedResponse(int statusCode, String contentType, long length, Generator generator) {
+        super(statusCode);
+        if (contentType == null) {
+            throw new NullPointerException("Can't resolve the argument 'contentType'.");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("The length has to be non-negative but was " + length + ".");
+        }
+        this.contentType = contentType;
+        this.length = length;
+        this.generator = generator;
+    }
+
+    /**
+     * Returns a response whose body consists of one byte value.
+     *
+     * @param statusCode  the status code of the response
+     * @param contentType the content type of the response
+     * @param length      the length of the body in bytes
+     * @param value       the value of every byte of the body
+     */
+    public static GeneratedResponse fixed(int statusCode, String contentType, long length, byte value) {
+        return new GeneratedResponse(statusCode, contentType, length, new PatternGenerator(new byte[]{value}));
+    }
+
+    /**
+     * Returns a response whose body repeats the given pattern.
+     *
+     * @param statusCode  the status code of the response
+     * @param contentType the content type of the response
+     * @param length      the length of the body in bytes
+     * @param pattern     the bytes to repeat, at most 64 KB
+     */
+    public static GeneratedResponse pattern(int statusCode, String contentType, long length, byte[] pattern) {
+        if (pattern == null) {
+            throw new NullPointerException("Can't resolve the argument 'pattern'.");
+        }
+        if (pattern.length == 0 || pattern.length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("The pattern length has to be between 1 and " + CHUNK_SIZE +
+                    " but was " + pattern.length + ".");
+        }
+        return new GeneratedResponse(statusCode, contentType, length, new PatternGenerator(pattern.clone()));
+    }
+
+    /**
+     * Returns a response whose body consists of pseudo-random bytes. The same seed always yields the same body.
+     *
+     * @param statusCode  the status code of the response
+     * @param contentType the content type of the response
+     * @param length      the length of the body in bytes
+     * @param seed        the seed of the pseudo-random bytes
+     */
+    public static GeneratedResponse random(int statusCode, String contentType, long length, long seed) {
+        return new GeneratedResponse(statusCode, contentType, length, new RandomGenerator(seed));
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean hasBody() {
+        return true;
+    }
+
+    public long getBodyLength() {
+        return length;
+    }
+
+    public InputStream getBodyInputStream() {
+        return new GeneratedInputStream(generator, length);
+    }
+
+    public ByteBuffer getBodyBuffer(long offset, long length) {
+        if (offset < 0 || length <= 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length);
+        }
+        return generator.slice(offset, length);
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the body.
+     * <p/>
+     * The digest is calculated by generating the whole body once on first call, which takes a while for large bodies.
+     *
+     * @return the digest of the body.
+     */
+    public String getSha256() {
+        String sha256 = this.sha256;
+        if (sha256 == null) {
+            MessageDigest digest = JournalFilter.DigestingInputStream.newSha256();
+            byte[] buffer = BufferPool.DEFAULT.acquire(length);
+            try {
+                for (long position = 0; position < length; position += buffer.length) {
+                    int count = (int) Math.min(buffer.length, length - position);
+                    generator.fill(position, buffer, 0, count);
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                BufferPool.DEFAULT.release(buffer);
+            }
+            sha256 = encodeHexString(digest.digest());
+            this.sha256 = sha256;
+        }
+        return sha256;
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedResponse" +
+                "[" + super.toString() +
+                ", contentType = '" + contentType + "'" +
+                ", length = " + length +
+                ", generator = " + generator +
+                "]";
+    }
+
+    /**
+     * Generates the bytes of a body as function of their offset.
+     */
+    abstract static class Generator {
+
+        /**
+         * Returns a shared view of the body at the given offset or {@code null} if the bytes have to be generated by
+         * {@link #fill}.
+         */
+        abstract ByteBuffer slice(long offset, long length);
+
+        abstract void fill(long position, byte[] bytes, int offset, int length);
+    }
+
+    /**
+     * Serves a repeating pattern from one chunk which holds the pattern as often as it fits plus one more time, so
+     * that a view may start at any offset within the pattern.
+     */
+    private static class PatternGenerator extends Generator {
+
+        private final byte[] pattern;
+        private final ByteBuffer chunk;
+        private final int repetitionsLength;
+
+        private PatternGenerator(byte[] pattern) {
+            this.pattern = pattern;
+            int repetitions = Math.max(1, CHUNK_SIZE / pattern.length);
+            repetitionsLength = repetitions * pattern.length;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(repetitionsLength + pattern.length);
+            for (int i = 0; i <= repetitions; i++) {
+                chunk.put(pattern);
+            }
+            chunk.flip();
+            this.chunk = chunk.asReadOnlyBuffer();
+        }
+
+        ByteBuffer slice(long offset, long length) {
+            ByteBuffer slice = chunk.duplicate();
+            int start = (int) (offset % pattern.length);
+            slice.position(start);
+            slice.limit(start + (int) Math.min(length, repetitionsLength));
+            return slice;
+        }
+
+        void fill(long position, byte[] bytes, int offset, int length) {
+            int index = (int) (position % pattern.length);
+            for (int i = offset; i < offset + length; i++) {
+                bytes[i] = pattern[index];
+                if (++index == pattern.length) {
+                    index = 0;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "pattern of " + pattern.length + " bytes";
+        }
+    }
+
+    /**
+     * Generates pseudo-random bytes in blocks of eight. Each block is the SplitMix64 hash of the seed and the block
+     * index, so any offset can be generated without generating the bytes before it.
+     */
+    private static class RandomGenerator extends Generator {
+
+        private final long seed;
+
+        private RandomGenerator(long seed) {
+            this.seed = seed;
+        }
+
+        ByteBuffer slice(long offset, long length) {
+            return null;
+        }
+
+        void fill(long position, byte[] bytes, int offset, int length) {
+            long block = position >>> 3;
+            int shift = (int) (position & 7) << 3;
+            long value = mix(block);
+            for (int i = offset; i < offset + length; i++) {
+                bytes[i] = (byte) (value >>> shift);
+                shift += 8;
+                if (shift == 64) {
+                    shift = 0;
+                    value = mix(++block);
+                }
+            }
+        }
+
+        private long mix(long block) {
+            long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        @Override
+        public String toString() {
+            return "random with seed " + seed;
+        }
+    }
+
+    /**
+     * Reads a generated body. Skipping is free because every byte is a function of its offset.
+     */
+    private static class GeneratedInputStream extends InputStream {
+
+        private final Generator generator;
+        private final long length;
+        private long position;
+
+        private GeneratedInputStream(Generator generator, long length) {
+            this.generator = generator;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            byte[] b = new byte[1];
+            generator.fill(position++, b, 0, 1);
+            return b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= this.length) {
+                return -1;
+            }
+            int count = (int) Math.min(length, this.length - position);
+            generator.fill(position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Response headers which are merged and encoded in their wire format once, so the {@link NioHttpServer} writes them
+ * with one copy instead of iterating and encoding a header map for every response.
+ * <p/>
+ * Names are normalized like {@link Headers} does, so a block writes the same header lines as the map it was made of.
+ * Blocks are immutable and can be shared by any number of responses.
+ *
+ * @author Alexander Kiel
+ */
+class HeaderBlock {
+
+    static final HeaderBlock EMPTY = new HeaderBlock(Collections.<String, List<String>>emptyMap());
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final Map<String, List<String>> headers;
+    private final String[] names;
+    private final byte[] encoded;
+
+    /**
+     * The start of the lines of each name in {@link #encoded} followed by the length of the block.
+     */
+    private final int[] offsets;
+
+    private HeaderBlock(Map<String, List<String>> headers) {
+        this.headers = headers;
+        names = headers.keySet().toArray(new String[headers.size()]);
+        offsets = new int[names.length + 1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < names.length; i++) {
+            offsets[i] = out.size();
+            for (String value : headers.get(names[i])) {
+                byte[] line = (names[i] + ": " + value + "\r\n").getBytes(ISO_8859_1);
+                out.write(line, 0, line.length);
+            }
+        }
+        offsets[names.length] = out.size();
+        encoded = out.toByteArray();
+    }
+
+    /**
+     * Returns a block of the given headers in the iteration order of the map.
+     */
+    static HeaderBlock of(Map<String, List<String>> headers) {
+        if (headers.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<String>> normalized = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            normalized.put(normalize(header.getKey()), unmodifiableList(new ArrayList<String>(header.getValue())));
+        }
+        return new HeaderBlock(unmodifiableMap(normalized));
+    }
+
+    /**
+     * Normalizes a header name to an uppercase first character and lowercase others, as {@link Headers} does.
+     */
+    static String normalize(String name) {
+        if (name.isEmpty()) {
+            return name;
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns a block with the headers of this block and the given block, whose headers replace headers of this block
+     * with the same name.
+     */
+    HeaderBlock with(HeaderBlock overrides) {
+        if (overrides.headers.isEmpty()) {
+            return this;
+        }
+        if (headers.isEmpty()) {
+            return overrides;
+        }
+        Map<String, List<String>> merged = new LinkedHashMap<String, List<String>>(headers);
+        merged.keySet().removeAll(overrides.headers.keySet());
+        merged.putAll(overrides.headers);
+        return new HeaderBlock(unmodifiableMap(merged));
+    }
+
+    /**
+     * Returns a block with the headers of this block and the given header, which replaces a header with the same
+     * name.
+     */
+    HeaderBlock with(String name, String value) {
+        return with(of(Collections.singletonMap(name, Collections.singletonList(value))));
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Writes the header lines of this block except the headers with a name of the given map, which are written by the
+     * caller afterwards.
+     */
+    void writeTo(NioConnection connection, Headers overrides) throws IOException {
+        if (overrides.isEmpty()) {
+            connection.put(encoded, 0, encoded.length);
+            return;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!overrides.containsKey(names[i])) {
+                connection.put(encoded, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HeaderBlock" + headers;
+    }
+}
@@ -0,0 +1,101 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+/**
+ * An immutable copy of a histogram of durations in nanoseconds.
+ * <p/>
+ * Percentiles are accurate to about 3 % of their value.
+ *
+ * @author Alexander Kiel
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of all recorded durations in nanoseconds.
+     *
+     * @return the mean or 0 if nothing was recorded.
+     */
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest recorded duration in nanoseconds.
+     *
+     * @return the maximum or 0 if nothing was recorded.
+     */
+    public long getMaxNanos() {
+        return Math.max(0, max);
+    }
+
+    /**
+     * Returns the duration in nanoseconds which the given percentage of all recorded durations doesn't exceed.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the duration or 0 if nothing was recorded.
+     * @throws IllegalArgumentException if the percentile is outside of 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 100 but was " + percentile +
+                    ".");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot[count = " + count + ", mean = " + Math.round(getMeanNanos()) + " ns, p50 = " +
+                getValueAtPercentile(50) + " ns, p99 = " + getValueAtPercentile(99) + " ns, max = " +
+                getMaxNanos() + " ns]";
+    }
+}
@@ -0,0 +1,42 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Creates the HTTP server which sits underneath a mock server.
+ * <p/>
+ * Engines hand out implementations of the {@code com.sun.net.httpserver} API, so all handlers and filters of the mock
+ * work on every engine. The available engines are accessible through {@link HttpEngines}.
+ *
+ * @author Alexander Kiel
+ */
+public interface HttpEngine {
+
+    /**
+     * Creates a new HTTP server which is bound to the given address but not yet started.
+     *
+     * @param address the address to bind to; port 0 binds to any free port
+     * @return a new bound HTTP server
+     * @throws IOException if the server can't be bound
+     */
+    HttpServer createServer(InetSocketAddress address) throws IOException;
+}
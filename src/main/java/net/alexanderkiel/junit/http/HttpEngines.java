@@ -0,0 +1,93 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Factory methods for the available {@link HttpEngine HTTP engines}.
+ *
+ * @author Alexander Kiel
+ */
+public final class HttpEngines {
+
+    private static final HttpEngine JDK = new HttpEngine() {
+        public HttpServer createServer(InetSocketAddress address) throws IOException {
+            return HttpServer.create(address, 0);
+        }
+
+        @Override
+        public String toString() {
+            return "jdk()";
+        }
+    };
+
+    private HttpEngines() {
+    }
+
+    /**
+     * Returns the engine used if nothing else is configured, the HTTP server which is built into the JDK.
+     *
+     * @return the JDK engine.
+     */
+    public static HttpEngine jdk() {
+        return JDK;
+    }
+
+    /**
+     * Returns a non-blocking engine with one event loop per available processor.
+     *
+     * @return the NIO engine.
+     * @see #nio(int)
+     */
+    public static HttpEngine nio() {
+        return nio(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns a non-blocking engine which multiplexes all connections over the given number of selector based event
+     * loops.
+     * <p/>
+     * Requests are parsed out of direct buffers. In combination with {@link ExecutorStrategies#sameThread()} the
+     * handlers run directly on the event loops without any thread handoff, which gives the highest throughput as long
+     * as the responses are fast. With any other executor strategy the handlers run on the executor as usual.
+     *
+     * @param eventLoops the number of event loop threads
+     * @return the NIO engine.
+     */
+    public static HttpEngine nio(final int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("The number of event loops has to be at least 1 but was " +
+                    eventLoops + ".");
+        }
+        return new HttpEngine() {
+            public HttpServer createServer(InetSocketAddress address) throws IOException {
+                NioHttpServer server = new NioHttpServer(eventLoops);
+                server.bind(address, 0);
+                return server;
+            }
+
+            @Override
+            public String toString() {
+                return "nio(" + eventLoops + ")";
+            }
+        };
+    }
+}
@@ -16,14 +16,25 @@
 
 package net.alexanderkiel.junit.http;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Static facade for mocking HTTP servers in tests.
+ * <p/>
+ * The static methods operate on one server per JVM which is bound to a fixed port. Tests which run in parallel should
+ * use {@link #create(String)} instead, which returns an independent {@link HttpMockServer} bound to an ephemeral port.
+ *
  * @author Alexander Kiel
  */
 public class HttpMock {
 
-    private static HttpMockCore httpMockCore;
+    private static final String ANY_PORT_HOST = "localhost";
+    private static final int ANY_PORT = 0;
+
+    private static HttpMockServer httpMockServer;
 
     public enum Method {
         HEAD, GET, POST, PUT, DELETE, TRACE, OPTIONS, CONNECT, PATCH
@@ -32,34 +43,183 @@ public class HttpMock {
     private HttpMock() {
     }
 
-    public static void start(int port, String contextPath) throws IOException {
-        start("localhost", port, contextPath);
+    /**
+     * Creates a new mock server on {@code localhost} which is bound to a free port chosen by the operating system.
+     * <p/>
+     * The server is bound but not yet started. Call {@link HttpMockServer#start()} after registering the mockings or
+     * before, as you like.
+     *
+     * @param contextPath the context path under which mockings are registered
+     * @return a new independent mock server
+     * @throws IOException if the server can't be bound
+     */
+    public static HttpMockServer create(String contextPath) throws IOException {
+        return create(ANY_PORT_HOST, ANY_PORT, contextPath);
     }
 
-    public static void start(String host, int port, String contextPath) throws IOException {
-        httpMockCore = new HttpMockCoreFactory(host, port, contextPath).create();
+    /**
+     * Creates a new mock server on the given host and port.
+     * <p/>
+     * A port of 0 binds the server to a free port chosen by the operating system. Use {@link HttpMockServer#getPort()}
+     * to obtain it.
+     *
+     * @param host        the host name to bind to
+     * @param port        the port to bind to or 0 for any free port
+     * @param contextPath the context path under which mockings are registered
+     * @return a new independent mock server
+     * @throws IOException if the server can't be bound
+     */
+    public static HttpMockServer create(String host, int port, String contextPath) throws IOException {
+        return create(host, port, contextPath, ExecutorStrategies.defaultStrategy());
+    }
+
+    /**
+     * Creates a new mock server on the given host and port which handles requests on executors created by the given
+     * strategy.
+     *
+     * @param host             the host name to bind to
+     * @param port             the port to bind to or 0 for any free port
+     * @param contextPath      the context path under which mockings are registered
+     * @param executorStrategy the strategy which creates the executor for handling requests
+     * @return a new independent mock server
+     * @throws IOException if the server can't be bound
+     * @see ExecutorStrategies
+     */
+    public static HttpMockServer create(String host, int port, String contextPath, ExecutorStrategy executorStrategy)
+            throws IOException {
+        return create(host, port, contextPath, HttpEngines.jdk(), executorStrategy);
+    }
+
+    /**
+     * Creates a new mock server on the given host and port which runs on the given engine and handles requests on
+     * executors created by the given strategy.
+     *
+     * @param host             the host name to bind to
+     * @param port             the port to bind to or 0 for any free port
+     * @param contextPath      the context path under which mockings are registered
+     * @param engine           the HTTP server implementation to use
+     * @param executorStrategy the strategy which creates the executor for handling requests
+     * @return a new independent mock server
+     * @throws IOException if the server can't be bound
+     * @see HttpEngines
+     * @see ExecutorStrategies
+     */
+    public static HttpMockServer create(String host, int port, String contextPath, HttpEngine engine,
+                                        ExecutorStrategy executorStrategy) throws IOException {
+        HttpMockCore httpMockCore = new HttpMockCoreFactory(host, port, contextPath, engine, executorStrategy)
+                .create();
         httpMockCore.init();
         httpMockCore.setCommonHeader("Access-Control-Allow-Origin", "*");
         httpMockCore.setCommonHeader("Access-Control-Allow-Methods", "GET, HEAD, PUT, DELETE, POST, OPTIONS");
         httpMockCore.setCommonHeader("Access-Control-Allow-Headers", "Content-Type, Accept, Accept-Charset, " +
                 "Authorization");
         httpMockCore.setCommonHeader("Access-Control-Max-Age", "1728000");
-        httpMockCore.start();
+        return new HttpMockServer(httpMockCore);
+    }
+
+    public static void start(int port, String contextPath) throws IOException {
+        start("localhost", port, contextPath);
+    }
+
+    public static void start(String host, int port, String contextPath) throws IOException {
+        httpMockServer = create(host, port, contextPath);
+        httpMockServer.start();
     }
 
     public static void stop() {
-        httpMockCore.stop();
+        httpMockServer.stop();
+    }
+
+    /**
+     * Resets the static mock server, so it can be used by the next test without a restart.
+     *
+     * @see HttpMockServer#reset()
+     */
+    public static void reset() {
+        httpMockServer.reset();
+    }
+
+    /**
+     * Returns the port the static mock server is actually bound to.
+     *
+     * @return the bound port; useful if the server was started with port 0.
+     */
+    public static int getPort() {
+        return httpMockServer.getPort();
+    }
+
+    /**
+     * Records the requests without a mocking of the static mock server.
+     *
+     * @see HttpMockServer#record(URI, File)
+     */
+    public static void record(URI target, File store) throws IOException {
+        httpMockServer.record(target, store);
+    }
+
+    /**
+     * Replays recorded responses for the requests without a mocking of the static mock server.
+     *
+     * @see HttpMockServer#replay(File)
+     */
+    public static void replay(File store) throws IOException {
+        httpMockServer.replay(store);
     }
 
     public static OngoingMocking given(Method method, String path) {
-        return httpMockCore.given(method, path);
+        return httpMockServer.given(method, path);
+    }
+
+    /**
+     * Mocks a request on the static mock server which is only answered if all given matchers match it.
+     *
+     * @see HttpMockServer#given(Method, String, RequestMatcher...)
+     */
+    public static OngoingMocking given(Method method, String path, RequestMatcher... matchers) {
+        return httpMockServer.given(method, path, matchers);
     }
 
     public static OngoingMocking given(Method method, String path, String payloadContentType, String payload) {
-        return httpMockCore.given(method, path, payloadContentType, payload);
+        return httpMockServer.given(method, path, payloadContentType, payload);
+    }
+
+    /**
+     * Mocks a request on the static mock server whose body is compared with the given payload while it is received.
+     *
+     * @see HttpMockServer#given(Method, String, String, Payload)
+     */
+    public static OngoingMocking given(Method method, String path, String payloadContentType, Payload payload) {
+        return httpMockServer.given(method, path, payloadContentType, payload);
+    }
+
+    /**
+     * Returns the journal of the most recent requests of the static mock server.
+     *
+     * @return the request journal.
+     */
+    public static RequestJournal getRequestJournal() {
+        return httpMockServer.getRequestJournal();
+    }
+
+    /**
+     * Returns a snapshot of the latency histograms of the static mock server and its mockings.
+     *
+     * @return the metrics at the time of the call.
+     */
+    public static ServerMetrics getMetrics() {
+        return httpMockServer.getMetrics();
+    }
+
+    /**
+     * Waits until every mocking of the static mock server was called at least once.
+     *
+     * @see HttpMockServer#awaitAll(long, TimeUnit)
+     */
+    public static void awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        httpMockServer.awaitAll(timeout, unit);
     }
 
     public static void verify() {
-        httpMockCore.verify();
+        httpMockServer.verify();
     }
 }
@@ -17,84 +17,369 @@
 package net.alexanderkiel.junit.http;
 
 import com.sun.net.httpserver.Filter;
-import com.sun.net.httpserver.Headers;
-import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpServer;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.SEVERE;
 
 /**
  * @author Alexander Kiel
  */
 class HttpMockCore {
 
-    private static final int THREAD_POOL_SIZE = 10;
     private static final Logger LOGGER = Logger.getLogger(HttpMockCore.class.getName());
 
+    static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final long EXECUTOR_TERMINATION_TIMEOUT_MILLIS = 1000;
+
     private final HttpServer httpServer;
     private final String contextPath;
 
     private DefaultHandler defaultHandler;
     private CommonHeaderFilter commonHeaderFilter;
-    private final List<OngoingMocking> mockings;
+    private volatile RequestJournal requestJournal;
+    private final List<BaseOngoingMocking> mockings;
+    private final LatencyHistogram queueWait;
+    private final InFlightCounter inFlight;
+    private final ResponseScheduler responseScheduler;
+    private final Throttle throttle;
+    private ExecutorStrategy executorStrategy;
+    private ExecutorService executor;
+    private TrafficRecorder trafficRecorder;
+    private FileWatcher stubWatcher;
+    private volatile boolean running;
+    private long drainTimeoutNanos;
+    private volatile ShutdownMetrics lastShutdown;
 
     HttpMockCore(HttpServer httpServer, String contextPath) {
+        this(httpServer, contextPath, ExecutorStrategies.defaultStrategy());
+    }
+
+    HttpMockCore(HttpServer httpServer, String contextPath, ExecutorStrategy executorStrategy) {
         this.httpServer = httpServer;
         this.contextPath = contextPath;
-        mockings = new ArrayList<OngoingMocking>();
+        this.executorStrategy = executorStrategy;
+        mockings = new ArrayList<BaseOngoingMocking>();
+        queueWait = new LatencyHistogram();
+        requestJournal = new RequestJournal(RequestJournal.DEFAULT_CAPACITY);
+        inFlight = new InFlightCounter();
+        responseScheduler = new ResponseScheduler("http-mock-timer", inFlight);
+        throttle = new Throttle();
+        drainTimeoutNanos = MILLISECONDS.toNanos(DEFAULT_DRAIN_TIMEOUT_MILLIS);
     }
 
     void init() {
-        httpServer.setExecutor(Executors.newFixedThreadPool(THREAD_POOL_SIZE));
-
         defaultHandler = new DefaultHandler(URI.create(contextPath));
         commonHeaderFilter = new CommonHeaderFilter();
-        httpServer.createContext(contextPath, defaultHandler).getFilters().add(commonHeaderFilter);
-        httpServer.createContext("/", new CatchAllHandler()).getFilters().add(commonHeaderFilter);
+        JournalFilter journalFilter = new JournalFilter(this);
+        addFilters(httpServer.createContext(contextPath, defaultHandler), journalFilter, commonHeaderFilter);
+        addFilters(httpServer.createContext("/", new CatchAllHandler()), journalFilter, commonHeaderFilter);
+    }
+
+    private static void addFilters(HttpContext context, Filter... filters) {
+        context.getFilters().addAll(Arrays.asList(filters));
     }
 
     void start() {
         if (LOGGER.isLoggable(FINE)) {
-            LOGGER.fine("Start HTTP Server on: " + httpServer.getAddress() + contextPath);
+            LOGGER.fine("Start HTTP Server on: " + httpServer.getAddress() + contextPath + " using " +
+                    executorStrategy);
         }
+        executor = executorStrategy.newExecutor();
+        httpServer.setExecutor(new QueueTimingExecutor(executor, queueWait, inFlight));
+        responseScheduler.setExecutor(executor);
         httpServer.start();
+        running = true;
     }
 
+    /**
+     * Waits up to the drain timeout until the exchanges in flight finished, closes the socket and shuts the executor
+     * down. Exchanges which arrive while draining are still accepted, so that clients don't see connection errors.
+     */
     void stop() {
         if (LOGGER.isLoggable(FINE)) {
             LOGGER.fine("Stop HTTP Server.");
         }
+        long startNanos = System.nanoTime();
+        running = false;
+        boolean interrupted = false;
+        try {
+            inFlight.awaitZero(startNanos + drainTimeoutNanos);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        long drainNanos = System.nanoTime() - startNanos;
+        int abandonedExchanges = inFlight.getCount();
+        if (abandonedExchanges > 0) {
+            LOGGER.warning("Abandon " + abandonedExchanges + " exchanges of " + this + " which are still in flight " +
+                    "after " + NANOSECONDS.toMillis(drainNanos) + " ms.");
+        }
         httpServer.stop(0);
+        responseScheduler.shutdown();
+        closeTrafficRecorder();
+        closeStubWatcher();
+        boolean executorTerminated = true;
+        if (executor != null) {
+            try {
+                executorTerminated = shutdownExecutor();
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                executorTerminated = executor.isTerminated();
+                interrupted = true;
+            }
+            if (!executorTerminated) {
+                LOGGER.warning("The executor " + executor + " of " + this + " didn't terminate, so its threads " +
+                        "leak.");
+            }
+        }
+        lastShutdown = new ShutdownMetrics(drainNanos, System.nanoTime() - startNanos, abandonedExchanges,
+                executorTerminated);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lets the executor finish its running tasks and interrupts them if they don't finish in time.
+     *
+     * @return {@code true} if the executor terminated.
+     */
+    private boolean shutdownExecutor() throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(EXECUTOR_TERMINATION_TIMEOUT_MILLIS, MILLISECONDS)) {
+            return true;
+        }
+        executor.shutdownNow();
+        return executor.awaitTermination(EXECUTOR_TERMINATION_TIMEOUT_MILLIS, MILLISECONDS);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Removes all mockings, stubs, recording and replaying, empties the request journal and the metrics and lifts the
+     * bandwidth limit, while the socket, the executor and the common headers stay as they are.
+     */
+    void reset() {
+        closeTrafficRecorder();
+        closeStubWatcher();
+        defaultHandler.reset();
+        mockings.clear();
+        requestJournal = new RequestJournal(requestJournal.getCapacity());
+        throttle.setBytesPerSecond(0);
+        queueWait.reset();
+    }
+
+    /**
+     * Sets how long {@link #stop()} waits for the exchanges in flight.
+     *
+     * @param timeout the maximum time to wait or 0 to not wait at all
+     * @param unit    the unit of the timeout
+     */
+    void setDrainTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The drain timeout has to be non-negative but was " + timeout + ".");
+        }
+        drainTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the strategy which creates the executor for handling requests. Has to be called before {@link #start()}.
+     *
+     * @param executorStrategy the strategy to use
+     */
+    void setExecutorStrategy(ExecutorStrategy executorStrategy) {
+        if (executorStrategy == null) {
+            throw new NullPointerException("Can't resolve the argument 'executorStrategy'.");
+        }
+        if (executor != null) {
+            throw new IllegalStateException("The executor strategy can't be changed after the server was started.");
+        }
+        this.executorStrategy = executorStrategy;
+    }
+
+    /**
+     * Replaces the request journal by an empty one of the given capacity.
+     *
+     * @param capacity the maximum number of requests the journal holds
+     */
+    void setJournalCapacity(int capacity) {
+        requestJournal = new RequestJournal(capacity);
+    }
+
+    /**
+     * Limits the bandwidth shared by all mockings.
+     *
+     * @param bytesPerSecond the bandwidth in bytes per second or 0 for unlimited
+     */
+    void setBandwidth(long bytesPerSecond) {
+        throttle.setBytesPerSecond(bytesPerSecond);
+    }
+
+    RequestJournal getRequestJournal() {
+        return requestJournal;
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the server and all its mockings.
+     */
+    ServerMetrics getMetrics() {
+        List<RouteMetrics> routes = new ArrayList<RouteMetrics>(mockings.size());
+        for (BaseOngoingMocking mocking : mockings) {
+            routes.add(mocking.getMetrics());
+        }
+        return new ServerMetrics(queueWait.snapshot(), routes, inFlight.getCount(), lastShutdown);
+    }
+
+    InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    String getContextPath() {
+        return contextPath;
     }
 
     void setCommonHeader(String name, String value) {
         commonHeaderFilter.setHeader(name, value);
     }
 
+    /**
+     * Forwards all requests without a mocking to the target and appends the exchanges to the given store.
+     */
+    void record(URI target, File store) throws IOException {
+        TrafficRecorder trafficRecorder = new TrafficRecorder(target, store);
+        closeTrafficRecorder();
+        this.trafficRecorder = trafficRecorder;
+        defaultHandler.setFallbackHandler(trafficRecorder);
+    }
+
+    /**
+     * Answers all requests without a mocking with the responses of the given store.
+     */
+    void replay(File store) throws IOException {
+        TrafficReplayer trafficReplayer = new TrafficReplayer(store);
+        closeTrafficRecorder();
+        defaultHandler.setFallbackHandler(trafficReplayer);
+    }
+
+    /**
+     * Replaces all stubs by the stubs of the given file.
+     */
+    void loadStubs(File stubFile) throws IOException {
+        RouteTrie stubRoutes = new RouteTrie();
+        for (StubFile.Stub stub : StubFile.read(stubFile)) {
+            BaseOngoingMocking mocking = prepare(new ReadonlyOngoingMocking(stub.getMethod(), stub.getPath()));
+            mocking.willRespond(stub.getResponse());
+            if (stub.getLatency() != null) {
+                mocking.withLatency(stub.getLatency());
+            }
+            mocking.setMatchers(stub.getMatchers());
+            stubRoutes.register(stub.getMethod(), stub.getPath(), stub.getMatchers(), mocking);
+        }
+        defaultHandler.setStubRoutes(stubRoutes);
+    }
+
+    /**
+     * Loads the stubs of the given file and reloads them whenever the file changes. An invalid file is logged and
+     * the previous stubs stay in place.
+     */
+    void watchStubs(final File stubFile) throws IOException {
+        closeStubWatcher();
+        loadStubs(stubFile);
+        FileWatcher stubWatcher = new FileWatcher(stubFile, new Runnable() {
+            public void run() {
+                try {
+                    loadStubs(stubFile);
+                    LOGGER.info("Reloaded the stubs of " + stubFile + ".");
+                } catch (IOException e) {
+                    LOGGER.log(SEVERE, "Keep the previous stubs because " + stubFile + " can't be loaded.", e);
+                } catch (RuntimeException e) {
+                    LOGGER.log(SEVERE, "Keep the previous stubs because " + stubFile + " can't be loaded.", e);
+                }
+            }
+        });
+        this.stubWatcher = stubWatcher;
+    }
+
+    private void closeStubWatcher() {
+        if (stubWatcher != null) {
+            try {
+                stubWatcher.close();
+            } catch (IOException e) {
+                LOGGER.log(FINE, "Error while closing " + stubWatcher + ".", e);
+            }
+            stubWatcher = null;
+        }
+    }
+
+    private void closeTrafficRecorder() {
+        if (trafficRecorder != null) {
+            try {
+                trafficRecorder.close();
+            } catch (IOException e) {
+                LOGGER.log(FINE, "Error while closing " + trafficRecorder + ".", e);
+            }
+            trafficRecorder = null;
+        }
+    }
+
     OngoingMocking given(HttpMock.Method method, String path) {
-        ReadonlyOngoingMocking mocking = new ReadonlyOngoingMocking(method, path);
-        defaultHandler.registerSubHandler(method, path, mocking);
-        mockings.add(mocking);
-        return mocking;
+        return register(new ReadonlyOngoingMocking(method, path));
+    }
+
+    OngoingMocking given(HttpMock.Method method, String path, RequestMatcher... matchers) {
+        List<RequestMatcher> matcherList = Arrays.asList(matchers.clone());
+        for (RequestMatcher matcher : matcherList) {
+            if (matcher == null) {
+                throw new NullPointerException("Can't resolve the argument 'matchers'.");
+            }
+        }
+        return register(new ReadonlyOngoingMocking(method, path), matcherList);
     }
 
     OngoingMocking given(HttpMock.Method method, String path, String payloadContentType,
                          String payload) {
-        WritableOngoingMocking mocking = new WritableOngoingMocking(method, path, payloadContentType, payload);
-        defaultHandler.registerSubHandler(method, path, mocking);
+        return register(new WritableOngoingMocking(method, path, payloadContentType, payload));
+    }
+
+    OngoingMocking given(HttpMock.Method method, String path, String payloadContentType, Payload payload) {
+        return register(new StreamingOngoingMocking(method, path, payloadContentType, payload));
+    }
+
+    private OngoingMocking register(BaseOngoingMocking mocking) {
+        return register(mocking, Collections.<RequestMatcher>emptyList());
+    }
+
+    private OngoingMocking register(BaseOngoingMocking mocking, List<RequestMatcher> matchers) {
+        prepare(mocking);
+        mocking.setMatchers(matchers);
+        defaultHandler.registerSubHandler(mocking.getMethod(), mocking.getPath(), matchers, mocking);
         mockings.add(mocking);
         return mocking;
     }
 
+    private BaseOngoingMocking prepare(BaseOngoingMocking mocking) {
+        mocking.setResponseScheduler(responseScheduler);
+        mocking.setServerThrottle(throttle);
+        return mocking;
+    }
+
     /**
      * Verifies all requests.
      *
@@ -106,37 +391,20 @@ class HttpMockCore {
         }
     }
 
+    /**
+     * Waits until every mocking was called at least once.
+     *
+     * @throws AssertionError if a mocking wasn't called within the timeout.
+     */
+    void awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        for (BaseOngoingMocking mocking : new ArrayList<BaseOngoingMocking>(mockings)) {
+            mocking.awaitCalled(1, deadlineNanos);
+        }
+    }
+
     @Override
     public String toString() {
         return "HttpMockCore[httpServer.address = " + httpServer.getAddress() + ", contextPath = '" + contextPath + "']";
     }
-
-    private static class CommonHeaderFilter extends Filter {
-
-        private final Map<String, List<String>> commonHeaders;
-
-        private CommonHeaderFilter() {
-            commonHeaders = new Headers();
-        }
-
-        void setHeader(String name, String value) {
-            commonHeaders.put(name, singletonList(value));
-        }
-
-        @Override
-        public void doFilter(HttpExchange httpExchange, Chain chain) throws IOException {
-            httpExchange.getResponseHeaders().putAll(commonHeaders);
-            chain.doFilter(httpExchange);
-        }
-
-        @Override
-        public String description() {
-            return "Sets common response headers.";
-        }
-
-        @Override
-        public String toString() {
-            return "CommonHeaderFilter[commonHeaders = " + commonHeaders + "]";
-        }
-    }
 }
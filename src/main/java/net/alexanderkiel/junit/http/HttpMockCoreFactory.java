@@ -16,8 +16,6 @@
 
 package net.alexanderkiel.junit.http;
 
-import com.sun.net.httpserver.HttpServer;
-
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
@@ -31,11 +29,20 @@ class HttpMockCoreFactory {
     private final String hostname;
     private final int port;
     private final String contextPath;
+    private final HttpEngine engine;
+    private final ExecutorStrategy executorStrategy;
 
     HttpMockCoreFactory(String hostname, int port, String contextPath) {
+        this(hostname, port, contextPath, HttpEngines.jdk(), ExecutorStrategies.defaultStrategy());
+    }
+
+    HttpMockCoreFactory(String hostname, int port, String contextPath, HttpEngine engine,
+                        ExecutorStrategy executorStrategy) {
         this.hostname = hostname;
         this.port = port;
         this.contextPath = contextPath;
+        this.engine = engine;
+        this.executorStrategy = executorStrategy;
     }
 
     HttpMockCore create() throws IOException {
@@ -48,12 +55,13 @@ class HttpMockCoreFactory {
     }
 
     private HttpMockCore doCreate() throws IOException {
-        HttpServer httpServer = HttpServer.create(new InetSocketAddress(hostname, port), 0);
-        return new HttpMockCore(httpServer, contextPath);
+        return new HttpMockCore(engine.createServer(new InetSocketAddress(hostname, port)), contextPath,
+                executorStrategy);
     }
 
     @Override
     public String toString() {
-        return "HttpMockCoreFactory[hostname = '" + hostname + "', port = " + port + "]";
+        return "HttpMockCoreFactory[hostname = '" + hostname + "', port = " + port + ", engine = " + engine +
+                ", executorStrategy = " + executorStrategy + "]";
     }
 }
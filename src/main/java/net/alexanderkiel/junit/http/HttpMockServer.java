@@ -0,0 +1,306 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle to one independent HTTP mock server.
+ * <p/>
+ * Instances are obtained through {@link HttpMock#create(String)} and are bound to their socket already. Any number of
+ * them can run concurrently in one JVM, so tests which run in parallel don't have to agree on fixed ports. Use {@link
+ * #getPort()} or {@link #getBaseUri()} to find out where the server listens.
+ *
+ * @author Alexander Kiel
+ */
+public class HttpMockServer {
+
+    private final HttpMockCore httpMockCore;
+
+    HttpMockServer(HttpMockCore httpMockCore) {
+        this.httpMockCore = httpMockCore;
+    }
+
+    /**
+     * Sets the strategy which creates the executor for handling requests.
+     * <p/>
+     * The default is a fixed pool of 10 threads. Use {@link ExecutorStrategies#virtualThreadPerRequest()} for load
+     * tests with thousands of concurrent connections.
+     *
+     * @param executorStrategy the strategy to use
+     * @throws IllegalStateException if the server was already started
+     */
+    public void setExecutorStrategy(ExecutorStrategy executorStrategy) {
+        httpMockCore.setExecutorStrategy(executorStrategy);
+    }
+
+    /**
+     * Replaces the request journal by an empty one which holds up to the given number of requests. The default
+     * capacity is 1024.
+     *
+     * @param capacity the maximum number of requests the journal holds
+     */
+    public void setJournalCapacity(int capacity) {
+        httpMockCore.setJournalCapacity(capacity);
+    }
+
+    /**
+     * Limits the bandwidth with which all mockings of this server read request bodies and write response bodies. The
+     * bandwidth is shared by all requests and applies in addition to the bandwidth of single mockings.
+     *
+     * @param bytesPerSecond the bandwidth in bytes per second or 0 for unlimited
+     * @see OngoingMocking#withBandwidth(long)
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        httpMockCore.setBandwidth(bytesPerSecond);
+    }
+
+    /**
+     * Sets how long {@link #stop()} waits for the requests in flight, including responses with latency, before it
+     * closes the connections. The default is 5 seconds.
+     *
+     * @param timeout the maximum time to wait or 0 to not wait at all
+     * @param unit    the unit of the timeout
+     */
+    public void setDrainTimeout(long timeout, TimeUnit unit) {
+        httpMockCore.setDrainTimeout(timeout, unit);
+    }
+
+    /**
+     * Returns the journal of the most recent requests.
+     *
+     * @return the request journal.
+     */
+    public RequestJournal getRequestJournal() {
+        return httpMockCore.getRequestJournal();
+    }
+
+    /**
+     * Returns a snapshot of the latency histograms of this server and its mockings.
+     *
+     * @return the metrics at the time of the call.
+     */
+    public ServerMetrics getMetrics() {
+        return httpMockCore.getMetrics();
+    }
+
+    public void start() {
+        httpMockCore.start();
+    }
+
+    /**
+     * Stops the server gracefully. Waits up to the {@link #setDrainTimeout(long, TimeUnit) drain timeout} until the
+     * requests in flight are answered, closes the socket and shuts down the threads of the server. A warning is logged
+     * if requests had to be abandoned or threads didn't terminate.
+     *
+     * @see ServerMetrics#getLastShutdown()
+     */
+    public void stop() {
+        httpMockCore.stop();
+    }
+
+    /**
+     * Removes all mockings, stubs, recording and replaying, empties the request journal and the metrics and lifts the
+     * bandwidth limit, so the server can be used by the next test without a restart. The socket and the threads of the
+     * server stay in place. Requests which arrive during the reset get either the old or no mockings.
+     *
+     * @see HttpMockServerPool
+     */
+    public void reset() {
+        httpMockCore.reset();
+    }
+
+    boolean isRunning() {
+        return httpMockCore.isRunning();
+    }
+
+    String getContextPath() {
+        return httpMockCore.getContextPath();
+    }
+
+    /**
+     * Returns the address the server is actually bound to.
+     *
+     * @return the bound address, never {@code null}.
+     */
+    public InetSocketAddress getAddress() {
+        return httpMockCore.getAddress();
+    }
+
+    /**
+     * Returns the port the server is actually bound to.
+     * <p/>
+     * This is the ephemeral port chosen by the operating system if the server was created with port 0.
+     *
+     * @return the bound port.
+     */
+    public int getPort() {
+        return getAddress().getPort();
+    }
+
+    /**
+     * Returns the URI of the context path of this server, e.g. {@code http://localhost:54321/foo}.
+     *
+     * @return the URI of the context path of this server.
+     */
+    public URI getBaseUri() {
+        InetSocketAddress address = getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort() +
+                httpMockCore.getContextPath());
+    }
+
+    /**
+     * Forwards all requests without a mocking to the given target server and appends the exchanges to the given
+     * traffic store. The store is created if it doesn't exist. Use {@link #replay(File)} to answer requests from the
+     * store later.
+     *
+     * @param target the base URI of the target server, e.g. {@code http://localhost:8080}
+     * @param store  the file of the traffic store
+     * @throws IOException if the store can't be opened
+     */
+    public void record(URI target, File store) throws IOException {
+        httpMockCore.record(target, store);
+    }
+
+    /**
+     * Answers all requests without a mocking with the responses recorded in the given traffic store.
+     * <p/>
+     * Requests are matched by method, path, query and body. If the same request was recorded several times, the
+     * responses are replayed in order and the last one is repeated. Requests which weren't recorded get 404. The store
+     * is memory mapped and only its index is read upfront, so large stores load fast, and servers which replay the
+     * same store share the mapping.
+     *
+     * @param store the file of the traffic store
+     * @throws IOException if the store is invalid
+     * @throws IllegalArgumentException if the store doesn't exist
+     */
+    public void replay(File store) throws IOException {
+        httpMockCore.replay(store);
+    }
+
+    /**
+     * Replaces all stubs by the stubs of the given JSON file.
+     * <p/>
+     * Stubs answer requests like mockings but aren't verified. Mockings registered with {@code given} take precedence
+     * over stubs with the same method and path. The file holds an array of stubs, e.g.
+     * <pre>
+     * [{"method": "GET", "path": "users/{id}", "status": 200, "contentType": "application/json",
+     *   "headers": {"Cache-Control": "no-cache"}, "bodyFile": "bodies/user.json", "latencyMillis": 20},
+     *  {"method": "DELETE", "path": "users/{id}", "status": 204}]
+     * </pre>
+     * An inline {@code body} is sent in UTF-8; a {@code bodyFile} is resolved against the directory of the stub file
+     * and mapped into memory on its first request. Stubs of the same method and path are distinguished by a {@code
+     * request} object with the {@link RequestMatcher}s {@code headers}, {@code headerPatterns}, {@code query}, {@code
+     * queryPatterns}, {@code json}, {@code jsonPatterns} and {@code bodySha256}, e.g.
+     * <pre>
+     * {"method": "GET", "path": "users", "request": {"query": {"page": "2"}}, "bodyFile": "bodies/page-2.json"}
+     * </pre>
+     *
+     * @param stubFile the JSON file with the stubs
+     * @throws IOException if the file can't be read or is invalid
+     */
+    public void loadStubs(File stubFile) throws IOException {
+        httpMockCore.loadStubs(stubFile);
+    }
+
+    /**
+     * Loads the stubs of the given JSON file like {@link #loadStubs(File)} and reloads them whenever the file changes,
+     * without restarting the server. Requests see either all old or all new stubs. If a changed file is invalid, the
+     * error is logged and the previous stubs stay in place. Watching ends when the server is stopped.
+     *
+     * @param stubFile the JSON file with the stubs
+     * @throws IOException if the file can't be read or is invalid
+     */
+    public void watchStubs(File stubFile) throws IOException {
+        httpMockCore.watchStubs(stubFile);
+    }
+
+    public OngoingMocking given(HttpMock.Method method, String path) {
+        return httpMockCore.given(method, path);
+    }
+
+    /**
+     * Mocks a request which is only answered by this mocking if all given matchers match it, e.g.
+     * <pre>
+     * server.given(GET, "users", RequestMatcher.query("page", "2")).willRespond(secondPage);
+     * server.given(GET, "users").willRespond(firstPage);
+     * </pre>
+     * Any number of mockings of the same method and path can use different matchers. Of the mockings whose matchers
+     * all match, the one with the most matchers answers the request. Mockings with the same method, path and matchers
+     * replace each other. Requests which no mocking matches get 404.
+     *
+     * @param method   the method of the request
+     * @param path     the path of the request
+     * @param matchers the conditions on headers, query parameters or the body of the request
+     * @return the mocking
+     * @see RequestMatcher
+     */
+    public OngoingMocking given(HttpMock.Method method, String path, RequestMatcher... matchers) {
+        return httpMockCore.given(method, path, matchers);
+    }
+
+    public OngoingMocking given(HttpMock.Method method, String path, String payloadContentType, String payload) {
+        return httpMockCore.given(method, path, payloadContentType, payload);
+    }
+
+    /**
+     * Mocks a request whose body is compared with the given payload while it is received, so that large uploads can
+     * be verified in constant memory.
+     *
+     * @param method             the method of the request
+     * @param path               the path of the request
+     * @param payloadContentType the expected content type of the request
+     * @param payload            the expected body of the request
+     * @return the mocking
+     * @see Payload
+     */
+    public OngoingMocking given(HttpMock.Method method, String path, String payloadContentType, Payload payload) {
+        return httpMockCore.given(method, path, payloadContentType, payload);
+    }
+
+    /**
+     * Verifies all requests.
+     *
+     * @throws AssertionError if one of the request were invalid.
+     */
+    public void verify() {
+        httpMockCore.verify();
+    }
+
+    /**
+     * Waits until every mocking of this server was called at least once, e.g. by code under test which calls the mock
+     * asynchronously. Returns as soon as the last request arrived.
+     *
+     * @param timeout the maximum time to wait for all requests
+     * @param unit    the unit of the timeout
+     * @throws AssertionError       if a mocking wasn't called within the timeout.
+     * @throws InterruptedException if the waiting thread was interrupted.
+     * @see OngoingMocking#awaitCalled(long, long, TimeUnit)
+     */
+    public void awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        httpMockCore.awaitAll(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMockServer[" + httpMockCore + "]";
+    }
+}
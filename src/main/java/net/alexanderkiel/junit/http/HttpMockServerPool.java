@@ -0,0 +1,207 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of started mock servers which are reset instead of stopped between tests.
+ * <p/>
+ * Creating a server binds a socket and starting it starts its threads, which dominates the setup time of short tests.
+ * A pooled server keeps both: releasing it only {@link HttpMockServer#reset() resets} it, so acquiring it again takes
+ * microseconds. Servers are pooled per context path and bound to a free port, so tests have to use {@link
+ * HttpMockServer#getBaseUri()}.
+ * <pre>
+ * private static final HttpMockServerPool POOL = HttpMockServerPool.shared();
+ * private HttpMockServer server;
+ *
+ * &#64;Before
+ * public void setUp() throws IOException {
+ *     server = POOL.acquire("/foo");
+ * }
+ *
+ * &#64;After
+ * public void tearDown() {
+ *     POOL.release(server);
+ * }
+ * </pre>
+ * Pooled servers must not be stopped. The servers of the {@link #shared() shared} pool are stopped when the JVM shuts
+ * down. Idle servers keep their threads, which aren't daemon threads, so a JVM which isn't ended by {@link
+ * System#exit(int)}, e.g. a plain {@code main} method, only ends after the pool was {@link #close() closed}.
+ *
+ * @author Alexander Kiel
+ */
+public final class HttpMockServerPool implements Closeable {
+
+    private static final String HOST = "localhost";
+
+    private final HttpEngine engine;
+    private final ExecutorStrategy executorStrategy;
+    private final ConcurrentMap<String, Queue<HttpMockServer>> idleServers;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool of servers with the default engine and executor strategy.
+     */
+    public HttpMockServerPool() {
+        this(HttpEngines.jdk(), ExecutorStrategies.defaultStrategy());
+    }
+
+    /**
+     * Creates a pool of servers which run on the given engine and handle requests on executors created by the given
+     * strategy.
+     *
+     * @param engine           the engine of the servers
+     * @param executorStrategy the strategy which creates the executors of the servers
+     */
+    public HttpMockServerPool(HttpEngine engine, ExecutorStrategy executorStrategy) {
+        if (engine == null) {
+            throw new NullPointerException("Can't resolve the argument 'engine'.");
+        }
+        if (executorStrategy == null) {
+            throw new NullPointerException("Can't resolve the argument 'executorStrategy'.");
+        }
+        this.engine = engine;
+        this.executorStrategy = executorStrategy;
+        idleServers = new ConcurrentHashMap<String, Queue<HttpMockServer>>();
+    }
+
+    /**
+     * Returns the pool shared by all tests of the JVM.
+     * <p/>
+     * Test runners like Surefire end the JVM by {@link System#exit(int)}, which stops the idle servers. Other callers
+     * have to {@link #close() close} the shared pool when they are done, because its idle servers keep the JVM alive.
+     *
+     * @return the shared pool
+     */
+    public static HttpMockServerPool shared() {
+        return SharedPoolHolder.POOL;
+    }
+
+    /**
+     * Returns an idle server with the given context path or starts a new one if there is none. The server has no
+     * mockings and an empty request journal.
+     *
+     * @param contextPath the context path under which mockings are registered
+     * @return a started server
+     * @throws IOException if a new server can't be bound
+     */
+    public HttpMockServer acquire(String contextPath) throws IOException {
+        if (contextPath == null) {
+            throw new NullPointerException("Can't resolve the argument 'contextPath'.");
+        }
+        if (closed) {
+            throw new IllegalStateException("The pool is closed.");
+        }
+        HttpMockServer server = idleServers(contextPath).poll();
+        if (server == null) {
+            server = HttpMock.create(HOST, 0, contextPath, engine, executorStrategy);
+            server.start();
+        }
+        return server;
+    }
+
+    /**
+     * Resets the given server and returns it to the pool. Servers which were stopped are dropped.
+     *
+     * @param server a server acquired from this pool
+     */
+    public void release(HttpMockServer server) {
+        if (server == null) {
+            throw new NullPointerException("Can't resolve the argument 'server'.");
+        }
+        if (!server.isRunning()) {
+            return;
+        }
+        server.reset();
+        idleServers(server.getContextPath()).offer(server);
+        if (closed) {
+            close();
+        }
+    }
+
+    private Queue<HttpMockServer> idleServers(String contextPath) {
+        Queue<HttpMockServer> servers = idleServers.get(contextPath);
+        if (servers == null) {
+            Queue<HttpMockServer> newServers = new ConcurrentLinkedQueue<HttpMockServer>();
+            servers = idleServers.putIfAbsent(contextPath, newServers);
+            if (servers == null) {
+                servers = newServers;
+            }
+        }
+        return servers;
+    }
+
+    /**
+     * Returns the number of idle servers.
+     *
+     * @return the number of servers which wait to be acquired
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (Queue<HttpMockServer> servers : idleServers.values()) {
+            count += servers.size();
+        }
+        return count;
+    }
+
+    /**
+     * Stops all idle servers. Servers released afterwards are stopped as well.
+     */
+    public void close() {
+        closed = true;
+        List<HttpMockServer> servers = new ArrayList<HttpMockServer>();
+        for (Queue<HttpMockServer> queue : idleServers.values()) {
+            HttpMockServer server;
+            while ((server = queue.poll()) != null) {
+                servers.add(server);
+            }
+        }
+        for (HttpMockServer server : servers) {
+            server.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMockServerPool[engine = " + engine + ", executorStrategy = " + executorStrategy +
+                ", idleCount = " + getIdleCount() + "]";
+    }
+
+    private static class SharedPoolHolder {
+
+        private static final HttpMockServerPool POOL = createSharedPool();
+
+        private static HttpMockServerPool createSharedPool() {
+            final HttpMockServerPool pool = new HttpMockServerPool();
+            Runtime.getRuntime().addShutdownHook(new Thread("http-mock-pool-shutdown") {
+                @Override
+                public void run() {
+                    pool.close();
+                }
+            });
+            return pool;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Counts the exchanges of a server which are in flight, i.e. queued or running on its executor or waiting for a
+ * delayed continuation, so that {@link HttpMockCore#stop()} can wait for them to finish.
+ * <p/>
+ * Entering and exiting are one atomic increment each. Only while somebody waits for the count to drop to zero, exits
+ * also take the monitor to wake the waiter up.
+ *
+ * @author Alexander Kiel
+ */
+final class InFlightCounter {
+
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile boolean draining;
+
+    /**
+     * The number of counts the current thread holds, see {@link #hold()}.
+     */
+    private final ThreadLocal<int[]> held = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    void enter() {
+        count.incrementAndGet();
+    }
+
+    void exit() {
+        if (count.decrementAndGet() == 0 && draining) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Marks the count which was entered for the task the current thread is about to run as held by this thread. The
+     * thread has to call {@link #release()} when the task is done.
+     */
+    void hold() {
+        held.get()[0]++;
+    }
+
+    /**
+     * Exits the count the current thread holds, unless it was handed over by {@link #handOver()} already.
+     */
+    void release() {
+        int[] counts = held.get();
+        if (counts[0] > 0) {
+            counts[0]--;
+            exit();
+        }
+    }
+
+    /**
+     * Takes over the count the current thread holds for a continuation of its task, so that the exchange is counted
+     * once while both run, or enters a new count if the thread holds none.
+     */
+    void handOver() {
+        int[] counts = held.get();
+        if (counts[0] > 0) {
+            counts[0]--;
+        } else {
+            enter();
+        }
+    }
+
+    int getCount() {
+        return count.get();
+    }
+
+    /**
+     * Waits until no exchange is in flight anymore.
+     *
+     * @param deadlineNanos the {@link System#nanoTime()} at which to give up
+     * @return {@code true} if no exchange is in flight, {@code false} if the deadline passed before.
+     * @throws InterruptedException if the waiting thread was interrupted.
+     */
+    boolean awaitZero(long deadlineNanos) throws InterruptedException {
+        if (count.get() == 0) {
+            return true;
+        }
+        synchronized (this) {
+            draining = true;
+            try {
+                long remaining;
+                while (count.get() > 0 && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                    NANOSECONDS.timedWait(this, remaining);
+                }
+                return count.get() == 0;
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InFlightCounter[count = " + count.get() + "]";
+    }
+}
@@ -0,0 +1,127 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One request recorded in the {@link RequestJournal}.
+ *
+ * @author Alexander Kiel
+ */
+public final class JournalEntry {
+
+    private final long sequenceNumber;
+    private final String method;
+    private final URI requestUri;
+    private final Map<String, List<String>> headers;
+    private final long arrivalNanos;
+    private volatile String bodyDigest;
+    private volatile long bodyLength;
+    private volatile long durationNanos;
+
+    JournalEntry(long sequenceNumber, String method, URI requestUri, Map<String, List<String>> headers,
+                 long arrivalNanos) {
+        this.sequenceNumber = sequenceNumber;
+        this.method = method;
+        this.requestUri = requestUri;
+        this.headers = headers;
+        this.arrivalNanos = arrivalNanos;
+        durationNanos = -1;
+    }
+
+    void setBody(String bodyDigest, long bodyLength) {
+        this.bodyDigest = bodyDigest;
+        this.bodyLength = bodyLength;
+    }
+
+    void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Returns the number of this request in the order of arrival, starting at 0.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URI getRequestUri() {
+        return requestUri;
+    }
+
+    public String getPath() {
+        return requestUri.getPath();
+    }
+
+    /**
+     * Returns the request headers.
+     *
+     * @return an unmodifiable map of the request headers.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the request body as far as it was read by the mocking.
+     * <p/>
+     * The digest is available as soon as the mocking has read the body to its end, which happens before the response
+     * is sent.
+     *
+     * @return the digest or {@code null} if no body was read.
+     */
+    public String getBodyDigest() {
+        return bodyDigest;
+    }
+
+    /**
+     * Returns the number of bytes of the request body which were read by the mocking.
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Returns the value of {@link System#nanoTime()} at the arrival of the request.
+     */
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    /**
+     * Returns how long the request was handled in nanoseconds.
+     *
+     * @return the duration or -1 if the request is still handled.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry[sequenceNumber = " + sequenceNumber + ", method = " + method + ", requestUri = " +
+                requestUri + ", bodyLength = " + bodyLength + ", bodyDigest = " + bodyDigest + ", durationNanos = " +
+                durationNanos + "]";
+    }
+}
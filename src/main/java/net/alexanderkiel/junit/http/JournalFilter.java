@@ -0,0 +1,202 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.unmodifiableMap;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * Records every request in the {@link RequestJournal} of the mock server.
+ * <p/>
+ * The entry of a request is completed when the filter chain returned and all handlers which continue the exchange
+ * later, e.g. on the {@link ResponseScheduler}, {@link #release(HttpExchange) released} it.
+ *
+ * @author Alexander Kiel
+ */
+class JournalFilter extends Filter {
+
+    private static final String COMPLETION = JournalFilter.class.getName() + ".completion";
+
+    private final HttpMockCore httpMockCore;
+
+    JournalFilter(HttpMockCore httpMockCore) {
+        this.httpMockCore = httpMockCore;
+    }
+
+    @Override
+    public void doFilter(HttpExchange httpExchange, Chain chain) throws IOException {
+        long arrivalNanos = System.nanoTime();
+        Map<String, List<String>> headers = unmodifiableMap(new HashMap<String, List<String>>(
+                httpExchange.getRequestHeaders()));
+        JournalEntry entry = httpMockCore.getRequestJournal().record(httpExchange.getRequestMethod(),
+                httpExchange.getRequestURI(), headers, arrivalNanos);
+        DigestingInputStream body = new DigestingInputStream(httpExchange.getRequestBody(), entry);
+        httpExchange.setStreams(body, null);
+        Completion completion = new Completion(entry, body, arrivalNanos);
+        httpExchange.setAttribute(COMPLETION, completion);
+        try {
+            chain.doFilter(httpExchange);
+        } finally {
+            completion.release();
+        }
+    }
+
+    /**
+     * Keeps the journal entry of the given exchange open until {@link #release(HttpExchange)} is called, because the
+     * exchange is continued after the handler returned.
+     */
+    static void hold(HttpExchange httpExchange) {
+        Completion completion = (Completion) httpExchange.getAttribute(COMPLETION);
+        if (completion != null) {
+            completion.hold();
+        }
+    }
+
+    /**
+     * Releases a {@link #hold(HttpExchange) hold} on the journal entry of the given exchange. The last release
+     * completes the entry.
+     */
+    static void release(HttpExchange httpExchange) {
+        Completion completion = (Completion) httpExchange.getAttribute(COMPLETION);
+        if (completion != null) {
+            completion.release();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Records requests in the request journal.";
+    }
+
+    /**
+     * Counts the holds on a journal entry, starting with the one of the filter itself.
+     */
+    private static class Completion {
+
+        private final JournalEntry entry;
+        private final DigestingInputStream body;
+        private final long arrivalNanos;
+        private final AtomicInteger holds;
+
+        private Completion(JournalEntry entry, DigestingInputStream body, long arrivalNanos) {
+            this.entry = entry;
+            this.body = body;
+            this.arrivalNanos = arrivalNanos;
+            holds = new AtomicInteger(1);
+        }
+
+        private void hold() {
+            holds.incrementAndGet();
+        }
+
+        private void release() {
+            if (holds.decrementAndGet() == 0) {
+                body.complete();
+                entry.setDurationNanos(System.nanoTime() - arrivalNanos);
+            }
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 digest of all bytes read through it in constant memory and stores it in the journal
+     * entry at the end of the stream.
+     */
+    static class DigestingInputStream extends FilterInputStream {
+
+        private final JournalEntry entry;
+        private final MessageDigest digest;
+        private long length;
+        private boolean complete;
+
+        DigestingInputStream(InputStream in, JournalEntry entry) {
+            super(in);
+            this.entry = entry;
+            digest = newSha256();
+        }
+
+        static MessageDigest newSha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is always available.", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                length++;
+            } else {
+                complete();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                digest.update(bytes, offset, count);
+                this.length += count;
+            } else if (count < 0) {
+                complete();
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 1024)];
+            long skipped = 0;
+            int count;
+            while (skipped < n && (count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) >= 0) {
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Stores the digest of the bytes read so far in the journal entry. Only the first call has an effect.
+         */
+        void complete() {
+            if (!complete) {
+                complete = true;
+                entry.setBody(length == 0 ? null : encodeHexString(digest.digest()), length);
+            }
+        }
+    }
+}
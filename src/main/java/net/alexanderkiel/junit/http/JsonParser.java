@@ -0,0 +1,263 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * A minimal JSON parser for stub files.
+ * <p/>
+ * Objects are parsed into maps which keep the order of their members, arrays into lists, numbers into {@link Long}
+ * if they are integral and {@link Double} otherwise, and {@code true}, {@code false} and {@code null} into their
+ * Java counterparts.
+ *
+ * @author Alexander Kiel
+ */
+class JsonParser {
+
+    private final String source;
+    private final String json;
+    private int position;
+
+    /**
+     * @param source the name of the source for error messages, e.g. the file name
+     * @param json   the JSON text
+     */
+    JsonParser(String source, String json) {
+        this.source = source;
+        this.json = json;
+    }
+
+    /**
+     * Parses the whole text as one value.
+     *
+     * @throws IOException if the text isn't valid JSON.
+     */
+    Object parse() throws IOException {
+        Object value = parseValue();
+        skipWhitespace();
+        if (position < json.length()) {
+            throw error("Unexpected content after the value");
+        }
+        return value;
+    }
+
+    private Object parseValue() throws IOException {
+        skipWhitespace();
+        if (position >= json.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = json.charAt(position);
+        switch (c) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            case 't':
+                expectWord("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectWord("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectWord("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return parseNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> parseObject() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = parseString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, parseValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> parseArray() throws IOException {
+        List<Object> array = new ArrayList<Object>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(parseValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String parseString() throws IOException {
+        position++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (position >= json.length()) {
+                throw error("Unterminated string");
+            }
+            char c = json.charAt(position++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                if (position >= json.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escaped);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw error("Incomplete unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape '\\" + escaped + "'");
+                }
+            } else if (c < 0x20) {
+                throw error("Control character in string");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private Number parseNumber() throws IOException {
+        int start = position;
+        boolean integral = true;
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            position++;
+        }
+        String number = json.substring(start, position);
+        try {
+            return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    private void expectWord(String word) throws IOException {
+        if (!json.startsWith(word, position)) {
+            throw error("Expected '" + word + "'");
+        }
+        position += word.length();
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private char peek() {
+        return position < json.length() ? json.charAt(position) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private IOException error(String message) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < position && i < json.length(); i++) {
+            if (json.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new IOException(format("%s at line %d, column %d of %s.", message, line, column, source));
+    }
+}
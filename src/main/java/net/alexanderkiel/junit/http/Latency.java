@@ -0,0 +1,201 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A distribution of latencies which delay responses of a mocking.
+ * <p/>
+ * Delayed responses are scheduled on a timer, so waiting requests don't occupy a thread of the server.
+ *
+ * @author Alexander Kiel
+ * @see OngoingMocking#withLatency(Latency)
+ */
+public abstract class Latency {
+
+    Latency() {
+    }
+
+    /**
+     * Returns a latency which is always the same.
+     */
+    public static Latency fixed(long duration, TimeUnit unit) {
+        checkNonNegative("duration", duration);
+        return new FixedLatency(unit.toNanos(duration));
+    }
+
+    /**
+     * Returns latencies which are uniformly distributed between min and max.
+     */
+    public static Latency uniform(long min, long max, TimeUnit unit) {
+        checkNonNegative("min", min);
+        if (max < min) {
+            throw new IllegalArgumentException("The max " + max + " has to be at least the min " + min + ".");
+        }
+        return new UniformLatency(unit.toNanos(min), unit.toNanos(max));
+    }
+
+    /**
+     * Returns latencies which are normally distributed. Negative samples are cut off at zero.
+     */
+    public static Latency normal(long mean, long standardDeviation, TimeUnit unit) {
+        checkNonNegative("mean", mean);
+        checkNonNegative("standardDeviation", standardDeviation);
+        return new NormalLatency(unit.toNanos(mean), unit.toNanos(standardDeviation));
+    }
+
+    /**
+     * Returns latencies which follow a recorded percentile table, e.g. the percentiles {@code 50, 90, 99, 100} with
+     * the values {@code 12, 40, 180, 900} milliseconds. Latencies between two percentiles are interpolated linearly;
+     * latencies below the first percentile are its value.
+     *
+     * @param unit        the unit of the values
+     * @param percentiles strictly ascending percentiles between 0 exclusive and 100 inclusive
+     * @param values      ascending latencies, one for each percentile
+     */
+    public static Latency percentiles(TimeUnit unit, double[] percentiles, long[] values) {
+        if (percentiles.length == 0 || percentiles.length != values.length) {
+            throw new IllegalArgumentException("There has to be one value for each of at least one percentile.");
+        }
+        long[] nanos = new long[values.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            checkNonNegative("value", values[i]);
+            if (percentiles[i] <= 0 || percentiles[i] > 100 || (i > 0 && percentiles[i] <= percentiles[i - 1])) {
+                throw new IllegalArgumentException("The percentiles " + Arrays.toString(percentiles) +
+                        " have to be strictly ascending between 0 and 100.");
+            }
+            if (i > 0 && values[i] < values[i - 1]) {
+                throw new IllegalArgumentException("The values " + Arrays.toString(values) +
+                        " have to be ascending.");
+            }
+            nanos[i] = unit.toNanos(values[i]);
+        }
+        return new PercentileLatency(percentiles.clone(), nanos);
+    }
+
+    private static void checkNonNegative(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("The " + name + " has to be non-negative but was " + value + ".");
+        }
+    }
+
+    /**
+     * Returns the latency for one response in nanoseconds.
+     */
+    long sampleNanos() {
+        return sampleNanos(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Returns the latency for one response in nanoseconds drawn from the given source of randomness.
+     */
+    abstract long sampleNanos(Random random);
+
+    private static class FixedLatency extends Latency {
+
+        private final long nanos;
+
+        private FixedLatency(long nanos) {
+            this.nanos = nanos;
+        }
+
+        long sampleNanos(Random random) {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "fixed " + nanos + " ns";
+        }
+    }
+
+    private static class UniformLatency extends Latency {
+
+        private final long min;
+        private final long max;
+
+        private UniformLatency(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        long sampleNanos(Random random) {
+            return min == max ? min : min + (long) (random.nextDouble() * (max - min));
+        }
+
+        @Override
+        public String toString() {
+            return "uniform between " + min + " ns and " + max + " ns";
+        }
+    }
+
+    private static class NormalLatency extends Latency {
+
+        private final long mean;
+        private final long standardDeviation;
+
+        private NormalLatency(long mean, long standardDeviation) {
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+        }
+
+        long sampleNanos(Random random) {
+            return Math.max(0, mean + (long) (random.nextGaussian() * standardDeviation));
+        }
+
+        @Override
+        public String toString() {
+            return "normal with mean " + mean + " ns and standard deviation " + standardDeviation + " ns";
+        }
+    }
+
+    private static class PercentileLatency extends Latency {
+
+        private final double[] percentiles;
+        private final long[] values;
+
+        private PercentileLatency(double[] percentiles, long[] values) {
+            this.percentiles = percentiles;
+            this.values = values;
+        }
+
+        long sampleNanos(Random random) {
+            return valueAt(random.nextDouble() * 100);
+        }
+
+        long valueAt(double percentile) {
+            if (percentile <= percentiles[0]) {
+                return values[0];
+            }
+            for (int i = 1; i < percentiles.length; i++) {
+                if (percentile <= percentiles[i]) {
+                    double fraction = (percentile - percentiles[i - 1]) / (percentiles[i] - percentiles[i - 1]);
+                    return values[i - 1] + (long) (fraction * (values[i] - values[i - 1]));
+                }
+            }
+            return values[values.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "percentiles " + Arrays.toString(percentiles) + " with " + Arrays.toString(values) + " ns";
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records durations in nanoseconds into log-linear buckets of fixed memory.
+ * <p/>
+ * Every power of two range is divided into {@value #SUB_BUCKETS} linear buckets, so a recorded value is off by at
+ * most 1/{@value #SUB_BUCKETS} of its magnitude. Values up to 2<sup>{@value #MAX_BITS}</sup> ns, about 18 minutes,
+ * are distinguished, larger ones are counted in the last bucket. Recording is lock-free and costs one atomic
+ * increment in the common case. The buckets are allocated with the first recorded value, so unused histograms stay
+ * small.
+ *
+ * @author Alexander Kiel
+ */
+class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_BITS = 40;
+    static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicReference<AtomicLongArray> counts;
+    private final StripedCounter sum;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        counts = new AtomicReference<AtomicLongArray>();
+        sum = new StripedCounter();
+        max = new AtomicLong(-1);
+    }
+
+    /**
+     * Records one duration. Negative durations, which occur if the clock was read on different threads, count as 0.
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts().incrementAndGet(bucketIndex(value));
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    private AtomicLongArray counts() {
+        AtomicLongArray counts = this.counts.get();
+        if (counts == null) {
+            this.counts.compareAndSet(null, new AtomicLongArray(BUCKETS));
+            counts = this.counts.get();
+        }
+        return counts;
+    }
+
+    static int bucketIndex(long value) {
+        long clamped = Math.min(value, MAX_VALUE);
+        if (clamped < 2 * SUB_BUCKETS) {
+            return (int) clamped;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (clamped >>> shift);
+    }
+
+    /**
+     * Returns the highest value which falls into the bucket with the given index.
+     */
+    static long highestValue(int bucketIndex) {
+        if (bucketIndex < 2 * SUB_BUCKETS) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / SUB_BUCKETS - 1;
+        long mantissa = bucketIndex - shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Copies the current state. Values recorded concurrently may or may not be part of the snapshot.
+     */
+    HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        AtomicLongArray counts = this.counts.get();
+        if (counts != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+            }
+        }
+        return new HistogramSnapshot(copy, sum.sum(), max.get());
+    }
+
+    /**
+     * Removes all recorded values. Values recorded concurrently may survive the reset.
+     */
+    void reset() {
+        counts.set(null);
+        sum.reset();
+        max.set(-1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[" + snapshot() + "]";
+    }
+}
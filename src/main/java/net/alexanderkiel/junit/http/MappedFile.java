@@ -0,0 +1,101 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * A file which is mapped into memory on first use.
+ * <p/>
+ * Files larger than 2 GB are mapped in several segments because a single mapping can't exceed {@link
+ * Integer#MAX_VALUE} bytes. The mappings stay valid after the file channel is closed.
+ *
+ * @author Alexander Kiel
+ */
+final class MappedFile {
+
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    private final File file;
+    private final long length;
+    private volatile ByteBuffer[] segments;
+
+    MappedFile(File file, long length) {
+        this.file = file;
+        this.length = length;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only view which starts at the given offset and ends at the requested length or at the end of the
+     * segment the offset is in, whichever comes first.
+     */
+    ByteBuffer slice(long offset, long length) throws IOException {
+        if (offset < 0 || length <= 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length);
+        }
+        ByteBuffer segment = segments()[(int) (offset / SEGMENT_SIZE)].duplicate();
+        int position = (int) (offset % SEGMENT_SIZE);
+        segment.position(position);
+        segment.limit((int) Math.min(segment.capacity(), position + length));
+        return segment;
+    }
+
+    private ByteBuffer[] segments() throws IOException {
+        ByteBuffer[] segments = this.segments;
+        if (segments == null) {
+            synchronized (this) {
+                segments = this.segments;
+                if (segments == null) {
+                    segments = map();
+                    this.segments = segments;
+                }
+            }
+        }
+        return segments;
+    }
+
+    private ByteBuffer[] map() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer[] segments = new ByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i * SEGMENT_SIZE;
+                MappedByteBuffer segment = channel.map(READ_ONLY, position, Math.min(SEGMENT_SIZE, length - position));
+                segments[i] = segment.asReadOnlyBuffer();
+            }
+            return segments;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,450 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * One connection of the {@link NioHttpServer}.
+ * <p/>
+ * The connection alternates between two states. While no exchange is active it is owned by its event loop, which
+ * reads from the socket until a complete request header is buffered. While an exchange is active the connection is
+ * owned by the thread which handles the exchange. That thread reads the request body and writes the response
+ * directly to the socket, waiting on a private selector only if the socket isn't ready. Finishing the exchange hands
+ * the connection back to the event loop.
+ *
+ * @author Alexander Kiel
+ */
+class NioConnection {
+
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(NioConnection.class.getName());
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final int IO_TIMEOUT_MILLIS = 30000;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private final NioHttpServer server;
+    private final NioEventLoop eventLoop;
+    private final SocketChannel channel;
+    private final ByteBuffer in;
+    private final ByteBuffer out;
+    private final byte[] headerBytes;
+    private final Runnable resumeTask;
+
+    private SelectionKey key;
+    private Selector blockingSelector;
+    private SelectionKey blockingKey;
+
+    /**
+     * The buffered but not yet consumed input is {@code [readIndex, in.position())}.
+     */
+    private int readIndex;
+
+    /**
+     * The index up to which the input was already searched for the end of the request header.
+     */
+    private int scanIndex;
+
+    private volatile boolean closed;
+
+    NioConnection(NioHttpServer server, NioEventLoop eventLoop, SocketChannel channel) {
+        this.server = server;
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        headerBytes = new byte[BUFFER_SIZE];
+        resumeTask = new Runnable() {
+            public void run() {
+                resumeInEventLoop();
+            }
+        };
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+    // Event Loop Side
+    //------------------------------------------------------------------------------------------------------------------
+
+    void onReadable() {
+        try {
+            if (in.position() == in.capacity()) {
+                compact();
+            }
+            if (channel.read(in) < 0) {
+                close();
+            } else {
+                processRequest();
+            }
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while reading from " + channel + ".", e);
+            close();
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    /**
+     * Hands the connection back to the event loop after an exchange has finished. Can be called from any thread.
+     */
+    void resume() {
+        eventLoop.execute(resumeTask);
+    }
+
+    private void resumeInEventLoop() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (readIndex == in.position()) {
+                clearInput();
+            }
+            processRequest();
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while processing a request from " + channel + ".", e);
+            close();
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    private void processRequest() throws IOException {
+        int headerEnd = findHeaderEnd();
+        if (headerEnd < 0) {
+            if (readIndex == 0 && in.position() == in.capacity()) {
+                respondAndClose(431);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            return;
+        }
+        NioHttpExchange exchange = parseRequest(headerEnd);
+        if (exchange != null) {
+            key.interestOps(0);
+            dispatch(exchange);
+        }
+    }
+
+    private int findHeaderEnd() {
+        int end = in.position();
+        for (int i = Math.max(readIndex, scanIndex); i + 3 < end; i++) {
+            if (in.get(i + 3) == '\n' && in.get(i + 2) == '\r' && in.get(i + 1) == '\n' && in.get(i) == '\r') {
+                return i + 4;
+            }
+        }
+        scanIndex = Math.max(readIndex, end - 3);
+        return -1;
+    }
+
+    private NioHttpExchange parseRequest(int headerEnd) throws IOException {
+        int length = headerEnd - readIndex;
+        int position = in.position();
+        in.position(readIndex);
+        in.get(headerBytes, 0, length);
+        in.position(position);
+        readIndex = headerEnd;
+        scanIndex = headerEnd;
+
+        int lineStart = 0;
+        while (lineStart + 1 < length && headerBytes[lineStart] == '\r' && headerBytes[lineStart + 1] == '\n') {
+            lineStart += 2;
+        }
+        int lineEnd = indexOfLineEnd(lineStart, length);
+        int firstSpace = indexOf(' ', lineStart, lineEnd);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(' ', firstSpace + 1, lineEnd);
+        if (secondSpace < 0) {
+            respondAndClose(400);
+            return null;
+        }
+        String method = ascii(lineStart, firstSpace);
+        String target = ascii(firstSpace + 1, secondSpace);
+        String protocol = ascii(secondSpace + 1, lineEnd);
+
+        Headers headers = new Headers();
+        lineStart = lineEnd + 2;
+        while (lineStart < length) {
+            lineEnd = indexOfLineEnd(lineStart, length);
+            if (lineEnd == lineStart) {
+                break;
+            }
+            int colon = indexOf(':', lineStart, lineEnd);
+            if (colon <= lineStart) {
+                respondAndClose(400);
+                return null;
+            }
+            headers.add(ascii(lineStart, colon).trim(), ascii(colon + 1, lineEnd).trim());
+            lineStart = lineEnd + 2;
+        }
+
+        URI uri;
+        long contentLength;
+        try {
+            uri = new URI(target);
+            String contentLengthHeader = headers.getFirst("Content-Length");
+            contentLength = contentLengthHeader == null ? 0 : Long.parseLong(contentLengthHeader);
+        } catch (URISyntaxException e) {
+            respondAndClose(400);
+            return null;
+        } catch (NumberFormatException e) {
+            respondAndClose(400);
+            return null;
+        }
+        String transferEncoding = headers.getFirst("Transfer-Encoding");
+        boolean chunked = transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+        String path = uri.getPath();
+        NioHttpContext context = server.findContext(path == null ? "/" : path);
+        return new NioHttpExchange(server, this, context, method, uri, protocol, headers, chunked, contentLength);
+    }
+
+    private int indexOfLineEnd(int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (headerBytes[i] == '\r' && headerBytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (headerBytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String ascii(int from, int to) {
+        return new String(headerBytes, from, to - from, ISO_8859_1);
+    }
+
+    private void dispatch(NioHttpExchange exchange) {
+        server.exchangeStarted();
+        Executor executor = server.getExecutor();
+        if (executor == null) {
+            exchange.run();
+        } else {
+            try {
+                executor.execute(exchange);
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(FINE, "Rejected request from " + channel + ".", e);
+                exchange.abort();
+            }
+        }
+    }
+
+    private void respondAndClose(int statusCode) throws IOException {
+        key.interestOps(0);
+        putAscii("HTTP/1.1 " + statusCode + " " + NioHttpExchange.reasonPhrase(statusCode) + "\r\n" +
+                "Content-Length: 0\r\nConnection: close\r\n\r\n");
+        flushOutput();
+        close();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+    // Exchange Side
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads up to {@code length} bytes of input, blocking until at least one byte is available.
+     *
+     * @return the number of bytes read or -1 at the end of the stream.
+     */
+    int read(byte[] bytes, int offset, int length) throws IOException {
+        if (!ensureInput()) {
+            return -1;
+        }
+        int count = Math.min(length, in.position() - readIndex);
+        int position = in.position();
+        in.position(readIndex);
+        in.get(bytes, offset, count);
+        in.position(position);
+        readIndex += count;
+        return count;
+    }
+
+    /**
+     * Reads one byte of input, blocking until it is available.
+     *
+     * @return the byte or -1 at the end of the stream.
+     */
+    int read() throws IOException {
+        if (!ensureInput()) {
+            return -1;
+        }
+        return in.get(readIndex++) & 0xFF;
+    }
+
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Unexpected end of stream.");
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new IOException("Line too long.");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private boolean ensureInput() throws IOException {
+        if (readIndex < in.position()) {
+            return true;
+        }
+        clearInput();
+        int count;
+        while ((count = channel.read(in)) == 0) {
+            await(SelectionKey.OP_READ);
+        }
+        return count > 0;
+    }
+
+    private void clearInput() {
+        in.clear();
+        readIndex = 0;
+        scanIndex = 0;
+    }
+
+    private void compact() {
+        in.flip();
+        in.position(readIndex);
+        in.compact();
+        scanIndex = Math.max(0, scanIndex - readIndex);
+        readIndex = 0;
+    }
+
+    ByteBuffer output() {
+        return out;
+    }
+
+    void putAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (!out.hasRemaining()) {
+                flushOutput();
+            }
+            out.put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * Copies the given bytes into the output buffer, flushing it whenever it is full.
+     */
+    void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!out.hasRemaining()) {
+                flushOutput();
+            }
+            int count = Math.min(length, out.remaining());
+            out.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    void flushOutput() throws IOException {
+        out.flip();
+        try {
+            write(out);
+        } finally {
+            out.clear();
+        }
+    }
+
+    /**
+     * Writes the whole buffer directly to the socket, blocking until it is written.
+     */
+    void write(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (channel.write(src) == 0) {
+                await(SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void await(int ops) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        try {
+            if (blockingSelector == null) {
+                blockingSelector = Selector.open();
+                blockingKey = channel.register(blockingSelector, ops);
+            } else {
+                blockingKey.interestOps(ops);
+            }
+            if (blockingSelector.select(IO_TIMEOUT_MILLIS) == 0) {
+                throw new SocketTimeoutException("Timeout while waiting on " + channel + ".");
+            }
+            blockingSelector.selectedKeys().clear();
+        } catch (CancelledKeyException e) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            channel.close();
+            if (blockingSelector != null) {
+                blockingSelector.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while closing " + channel + ".", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection[channel = " + channel + "]";
+    }
+}
@@ -0,0 +1,194 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * One selector thread of the {@link NioHttpServer}.
+ * <p/>
+ * All state changes of the connections owned by this loop, like re-enabling reads after an exchange, go through
+ * {@link #execute(Runnable)}, so they happen on the loop thread.
+ *
+ * @author Alexander Kiel
+ */
+class NioEventLoop implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioEventLoop.class.getName());
+    private static final long SHUTDOWN_JOIN_MILLIS = 1000;
+
+    private final NioHttpServer server;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+    private volatile boolean running;
+
+    NioEventLoop(NioHttpServer server, String name) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    void registerAcceptor(ServerSocketChannel serverChannel) throws ClosedChannelException {
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT, serverChannel);
+    }
+
+    void register(final SocketChannel channel) {
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    NioConnection connection = new NioConnection(server, NioEventLoop.this, channel);
+                    connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+                } catch (IOException e) {
+                    LOGGER.log(FINE, "Can't register a new connection.", e);
+                    closeQuietly(channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given task on the loop thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+                processSelectedKeys();
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "Error in event loop " + thread.getName() + ".", e);
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(WARNING, "Error while running an event loop task.", e);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection) {
+                ((NioConnection) attachment).onReadable();
+            } else if (key.isAcceptable()) {
+                accept((ServerSocketChannel) attachment);
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                server.accept(channel);
+            }
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while accepting connections.", e);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+        if (!inEventLoop()) {
+            try {
+                thread.join(SHUTDOWN_JOIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection) {
+                ((NioConnection) attachment).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while closing the selector.", e);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while closing a channel.", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioEventLoop[" + thread.getName() + "]";
+    }
+}
@@ -0,0 +1,647 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * An exchange of the {@link NioHttpServer}.
+ * <p/>
+ * The response body stream is also a {@link WritableByteChannel}, so byte buffers, including mapped file regions, can
+ * be written to the socket without copying them to the heap.
+ *
+ * @author Alexander Kiel
+ */
+class NioHttpExchange extends HttpExchange implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioHttpExchange.class.getName());
+    private static final String CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n";
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static volatile long dateSecond;
+    private static volatile String date;
+
+    private final NioHttpServer server;
+    private final NioConnection connection;
+    private final NioHttpContext context;
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders;
+    private HeaderBlock headerBlock;
+    private final RequestBodyInputStream requestBodyStream;
+    private final ResponseBodyOutputStream responseBodyStream;
+    private final AtomicBoolean finished;
+    private final boolean head;
+
+    private boolean keepAlive;
+    private boolean expectContinue;
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private int responseCode;
+    private Map<String, Object> attributes;
+
+    NioHttpExchange(NioHttpServer server, NioConnection connection, NioHttpContext context, String method, URI uri,
+                    String protocol, Headers requestHeaders, boolean chunked, long contentLength) {
+        this.server = server;
+        this.connection = connection;
+        this.context = context;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        responseHeaders = new Headers();
+        headerBlock = HeaderBlock.EMPTY;
+        requestBodyStream = new RequestBodyInputStream(chunked, contentLength);
+        responseBodyStream = new ResponseBodyOutputStream();
+        requestBody = requestBodyStream;
+        responseBody = responseBodyStream;
+        finished = new AtomicBoolean();
+        head = "HEAD".equals(method);
+        keepAlive = isKeepAliveRequested(protocol, requestHeaders.getFirst("Connection"));
+        expectContinue = "100-continue".equalsIgnoreCase(requestHeaders.getFirst("Expect"));
+        responseCode = -1;
+    }
+
+    private static boolean isKeepAliveRequested(String protocol, String connectionHeader) {
+        if (HTTP_1_0.equals(protocol)) {
+            return "keep-alive".equalsIgnoreCase(connectionHeader);
+        } else {
+            return !"close".equalsIgnoreCase(connectionHeader);
+        }
+    }
+
+    public void run() {
+        try {
+            if (context == null) {
+                sendResponseHeaders(404, -1);
+                close();
+            } else {
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(this);
+            }
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while handling " + this + ".", e);
+            abort();
+        } catch (RuntimeException e) {
+            LOGGER.log(WARNING, "Unexpected error while handling " + this + ".", e);
+            abort();
+        }
+    }
+
+    /**
+     * Finishes this exchange abnormally, sending a 500 if the response wasn't started yet, and closes the connection.
+     */
+    void abort() {
+        if (responseCode == -1 && !finished.get()) {
+            keepAlive = false;
+            try {
+                sendResponseHeaders(INTERNAL_SERVER_ERROR, -1);
+            } catch (IOException e) {
+                LOGGER.log(FINE, "Can't send the error response.", e);
+            }
+        }
+        finish(false);
+    }
+
+    private void finish(boolean reusable) {
+        if (finished.compareAndSet(false, true)) {
+            server.exchangeFinished();
+            if (reusable && keepAlive && requestBodyStream.drain()) {
+                connection.resume();
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    HeaderBlock getHeaderBlock() {
+        return headerBlock;
+    }
+
+    /**
+     * Sets pre-encoded headers which are sent in addition to the response headers. Response headers replace headers
+     * of the block with the same name.
+     *
+     * @param headerBlock the headers to send
+     */
+    void setHeaderBlock(HeaderBlock headerBlock) {
+        this.headerBlock = headerBlock;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        if (responseCode == -1) {
+            finish(false);
+            return;
+        }
+        try {
+            responseBodyStream.close();
+        } catch (IOException e) {
+            LOGGER.log(FINE, "Error while closing " + this + ".", e);
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int statusCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("The response headers were already sent.");
+        }
+        responseCode = statusCode;
+        boolean noBody = responseLength == -1 || head || statusCode < 200 || statusCode == 204 || statusCode == 304;
+
+        connection.putAscii(protocol.startsWith("HTTP/") ? protocol : "HTTP/1.1");
+        connection.putAscii(" " + statusCode + " " + reasonPhrase(statusCode) + "\r\n");
+        headerBlock.writeTo(connection, responseHeaders);
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                connection.putAscii(header.getKey() + ": " + value + "\r\n");
+            }
+        }
+        connection.putAscii("Date: " + currentDate() + "\r\n");
+        if (noBody) {
+            if (head && responseLength > 0) {
+                connection.putAscii("Content-Length: " + responseLength + "\r\n");
+            } else if (statusCode >= 200 && statusCode != 204 && statusCode != 304) {
+                connection.putAscii("Content-Length: 0\r\n");
+            }
+            responseBodyStream.start(false, 0);
+        } else if (responseLength > 0) {
+            connection.putAscii("Content-Length: " + responseLength + "\r\n");
+            responseBodyStream.start(false, responseLength);
+        } else if (HTTP_1_0.equals(protocol)) {
+            keepAlive = false;
+            responseBodyStream.start(false, Long.MAX_VALUE);
+        } else {
+            connection.putAscii("Transfer-Encoding: chunked\r\n");
+            responseBodyStream.start(true, 0);
+        }
+        if (!keepAlive) {
+            connection.putAscii("Connection: close\r\n");
+        }
+        connection.putAscii("\r\n");
+        if (noBody) {
+            connection.flushOutput();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return (InetSocketAddress) connection.getChannel().socket().getRemoteSocketAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) connection.getChannel().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<String, Object>();
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream requestBody, OutputStream responseBody) {
+        if (requestBody != null) {
+            this.requestBody = requestBody;
+        }
+        if (responseBody != null) {
+            this.responseBody = responseBody;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    private static String currentDate() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != dateSecond || date == null) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            date = format.format(new Date(second * 1000));
+            dateSecond = second;
+        }
+        return date;
+    }
+
+    static String reasonPhrase(int statusCode) {
+        switch (statusCode) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 303: return "See Other";
+            case 304: return "Not Modified";
+            case 307: return "Temporary Redirect";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 406: return "Not Acceptable";
+            case 409: return "Conflict";
+            case 410: return "Gone";
+            case 412: return "Precondition Failed";
+            case 415: return "Unsupported Media Type";
+            case 416: return "Range Not Satisfiable";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioHttpExchange[method = " + method + ", uri = " + uri + ", responseCode = " + responseCode + "]";
+    }
+
+    private class RequestBodyInputStream extends InputStream {
+
+        private final boolean chunked;
+
+        /**
+         * The number of bytes left in the body if not chunked or in the current chunk if chunked.
+         */
+        private long remaining;
+        private boolean chunkStarted;
+        private boolean eof;
+
+        private RequestBodyInputStream(boolean chunked, long contentLength) {
+            this.chunked = chunked;
+            remaining = chunked ? 0 : contentLength;
+            eof = !chunked && contentLength <= 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!prepareRead()) {
+                return -1;
+            }
+            int b = connection.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of the request body.");
+            }
+            consumed(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!prepareRead()) {
+                return -1;
+            }
+            int count = connection.read(bytes, offset, (int) Math.min(length, remaining));
+            if (count < 0) {
+                throw new EOFException("Unexpected end of the request body.");
+            }
+            consumed(count);
+            return count;
+        }
+
+        private boolean prepareRead() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (expectContinue) {
+                expectContinue = false;
+                if (responseCode == -1) {
+                    connection.putAscii(CONTINUE);
+                    connection.flushOutput();
+                }
+            }
+            if (chunked && remaining == 0) {
+                readChunkHeader();
+            }
+            return !eof;
+        }
+
+        private void consumed(int count) {
+            remaining -= count;
+            if (!chunked && remaining == 0) {
+                eof = true;
+            }
+        }
+
+        private void readChunkHeader() throws IOException {
+            if (chunkStarted && connection.readLine().length() != 0) {
+                throw new IOException("Missing CRLF after chunk data.");
+            }
+            chunkStarted = true;
+            String line = connection.readLine();
+            int semicolon = line.indexOf(';');
+            try {
+                remaining = Long.parseLong((semicolon < 0 ? line : line.substring(0, semicolon)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size '" + line + "'.");
+            }
+            if (remaining == 0) {
+                while (connection.readLine().length() != 0) {
+                    // skip trailers
+                }
+                eof = true;
+            }
+        }
+
+        /**
+         * Reads and discards a small rest of the body, so that the connection can be reused.
+         *
+         * @return {@code true} if the whole body was consumed; {@code false} otherwise.
+         */
+        private boolean drain() {
+            if (eof) {
+                return true;
+            }
+            if (!chunked && remaining > MAX_DRAIN_BYTES) {
+                return false;
+            }
+            byte[] bytes = new byte[1024];
+            int drained = 0;
+            try {
+                int count;
+                while (drained <= MAX_DRAIN_BYTES && (count = read(bytes, 0, bytes.length)) >= 0) {
+                    drained += count;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            return eof;
+        }
+    }
+
+    private class ResponseBodyOutputStream extends OutputStream implements WritableByteChannel {
+
+        private static final int CHUNK_HEADER_LENGTH = 8;
+        private static final int CHUNK_SIZE_DIGITS = 6;
+
+        private final ByteBuffer out;
+        private boolean started;
+        private boolean chunked;
+        private boolean closeDelimited;
+        private long remaining;
+        private int chunkStart;
+        private boolean open;
+
+        private ResponseBodyOutputStream() {
+            out = connection.output();
+            chunkStart = -1;
+            open = true;
+        }
+
+        private void start(boolean chunked, long length) {
+            started = true;
+            this.chunked = chunked;
+            closeDelimited = length == Long.MAX_VALUE;
+            remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (offset < 0 || length < 0 || offset + length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            checkWritable(length);
+            if (chunked) {
+                while (length > 0) {
+                    beginChunk();
+                    int count = Math.min(length, out.remaining() - 2);
+                    out.put(bytes, offset, count);
+                    offset += count;
+                    length -= count;
+                    if (out.remaining() <= 2) {
+                        endChunk();
+                        connection.flushOutput();
+                    }
+                }
+            } else {
+                remaining -= length;
+                while (length > 0) {
+                    if (!out.hasRemaining()) {
+                        connection.flushOutput();
+                    }
+                    int count = Math.min(length, out.remaining());
+                    out.put(bytes, offset, count);
+                    offset += count;
+                    length -= count;
+                }
+            }
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            checkWritable(length);
+            if (length == 0) {
+                return 0;
+            }
+            if (chunked) {
+                endChunk();
+                connection.putAscii(Integer.toHexString(length) + "\r\n");
+                connection.flushOutput();
+                connection.write(src);
+                connection.putAscii("\r\n");
+            } else {
+                remaining -= length;
+                if (length <= out.remaining()) {
+                    out.put(src);
+                } else {
+                    connection.flushOutput();
+                    connection.write(src);
+                }
+            }
+            return length;
+        }
+
+        private void checkWritable(int length) throws IOException {
+            if (!open) {
+                throw new IOException("The response body stream is closed.");
+            }
+            if (!started) {
+                throw new IOException("The response headers have to be sent before the body.");
+            }
+            if (!chunked && length > remaining) {
+                throw new IOException("Too many bytes written to the response body.");
+            }
+        }
+
+        private void beginChunk() throws IOException {
+            if (chunkStart < 0) {
+                if (out.remaining() < CHUNK_HEADER_LENGTH + 3) {
+                    connection.flushOutput();
+                }
+                chunkStart = out.position();
+                out.position(chunkStart + CHUNK_HEADER_LENGTH);
+            }
+        }
+
+        private void endChunk() {
+            if (chunkStart < 0) {
+                return;
+            }
+            int size = out.position() - chunkStart - CHUNK_HEADER_LENGTH;
+            if (size == 0) {
+                out.position(chunkStart);
+            } else {
+                for (int i = CHUNK_SIZE_DIGITS - 1; i >= 0; i--) {
+                    out.put(chunkStart + i, (byte) Character.forDigit(size & 0xF, 16));
+                    size >>>= 4;
+                }
+                out.put(chunkStart + CHUNK_SIZE_DIGITS, (byte) '\r');
+                out.put(chunkStart + CHUNK_SIZE_DIGITS + 1, (byte) '\n');
+                out.put((byte) '\r');
+                out.put((byte) '\n');
+            }
+            chunkStart = -1;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (open && started) {
+                if (chunked) {
+                    endChunk();
+                }
+                connection.flushOutput();
+            }
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            boolean complete = true;
+            try {
+                if (chunked) {
+                    endChunk();
+                    connection.putAscii("0\r\n\r\n");
+                } else if (!closeDelimited && remaining > 0) {
+                    complete = false;
+                }
+                connection.flushOutput();
+            } catch (IOException e) {
+                finish(false);
+                throw e;
+            }
+            finish(complete);
+            if (!complete) {
+                throw new IOException("Insufficient bytes written to the response body.");
+            }
+        }
+    }
+}
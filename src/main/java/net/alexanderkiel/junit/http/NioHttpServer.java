@@ -0,0 +1,244 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * A non-blocking HTTP/1.1 server which implements the {@code com.sun.net.httpserver} API on top of NIO selectors.
+ * <p/>
+ * One of the event loops accepts new connections and distributes them round-robin over all event loops. Each event
+ * loop reads and parses the requests of its connections and dispatches them to the {@link #setExecutor(Executor)
+ * executor}. Without an executor the handlers run directly on the event loop.
+ *
+ * @author Alexander Kiel
+ * @see HttpEngines#nio(int)
+ */
+class NioHttpServer extends HttpServer {
+
+    private static final Logger LOGGER = Logger.getLogger(NioHttpServer.class.getName());
+    private static final long STOP_POLL_MILLIS = 10;
+
+    private final NioEventLoop[] eventLoops;
+    private final List<NioHttpContext> contexts;
+    private final AtomicInteger nextEventLoop;
+    private final AtomicInteger activeExchanges;
+
+    private ServerSocketChannel serverChannel;
+    private InetSocketAddress address;
+    private volatile Executor executor;
+    private volatile boolean started;
+
+    NioHttpServer(int eventLoopCount) {
+        eventLoops = new NioEventLoop[eventLoopCount];
+        contexts = new CopyOnWriteArrayList<NioHttpContext>();
+        nextEventLoop = new AtomicInteger();
+        activeExchanges = new AtomicInteger();
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new BindException("The server is already bound to " + this.address + ".");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address, backlog);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+        this.address = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("The server isn't bound.");
+        }
+        if (started) {
+            throw new IllegalStateException("The server is already started.");
+        }
+        started = true;
+        try {
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop(this, "http-mock-nio-" + address.getPort() + "-" + i);
+            }
+            eventLoops[0].registerAcceptor(serverChannel);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't open a selector.", e);
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        if (LOGGER.isLoggable(FINE)) {
+            LOGGER.fine("Started NIO HTTP server on " + address + " with " + eventLoops.length + " event loops.");
+        }
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (started) {
+            throw new IllegalStateException("The executor can't be changed after the server was started.");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void stop(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("The delay has to be positive but was " + delay + ".");
+        }
+        closeServerChannel();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+        while (activeExchanges.get() > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(STOP_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+    }
+
+    private void closeServerChannel() {
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "Error while closing the server socket.", e);
+            }
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        NioHttpContext context = createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public NioHttpContext createContext(String path) {
+        if (path == null) {
+            throw new NullPointerException("Can't resolve the argument 'path'.");
+        }
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("The context path has to start with a slash but was '" + path + "'.");
+        }
+        if (findContextExactly(path) != null) {
+            throw new IllegalArgumentException("The context '" + path + "' already exists.");
+        }
+        NioHttpContext context = new NioHttpContext(this, path);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public void removeContext(String path) {
+        NioHttpContext context = findContextExactly(path);
+        if (context == null) {
+            throw new IllegalArgumentException("The context '" + path + "' doesn't exist.");
+        }
+        contexts.remove(context);
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        if (!contexts.remove(context)) {
+            throw new IllegalArgumentException("The context " + context + " doesn't exist.");
+        }
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    private NioHttpContext findContextExactly(String path) {
+        for (NioHttpContext context : contexts) {
+            if (context.getPath().equals(path)) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the context with the longest path which is a prefix of the given request path like the JDK server
+     * does.
+     */
+    NioHttpContext findContext(String requestPath) {
+        NioHttpContext bestMatch = null;
+        for (NioHttpContext context : contexts) {
+            String contextPath = context.getPath();
+            if (requestPath.startsWith(contextPath) &&
+                    (bestMatch == null || contextPath.length() > bestMatch.getPath().length())) {
+                bestMatch = context;
+            }
+        }
+        return bestMatch;
+    }
+
+    void accept(SocketChannel channel) {
+        NioEventLoop eventLoop = eventLoops[(nextEventLoop.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+        eventLoop.register(channel);
+    }
+
+    void exchangeStarted() {
+        activeExchanges.incrementAndGet();
+    }
+
+    void exchangeFinished() {
+        activeExchanges.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "NioHttpServer[address = " + address + ", eventLoops = " + eventLoops.length + "]";
+    }
+}
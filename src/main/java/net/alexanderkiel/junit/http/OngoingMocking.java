@@ -16,6 +16,8 @@
 
 package net.alexanderkiel.junit.http;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Alexander Kiel
  */
@@ -23,7 +25,91 @@ public interface OngoingMocking {
 
     OngoingMocking willRespond(Response response);
 
+    /**
+     * Answers the calls with responses of the given selection, e.g. a {@link Responses#sequence(Response...)
+     * sequence} which fails the first calls or a {@link Responses#weighted(int[], Response...) weighted} selection
+     * which fails a share of all calls.
+     * <p/>
+     * Unauthorised calls are answered with 401 or 403 and don't advance the selection.
+     *
+     * @param responses the selection of responses
+     * @return this mocking
+     * @see Responses
+     */
+    OngoingMocking willRespond(Responses responses);
+
     OngoingMocking withBasicAuth(String username, String password);
 
+    /**
+     * Delays the responses of this mocking by latencies of the given distribution.
+     * <p/>
+     * The request is read right away, but the response is sent after the latency. Waiting requests don't occupy a
+     * thread of the server, so any number of delayed requests can be in flight.
+     *
+     * @param latency the distribution of the latencies
+     * @return this mocking
+     * @see Latency
+     */
+    OngoingMocking withLatency(Latency latency);
+
+    /**
+     * Compresses response bodies with gzip or deflate if the Accept-Encoding header of the request allows it.
+     * <p/>
+     * The compressed bodies of {@link StringResponse} and {@link ClasspathResourceResponse} are computed once and
+     * reused for all requests; other bodies are compressed while they are sent.
+     *
+     * @return this mocking
+     */
+    OngoingMocking withCompression();
+
+    /**
+     * Limits the bandwidth with which request bodies are read and response bodies are written, e.g. to emulate a slow
+     * mobile link. All requests to this mocking share the bandwidth.
+     * <p/>
+     * Bodies are transferred in chunks which are paced by a timer, so throttled requests don't occupy a thread of the
+     * server while they wait.
+     *
+     * @param bytesPerSecond the bandwidth in bytes per second or 0 for unlimited
+     * @return this mocking
+     * @see HttpMockServer#setBandwidth(long)
+     */
+    OngoingMocking withBandwidth(long bytesPerSecond);
+
+    /**
+     * Verifies that the request was called at least once.
+     *
+     * @throws AssertionError if the request wasn't called or was invalid.
+     */
     void verify();
+
+    /**
+     * Verifies that the request was called as often as the given mode specifies.
+     *
+     * @param mode the expected number of calls, e.g. {@link VerificationMode#times(long) times(3)}
+     * @throws AssertionError if the request wasn't called as expected or was invalid.
+     */
+    void verify(VerificationMode mode);
+
+    /**
+     * Waits until the request was called at least the given number of times, e.g. by code under test which calls the
+     * mock asynchronously.
+     * <p/>
+     * The waiting thread is woken up by the thread which handles the request, so the method returns as soon as the
+     * request arrived. A request counts once its body was received completely, so {@link #verify()} sees its
+     * payload afterwards.
+     *
+     * @param times   the number of calls to wait for
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @throws AssertionError       if the request wasn't called often enough within the timeout.
+     * @throws InterruptedException if the waiting thread was interrupted.
+     */
+    void awaitCalled(long times, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns how often the request was called so far.
+     *
+     * @return the number of calls.
+     */
+    long getCallCount();
 }
@@ -0,0 +1,348 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * A 206 Partial Content response which carries one or more byte ranges of a byte-addressable response.
+ * <p/>
+ * The body is a sequence of segments which are either fixed bytes, like the part headers of a multipart body, or
+ * ranges of the underlying body. Ranges are read by asking the underlying response for a view at their offset or by
+ * skipping its body stream to the offset, so the prefix is never read.
+ *
+ * @author Alexander Kiel
+ */
+class PartialResponse implements ByteBufferResponse {
+
+    /**
+     * Requests with more ranges are answered with the whole body.
+     */
+    static final int MAX_RANGES = 32;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Pattern COMMA_SPLIT_PATTERN = Pattern.compile(",");
+    private static final String BOUNDARY = "http-mock-byteranges-8f0c2a5e";
+
+    private final Response response;
+    private final String contentType;
+    private final Map<String, List<String>> headers;
+    private final List<Segment> segments;
+    private final long length;
+
+    private PartialResponse(Response response, String contentType, Map<String, List<String>> headers,
+                            List<Segment> segments) {
+        this.response = response;
+        this.contentType = contentType;
+        this.headers = unmodifiableMap(headers);
+        this.segments = segments;
+        long length = 0;
+        for (Segment segment : segments) {
+            length += segment.length;
+        }
+        this.length = length;
+    }
+
+    /**
+     * Determines whether ranges of the given response can be served, which is the case for successful responses with
+     * a known length whose body can be addressed at any offset.
+     */
+    static boolean isRangeable(Response response) {
+        return response.getStatusCode() == 200 && response.hasBody() && response.getBodyLength() > 0 &&
+                (response instanceof ByteBufferResponse || response instanceof ByteArrayResponse);
+    }
+
+    /**
+     * Returns the response to send for the given Range and If-Range headers.
+     *
+     * @param response the full response
+     * @param range    the value of the Range header or {@code null}
+     * @param ifRange  the value of the If-Range header or {@code null}
+     * @return a 206 or 416 response or the full response if the ranges don't apply.
+     */
+    static Response select(Response response, String range, String ifRange) {
+        if (range == null || !isRangeable(response) || (ifRange != null && !matchesValidator(response, ifRange))) {
+            return response;
+        }
+        long length = response.getBodyLength();
+        List<long[]> ranges = parse(range, length);
+        if (ranges == null) {
+            return response;
+        }
+        if (ranges.isEmpty()) {
+            Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            headers.put("Content-Range", singletonList("bytes */" + length));
+            return new EmptyResponse(416, headers);
+        }
+        Map<String, List<String>> headers = new HashMap<String, List<String>>(response.getHeaders());
+        List<Segment> segments = new ArrayList<Segment>();
+        String contentType;
+        if (ranges.size() == 1) {
+            long[] r = ranges.get(0);
+            headers.put("Content-Range", singletonList(contentRange(r, length)));
+            segments.add(new Segment(null, r[0], r[1] - r[0] + 1));
+            contentType = response.getContentType();
+        } else {
+            for (long[] r : ranges) {
+                segments.add(new Segment(("\r\n--" + BOUNDARY + "\r\nContent-Type: " + response.getContentType() +
+                        "\r\nContent-Range: " + contentRange(r, length) + "\r\n\r\n").getBytes(US_ASCII), 0, 0));
+                segments.add(new Segment(null, r[0], r[1] - r[0] + 1));
+            }
+            segments.add(new Segment(("\r\n--" + BOUNDARY + "--\r\n").getBytes(US_ASCII), 0, 0));
+            contentType = "multipart/byteranges; boundary=" + BOUNDARY;
+        }
+        return new PartialResponse(response, contentType, headers, segments);
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * The If-Range header holds either an entity tag or a date which has to match the ETag or Last-Modified header of
+     * the response exactly. Weak entity tags never match.
+     */
+    private static boolean matchesValidator(Response response, String ifRange) {
+        String validator = ifRange.trim();
+        if (validator.startsWith("W/")) {
+            return false;
+        }
+        return validator.equals(firstHeader(response, "ETag")) ||
+                validator.equals(firstHeader(response, "Last-Modified"));
+    }
+
+    private static String firstHeader(Response response, String name) {
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a Range header into inclusive ranges which are clipped at the end of the body.
+     *
+     * @return the satisfiable ranges, which are none if all ranges start behind the body, or {@code null} if the
+     *         header is invalid and should be ignored.
+     */
+    static List<long[]> parse(String range, long length) {
+        String value = range.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = COMMA_SPLIT_PATTERN.split(value.substring(6));
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<long[]>();
+        boolean any = false;
+        for (String spec : specs) {
+            String trimmed = spec.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int dash = trimmed.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            any = true;
+            try {
+                if (dash == 0) {
+                    long suffix = parseDigits(trimmed.substring(1));
+                    if (suffix > 0) {
+                        ranges.add(new long[]{Math.max(0, length - suffix), length - 1});
+                    }
+                } else {
+                    long start = parseDigits(trimmed.substring(0, dash));
+                    String endPart = trimmed.substring(dash + 1);
+                    long end = endPart.isEmpty() ? Long.MAX_VALUE : parseDigits(endPart);
+                    if (end < start) {
+                        return null;
+                    }
+                    if (start < length) {
+                        ranges.add(new long[]{start, Math.min(end, length - 1)});
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return any ? ranges : null;
+    }
+
+    private static long parseDigits(String digits) {
+        String trimmed = digits.trim();
+        if (trimmed.isEmpty()) {
+            throw new NumberFormatException("empty");
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) < '0' || trimmed.charAt(i) > '9') {
+                throw new NumberFormatException(trimmed);
+            }
+        }
+        return Long.parseLong(trimmed);
+    }
+
+    public int getStatusCode() {
+        return 206;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean hasBody() {
+        return true;
+    }
+
+    public long getBodyLength() {
+        return length;
+    }
+
+    public ByteBuffer getBodyBuffer(long offset, long length) throws IOException {
+        for (Segment segment : segments) {
+            if (offset < segment.length) {
+                long count = Math.min(length, segment.length - offset);
+                if (segment.bytes != null) {
+                    return ByteBuffer.wrap(segment.bytes, (int) offset, (int) count).asReadOnlyBuffer();
+                }
+                return rangeBuffer(segment.start + offset, count);
+            }
+            offset -= segment.length;
+        }
+        throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length);
+    }
+
+    private ByteBuffer rangeBuffer(long offset, long length) throws IOException {
+        if (response instanceof ByteArrayResponse) {
+            return ByteBuffer.wrap(((ByteArrayResponse) response).getBodyBytes(), (int) offset, (int) length)
+                    .asReadOnlyBuffer();
+        }
+        return ((ByteBufferResponse) response).getBodyBuffer(offset, length);
+    }
+
+    public InputStream getBodyInputStream() {
+        return new SegmentInputStream();
+    }
+
+    @Override
+    public String toString() {
+        return "PartialResponse[contentType = '" + contentType + "', length = " + length + ", response = " +
+                response + "]";
+    }
+
+    /**
+     * Either fixed bytes or a range of the underlying body.
+     */
+    private static class Segment {
+
+        private final byte[] bytes;
+        private final long start;
+        private final long length;
+
+        private Segment(byte[] bytes, long start, long length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = bytes == null ? length : bytes.length;
+        }
+    }
+
+    /**
+     * Reads the segments one after another. Ranges are read from a body stream which is skipped to their start.
+     */
+    private class SegmentInputStream extends InputStream {
+
+        private int index;
+        private InputStream current;
+        private long remaining;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                closeCurrent();
+                if (index == segments.size()) {
+                    return -1;
+                }
+                open(segments.get(index++));
+            }
+            int count = current.read(bytes, offset, (int) Math.min(length, remaining));
+            if (count < 0) {
+                throw new IOException("The body of " + response + " ended before its length.");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        private void open(Segment segment) throws IOException {
+            if (segment.bytes != null) {
+                current = new ByteArrayInputStream(segment.bytes);
+            } else {
+                current = response.getBodyInputStream();
+                long skipped = 0;
+                while (skipped < segment.start) {
+                    long count = current.skip(segment.start - skipped);
+                    if (count <= 0) {
+                        if (current.read() < 0) {
+                            throw new IOException("The body of " + response + " ended before " + segment.start +
+                                    ".");
+                        }
+                        count = 1;
+                    }
+                    skipped += count;
+                }
+            }
+            remaining = segment.length;
+        }
+
+        private void closeCurrent() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeCurrent();
+        }
+    }
+}
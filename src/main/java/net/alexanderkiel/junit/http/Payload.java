@@ -0,0 +1,299 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * An expected request payload which is compared with the actual request body while it is received.
+ * <p/>
+ * The body is never held in memory as a whole, so mockings with such a payload can verify uploads of any size. A
+ * payload given as string, file or URL is compared byte by byte and a mismatch reports the first differing offset. A
+ * payload given as length and SHA-256 digest only needs the digest to be known upfront.
+ *
+ * @author Alexander Kiel
+ * @see HttpMock#given(HttpMock.Method, String, String, Payload)
+ */
+public abstract class Payload {
+
+    private static final Logger LOGGER = Logger.getLogger(Payload.class.getName());
+    private static final String UTF_8 = "UTF-8";
+
+    Payload() {
+    }
+
+    /**
+     * Returns a payload with the UTF-8 encoded bytes of the given string.
+     */
+    public static Payload of(String content) {
+        if (content == null) {
+            throw new NullPointerException("Can't resolve the argument 'content'.");
+        }
+        try {
+            return new BytesPayload(content.getBytes(UTF_8));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always available.", e);
+        }
+    }
+
+    /**
+     * Returns a payload with the content of the given file. The file is read while requests are received.
+     */
+    public static Payload of(File file) {
+        if (file == null) {
+            throw new NullPointerException("Can't resolve the argument 'file'.");
+        }
+        return new FilePayload(file);
+    }
+
+    /**
+     * Returns a payload with the content of the given URL, e.g. a classpath resource. The URL is read while requests
+     * are received.
+     */
+    public static Payload of(URL url) {
+        if (url == null) {
+            throw new NullPointerException("Can't resolve the argument 'url'.");
+        }
+        return new UrlPayload(url);
+    }
+
+    /**
+     * Returns a payload which is only known by its length and SHA-256 digest.
+     *
+     * @param length the length of the payload in bytes
+     * @param sha256 the hex encoded SHA-256 digest of the payload
+     */
+    public static Payload digest(long length, String sha256) {
+        if (length < 0) {
+            throw new IllegalArgumentException("The length has to be non-negative but was " + length + ".");
+        }
+        if (sha256 == null) {
+            throw new NullPointerException("Can't resolve the argument 'sha256'.");
+        }
+        return new DigestPayload(length, sha256.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Starts the comparison with one request body.
+     */
+    abstract Comparison compare() throws IOException;
+
+    /**
+     * Compares one request body with the payload. The body is passed in consecutive parts.
+     */
+    abstract static class Comparison {
+
+        abstract void update(byte[] bytes, int offset, int length) throws IOException;
+
+        /**
+         * Ends the comparison and releases its resources.
+         *
+         * @return a description of the difference or {@code null} if the body matches the payload.
+         */
+        abstract String finish() throws IOException;
+
+        /**
+         * Releases the resources of the comparison if it ends without {@link #finish()}, e.g. because the upload
+         * failed. Further calls have no effect.
+         */
+        abstract void close();
+    }
+
+    private abstract static class StreamPayload extends Payload {
+
+        abstract InputStream open() throws IOException;
+
+        Comparison compare() throws IOException {
+            return new StreamComparison(open());
+        }
+    }
+
+    private static class BytesPayload extends StreamPayload {
+
+        private final byte[] content;
+
+        private BytesPayload(byte[] content) {
+            this.content = content;
+        }
+
+        InputStream open() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public String toString() {
+            return content.length + " bytes";
+        }
+    }
+
+    private static class FilePayload extends StreamPayload {
+
+        private final File file;
+
+        private FilePayload(File file) {
+            this.file = file;
+        }
+
+        InputStream open() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public String toString() {
+            return "file " + file;
+        }
+    }
+
+    private static class UrlPayload extends StreamPayload {
+
+        private final URL url;
+
+        private UrlPayload(URL url) {
+            this.url = url;
+        }
+
+        InputStream open() throws IOException {
+            return url.openStream();
+        }
+
+        @Override
+        public String toString() {
+            return "URL " + url;
+        }
+    }
+
+    private static class DigestPayload extends Payload {
+
+        private final long length;
+        private final String sha256;
+
+        private DigestPayload(long length, String sha256) {
+            this.length = length;
+            this.sha256 = sha256;
+        }
+
+        Comparison compare() {
+            final MessageDigest digest = JournalFilter.DigestingInputStream.newSha256();
+            return new Comparison() {
+
+                private long received;
+
+                void update(byte[] bytes, int offset, int length) {
+                    digest.update(bytes, offset, length);
+                    received += length;
+                }
+
+                String finish() {
+                    if (received != length) {
+                        return format("has %d bytes but expected %d bytes", received, length);
+                    }
+                    String actual = encodeHexString(digest.digest());
+                    if (!actual.equals(sha256)) {
+                        return format("has the SHA-256 digest %s but expected %s", actual, sha256);
+                    }
+                    return null;
+                }
+
+                void close() {
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return length + " bytes with SHA-256 " + sha256;
+        }
+    }
+
+    /**
+     * Compares the body with an expected stream which is read in lockstep, so memory use is constant.
+     */
+    private static class StreamComparison extends Comparison {
+
+        private final InputStream expected;
+        private final byte[] buffer;
+        private long received;
+        private long mismatchOffset;
+        private boolean closed;
+
+        private StreamComparison(InputStream expected) {
+            this.expected = expected;
+            buffer = BufferPool.DEFAULT.acquire(0);
+            mismatchOffset = -1;
+        }
+
+        void update(byte[] bytes, int offset, int length) throws IOException {
+            while (mismatchOffset < 0 && length > 0) {
+                int count = expected.read(buffer, 0, Math.min(length, buffer.length));
+                if (count < 0) {
+                    mismatchOffset = received;
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (bytes[offset + i] != buffer[i]) {
+                        mismatchOffset = received + i;
+                        break;
+                    }
+                }
+                offset += count;
+                length -= count;
+                received += count;
+            }
+            received += length;
+        }
+
+        String finish() throws IOException {
+            try {
+                if (mismatchOffset < 0 && expected.read() >= 0) {
+                    mismatchOffset = received;
+                }
+                if (mismatchOffset < 0) {
+                    return null;
+                }
+                return format("differs at byte offset %d; %d bytes were received", mismatchOffset, received);
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            BufferPool.DEFAULT.release(buffer);
+            try {
+                expected.close();
+            } catch (IOException e) {
+                LOGGER.log(FINE, "Error while closing the expected payload.", e);
+            }
+        }
+    }
+}
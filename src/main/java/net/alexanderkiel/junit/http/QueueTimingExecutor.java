@@ -0,0 +1,106 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Measures how long the tasks of the server wait for a thread of the executor.
+ * <p/>
+ * While a task runs, its wait is available through {@link #currentQueueWait()}, so that handlers can attribute it to
+ * their route. Tasks count as in flight from their submission until they finish or hand their count over to a
+ * delayed continuation.
+ *
+ * @author Alexander Kiel
+ */
+class QueueTimingExecutor implements Executor {
+
+    private static final ThreadLocal<long[]> CURRENT_QUEUE_WAIT = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{-1};
+        }
+    };
+
+    private final Executor executor;
+    private final LatencyHistogram queueWait;
+    private final InFlightCounter inFlight;
+
+    QueueTimingExecutor(Executor executor, LatencyHistogram queueWait) {
+        this(executor, queueWait, new InFlightCounter());
+    }
+
+    QueueTimingExecutor(Executor executor, LatencyHistogram queueWait, InFlightCounter inFlight) {
+        if (executor == null) {
+            throw new NullPointerException("Can't resolve the argument 'executor'.");
+        }
+        this.executor = executor;
+        this.queueWait = queueWait;
+        this.inFlight = inFlight;
+    }
+
+    public void execute(Runnable command) {
+        long submitNanos = System.nanoTime();
+        inFlight.enter();
+        try {
+            executor.execute(new TimedTask(command, submitNanos));
+        } catch (RejectedExecutionException e) {
+            inFlight.exit();
+            throw e;
+        }
+    }
+
+    private final class TimedTask implements Runnable {
+
+        private final Runnable command;
+        private final long submitNanos;
+
+        private TimedTask(Runnable command, long submitNanos) {
+            this.command = command;
+            this.submitNanos = submitNanos;
+        }
+
+        public void run() {
+            long wait = System.nanoTime() - submitNanos;
+            queueWait.record(wait);
+            long[] current = CURRENT_QUEUE_WAIT.get();
+            current[0] = wait;
+            inFlight.hold();
+            try {
+                command.run();
+            } finally {
+                current[0] = -1;
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Returns how long the task which runs on the current thread waited for it.
+     *
+     * @return the wait in nanoseconds or -1 if the current thread doesn't run a task of this executor.
+     */
+    static long currentQueueWait() {
+        return CURRENT_QUEUE_WAIT.get()[0];
+    }
+
+    @Override
+    public String toString() {
+        return "QueueTimingExecutor[executor = " + executor + "]";
+    }
+}
@@ -28,35 +28,27 @@ import static org.junit.Assert.assertTrue;
  */
 class ReadonlyOngoingMocking extends BaseOngoingMocking {
 
-    private final HttpMock.Method method;
-    private final String path;
-    private boolean called;
-
     ReadonlyOngoingMocking(HttpMock.Method method, String path) {
-        this.method = method;
-        this.path = path;
+        super(method, path);
     }
 
     public void handle(HttpExchange httpExchange) throws IOException {
         logRequest(httpExchange);
-        setCalled();
-        checkAuthorisation(httpExchange);
-        setResponseHeaders(httpExchange.getResponseHeaders());
-        sendResponseHeaders(httpExchange);
-        sendResponseBody(httpExchange.getResponseBody());
-        httpExchange.close();
+        long startNanos = startCall();
+        respond(httpExchange, startNanos);
     }
 
-    private void setCalled() {
-        called = true;
+    public void verify() {
+        assertTrue(format("request %s called", describeRequest()), getCallCount() > 0);
     }
 
-    public void verify() {
-        assertTrue(format("request %s %s called", method, path), called);
+    public void verify(VerificationMode mode) {
+        mode.verify(describeRequest(), getCallCount());
     }
 
     @Override
     public String toString() {
-        return "ReadonlyOngoingMocking[method = " + method + ", path = '" + path + "', " + super.toString() + "]";
+        return "ReadonlyOngoingMocking[method = " + getMethod() + ", path = '" + getPath() + "', " + super.toString() +
+                "]";
     }
 }
@@ -0,0 +1,402 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Selects one of several handlers of the same method and path by their {@link RequestMatcher}s.
+ * <p/>
+ * The handlers are ordered by precedence and every set of handlers is a bit set over this order. For each attribute
+ * with equality matchers, the index holds a hash map from the value to the handlers which require it. A request is
+ * dispatched by intersecting the bit sets found for its attribute values, so the work depends on the number of
+ * distinct attributes and regular expressions but not on the number of handlers. Attributes only relevant for
+ * handlers which are already ruled out aren't extracted, so bodies are only read if necessary.
+ * <p/>
+ * Indexes are immutable. Adding a handler creates a new index which is compiled on its first request.
+ *
+ * @author Alexander Kiel
+ */
+class RequestIndex implements HttpHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(RequestIndex.class.getName());
+    private static final int NOT_FOUND = 404;
+    private static final RequestIndex EMPTY = new RequestIndex(new Variant[0]);
+
+    private final Variant[] variants;
+    private final long[] all;
+    private volatile Check[] checks;
+
+    private RequestIndex(Variant[] variants) {
+        this.variants = variants;
+        all = new long[(variants.length + 63) >>> 6];
+        for (int i = 0; i < variants.length; i++) {
+            set(all, i);
+        }
+    }
+
+    /**
+     * Combines an existing handler of a route with a new one.
+     *
+     * @param existing the existing handler, which may be an index, or {@code null}
+     * @param matchers the matchers of the new handler
+     * @param handler  the new handler
+     * @return the new handler itself if neither uses matchers or an index of both otherwise.
+     */
+    static HttpHandler merge(HttpHandler existing, Collection<RequestMatcher> matchers, HttpHandler handler) {
+        if (matchers.isEmpty() && !(existing instanceof RequestIndex)) {
+            return handler;
+        }
+        RequestIndex index;
+        if (existing instanceof RequestIndex) {
+            index = (RequestIndex) existing;
+        } else if (existing != null) {
+            index = EMPTY.with(new HashSet<RequestMatcher>(), existing);
+        } else {
+            index = EMPTY;
+        }
+        return index.with(new HashSet<RequestMatcher>(matchers), handler);
+    }
+
+    /**
+     * Returns a new index with the given handler, which replaces a handler with the same matchers.
+     */
+    private RequestIndex with(Set<RequestMatcher> matchers, HttpHandler handler) {
+        List<Variant> newVariants = new ArrayList<Variant>(Arrays.asList(variants));
+        Variant variant = new Variant(matchers, handler);
+        boolean replaced = false;
+        for (int i = 0; i < newVariants.size(); i++) {
+            if (newVariants.get(i).matchers.equals(matchers)) {
+                newVariants.set(i, variant);
+                replaced = true;
+            }
+        }
+        if (!replaced) {
+            newVariants.add(variant);
+        }
+        Variant[] sorted = newVariants.toArray(new Variant[newVariants.size()]);
+        Arrays.sort(sorted, PrecedenceComparator.INSTANCE);
+        return new RequestIndex(sorted);
+    }
+
+    /**
+     * Compiles the checks on first use, so registering many handlers one by one doesn't compile every intermediate
+     * index. Concurrent first requests may compile the checks twice, which is harmless.
+     */
+    private Check[] checks() {
+        Check[] checks = this.checks;
+        if (checks == null) {
+            List<Check> list = new ArrayList<Check>();
+            addDimensions(list, variants, all);
+            addPatternChecks(list, variants, all.length);
+            checks = list.toArray(new Check[list.size()]);
+            Arrays.sort(checks, BodyLastComparator.INSTANCE);
+            this.checks = checks;
+        }
+        return checks;
+    }
+
+    private static void addDimensions(List<Check> checks, Variant[] variants, long[] all) {
+        Map<RequestMatcher.Attribute, SortedMap<Integer, String>> required =
+                new LinkedHashMap<RequestMatcher.Attribute, SortedMap<Integer, String>>();
+        for (int i = 0; i < variants.length; i++) {
+            for (RequestMatcher matcher : variants[i].matchers) {
+                if (matcher.getValue() != null) {
+                    SortedMap<Integer, String> values = required.get(matcher.getAttribute());
+                    if (values == null) {
+                        values = new TreeMap<Integer, String>();
+                        required.put(matcher.getAttribute(), values);
+                    }
+                    if (!values.containsKey(i)) {
+                        values.put(i, matcher.getValue());
+                    } else if (!matcher.getValue().equals(values.get(i))) {
+                        // No request has different values of the same attribute, and null stays once set.
+                        values.put(i, null);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<RequestMatcher.Attribute, SortedMap<Integer, String>> entry : required.entrySet()) {
+            checks.add(new Dimension(entry.getKey(), entry.getValue(), all));
+        }
+    }
+
+    private static void addPatternChecks(List<Check> checks, Variant[] variants, int words) {
+        Map<RequestMatcher, long[]> constrained = new LinkedHashMap<RequestMatcher, long[]>();
+        for (int i = 0; i < variants.length; i++) {
+            for (RequestMatcher matcher : variants[i].matchers) {
+                if (matcher.getValue() == null) {
+                    long[] bits = constrained.get(matcher);
+                    if (bits == null) {
+                        bits = new long[words];
+                        constrained.put(matcher, bits);
+                    }
+                    set(bits, i);
+                }
+            }
+        }
+        for (Map.Entry<RequestMatcher, long[]> entry : constrained.entrySet()) {
+            checks.add(new PatternCheck(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Selects the handler with the highest precedence whose matchers all match the given request.
+     *
+     * @return the handler or {@code null} if no handler matches.
+     */
+    HttpHandler select(RequestView request) throws IOException {
+        long[] candidates = all.clone();
+        for (Check check : checks()) {
+            if (intersects(candidates, check.constrained) && !check.apply(candidates, request)) {
+                return null;
+            }
+        }
+        for (int word = 0; word < candidates.length; word++) {
+            if (candidates[word] != 0) {
+                return variants[(word << 6) + Long.numberOfTrailingZeros(candidates[word])].handler;
+            }
+        }
+        return null;
+    }
+
+    public void handle(HttpExchange httpExchange) throws IOException {
+        HttpHandler handler = select(new RequestView(httpExchange));
+        if (handler != null) {
+            handler.handle(httpExchange);
+        } else {
+            LOGGER.severe(format("No mocking of %s %s matches the request.", httpExchange.getRequestMethod(),
+                    httpExchange.getRequestURI()));
+            httpExchange.sendResponseHeaders(NOT_FOUND, -1);
+            httpExchange.close();
+        }
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static boolean intersects(long[] bits, long[] other) {
+        for (int i = 0; i < bits.length; i++) {
+            if ((bits[i] & other[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all bits from {@code bits} which aren't in {@code other}.
+     *
+     * @return {@code true} if any bit is left.
+     */
+    private static boolean retain(long[] bits, long[] other) {
+        long any = 0;
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] &= other[i];
+            any |= bits[i];
+        }
+        return any != 0;
+    }
+
+    /**
+     * Removes all bits from {@code bits} which are in {@code other}.
+     *
+     * @return {@code true} if any bit is left.
+     */
+    private static boolean remove(long[] bits, long[] other) {
+        long any = 0;
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] &= ~other[i];
+            any |= bits[i];
+        }
+        return any != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestIndex" + Arrays.toString(variants);
+    }
+
+    private static class Variant {
+
+        private final Set<RequestMatcher> matchers;
+        private final HttpHandler handler;
+
+        private Variant(Set<RequestMatcher> matchers, HttpHandler handler) {
+            this.matchers = matchers;
+            this.handler = handler;
+        }
+
+        @Override
+        public String toString() {
+            return matchers + " -> " + handler;
+        }
+    }
+
+    /**
+     * Rules out the candidates whose matchers on one attribute don't accept the request.
+     */
+    private abstract static class Check {
+
+        final RequestMatcher.Attribute attribute;
+
+        /**
+         * The handlers with a matcher of this check. The check is skipped if none of them is a candidate anymore.
+         */
+        final long[] constrained;
+
+        Check(RequestMatcher.Attribute attribute, long[] constrained) {
+            this.attribute = attribute;
+            this.constrained = constrained;
+        }
+
+        /**
+         * Removes the candidates which don't accept the given request.
+         *
+         * @return {@code true} if any candidate is left.
+         */
+        abstract boolean apply(long[] candidates, RequestView request) throws IOException;
+    }
+
+    /**
+     * The equality matchers of all handlers on one attribute.
+     */
+    private static class Dimension extends Check {
+
+        /**
+         * The handlers without an equality matcher on the attribute, which accept any value.
+         */
+        private final long[] unconstrained;
+
+        /**
+         * The constrained handlers which accept a value in ascending order. Together with the unconstrained handlers
+         * they are all handlers which accept the value. Each handler is listed under one value at most, so the index
+         * grows linearly with the number of handlers.
+         */
+        private final Map<String, int[]> accepting;
+
+        /**
+         * @param required the value each constrained handler requires or {@code null} if it requires different
+         *                 values and can never match, in ascending order of the handlers
+         */
+        private Dimension(RequestMatcher.Attribute attribute, SortedMap<Integer, String> required, long[] all) {
+            super(attribute, new long[all.length]);
+            for (Integer index : required.keySet()) {
+                set(constrained, index);
+            }
+            unconstrained = all.clone();
+            remove(unconstrained, constrained);
+            Map<String, List<Integer>> indices = new HashMap<String, List<Integer>>();
+            for (Map.Entry<Integer, String> entry : required.entrySet()) {
+                if (entry.getValue() != null) {
+                    List<Integer> list = indices.get(entry.getValue());
+                    if (list == null) {
+                        list = new ArrayList<Integer>(1);
+                        indices.put(entry.getValue(), list);
+                    }
+                    list.add(entry.getKey());
+                }
+            }
+            accepting = new HashMap<String, int[]>(indices.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : indices.entrySet()) {
+                int[] array = new int[entry.getValue().size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = entry.getValue().get(i);
+                }
+                accepting.put(entry.getKey(), array);
+            }
+        }
+
+        boolean apply(long[] candidates, RequestView request) throws IOException {
+            String value = attribute.extract(request);
+            int[] accepted = value == null ? null : accepting.get(value);
+            if (accepted == null) {
+                return retain(candidates, unconstrained);
+            }
+            long any = 0;
+            int next = 0;
+            for (int word = 0; word < candidates.length; word++) {
+                long mask = unconstrained[word];
+                while (next < accepted.length && accepted[next] >>> 6 == word) {
+                    mask |= 1L << accepted[next++];
+                }
+                candidates[word] &= mask;
+                any |= candidates[word];
+            }
+            return any != 0;
+        }
+    }
+
+    /**
+     * One distinct regular expression matcher and the handlers which use it.
+     */
+    private static class PatternCheck extends Check {
+
+        private final RequestMatcher matcher;
+
+        private PatternCheck(RequestMatcher matcher, long[] constrained) {
+            super(matcher.getAttribute(), constrained);
+            this.matcher = matcher;
+        }
+
+        boolean apply(long[] candidates, RequestView request) throws IOException {
+            return matcher.matches(attribute.extract(request)) || remove(candidates, constrained);
+        }
+    }
+
+    /**
+     * Orders handlers with more matchers first and keeps the order of handlers with the same number.
+     */
+    private enum PrecedenceComparator implements Comparator<Variant> {
+        INSTANCE;
+
+        public int compare(Variant variant1, Variant variant2) {
+            return variant2.matchers.size() - variant1.matchers.size();
+        }
+    }
+
+    /**
+     * Orders checks which need the request body last, so the body is only read if the other checks leave
+     * candidates.
+     */
+    private enum BodyLastComparator implements Comparator<Check> {
+        INSTANCE;
+
+        public int compare(Check check1, Check check2) {
+            return (check1.attribute.needsBody() ? 1 : 0) - (check2.attribute.needsBody() ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the most recent requests of a mock server in a ring buffer of fixed capacity.
+ * <p/>
+ * Recording is lock-free: every request claims the next sequence number and overwrites the oldest slot. So the
+ * journal never holds more than {@link #getCapacity() capacity} entries, regardless how long the server runs.
+ *
+ * @author Alexander Kiel
+ */
+public final class RequestJournal {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final AtomicReferenceArray<JournalEntry> slots;
+    private final AtomicLong nextSequenceNumber;
+
+    RequestJournal(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity has to be at least 1 but was " + capacity + ".");
+        }
+        slots = new AtomicReferenceArray<JournalEntry>(capacity);
+        nextSequenceNumber = new AtomicLong();
+    }
+
+    /**
+     * Records the arrival of a request. Body and duration are filled into the returned entry as they become known.
+     */
+    JournalEntry record(String method, URI requestUri, Map<String, List<String>> headers, long arrivalNanos) {
+        long sequenceNumber = nextSequenceNumber.getAndIncrement();
+        JournalEntry entry = new JournalEntry(sequenceNumber, method, requestUri, headers, arrivalNanos);
+        slots.set(slotIndex(sequenceNumber), entry);
+        return entry;
+    }
+
+    private int slotIndex(long sequenceNumber) {
+        return (int) (sequenceNumber % slots.length());
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Returns the number of requests recorded since the server was created, including the ones which were already
+     * overwritten.
+     *
+     * @return the number of recorded requests.
+     */
+    public long getTotalCount() {
+        return nextSequenceNumber.get();
+    }
+
+    /**
+     * Returns the entries currently held by the journal, the oldest first.
+     * <p/>
+     * Requests which are still recorded concurrently may be missing.
+     *
+     * @return a snapshot of the entries.
+     */
+    public List<JournalEntry> getEntries() {
+        long end = nextSequenceNumber.get();
+        long start = Math.max(0, end - slots.length());
+        List<JournalEntry> entries = new ArrayList<JournalEntry>((int) (end - start));
+        for (long sequenceNumber = start; sequenceNumber < end; sequenceNumber++) {
+            JournalEntry entry = slots.get(slotIndex(sequenceNumber));
+            if (entry != null && entry.getSequenceNumber() == sequenceNumber) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entries for the given method and path, the oldest first.
+     *
+     * @param method the HTTP method
+     * @param path   the absolute path of the request URI, e.g. {@code /foo/bar}
+     * @return the matching entries.
+     */
+    public List<JournalEntry> getEntries(HttpMock.Method method, String path) {
+        List<JournalEntry> entries = new ArrayList<JournalEntry>();
+        for (JournalEntry entry : getEntries()) {
+            if (method.name().equals(entry.getMethod()) && path.equals(entry.getPath())) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Removes all entries. The total count isn't reset.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestJournal[capacity = " + slots.length() + ", totalCount = " + getTotalCount() + "]";
+    }
+}
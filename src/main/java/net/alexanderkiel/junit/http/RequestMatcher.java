@@ -0,0 +1,331 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A condition on a request which selects between mockings of the same method and path.
+ * <p/>
+ * Matchers either compare a part of the request with a value or match it with a regular expression, which has to
+ * match the whole part. Mockings with more matchers take precedence over mockings with fewer; among mockings with
+ * the same number of matchers, the first registered one wins. The matchers of all mockings of a route are compiled
+ * into an index, so the mocking of a request is found with one hash lookup per distinct header, query parameter or
+ * JSON path rather than by testing the mockings one by one.
+ *
+ * @author Alexander Kiel
+ * @see HttpMockServer#given(HttpMock.Method, String, RequestMatcher...)
+ */
+public final class RequestMatcher {
+
+    private final Attribute attribute;
+    private final String value;
+    private final Pattern pattern;
+
+    private RequestMatcher(Attribute attribute, String value, Pattern pattern) {
+        this.attribute = attribute;
+        this.value = value;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Matches requests whose first header with the given name has the given value. Header names are compared case
+     * insensitive.
+     */
+    public static RequestMatcher header(String name, String value) {
+        return equal(Attribute.header(name), value);
+    }
+
+    /**
+     * Matches requests whose first header with the given name matches the given regular expression.
+     */
+    public static RequestMatcher headerMatches(String name, String regex) {
+        return matching(Attribute.header(name), regex);
+    }
+
+    /**
+     * Matches requests whose first query parameter with the given name has the given value after URL decoding. A
+     * parameter without {@code =} has the empty string as value.
+     */
+    public static RequestMatcher query(String name, String value) {
+        return equal(Attribute.query(name), value);
+    }
+
+    /**
+     * Matches requests whose first query parameter with the given name matches the given regular expression.
+     */
+    public static RequestMatcher queryMatches(String name, String regex) {
+        return matching(Attribute.query(name), regex);
+    }
+
+    /**
+     * Matches requests with a JSON body which has the given value at the given path.
+     * <p/>
+     * Paths start with {@code $} followed by member names like {@code .user} and array indices like {@code [0]},
+     * e.g. {@code $.order.items[0].sku}. Strings are compared with their content; numbers, booleans and
+     * {@code null} with their JSON notation.
+     */
+    public static RequestMatcher jsonPath(String path, String value) {
+        return equal(Attribute.jsonPath(path), value);
+    }
+
+    /**
+     * Matches requests with a JSON body whose value at the given path matches the given regular expression.
+     *
+     * @see #jsonPath(String, String)
+     */
+    public static RequestMatcher jsonPathMatches(String path, String regex) {
+        return matching(Attribute.jsonPath(path), regex);
+    }
+
+    /**
+     * Matches requests whose body has the given SHA-256 digest.
+     *
+     * @param sha256 the hex encoded SHA-256 digest of the body
+     */
+    public static RequestMatcher bodySha256(String sha256) {
+        if (sha256 == null) {
+            throw new NullPointerException("Can't resolve the argument 'sha256'.");
+        }
+        return equal(Attribute.BODY_SHA256, sha256.toLowerCase(Locale.ENGLISH));
+    }
+
+    private static RequestMatcher equal(Attribute attribute, String value) {
+        if (value == null) {
+            throw new NullPointerException("Can't resolve the argument 'value'.");
+        }
+        return new RequestMatcher(attribute, value, null);
+    }
+
+    private static RequestMatcher matching(Attribute attribute, String regex) {
+        if (regex == null) {
+            throw new NullPointerException("Can't resolve the argument 'regex'.");
+        }
+        try {
+            return new RequestMatcher(attribute, null, Pattern.compile(regex));
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression '" + regex + "'.", e);
+        }
+    }
+
+    Attribute getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Returns the value to compare with or {@code null} if this matcher uses a regular expression.
+     */
+    String getValue() {
+        return value;
+    }
+
+    boolean matches(String actual) {
+        return actual != null && (pattern == null ? value.equals(actual) : pattern.matcher(actual).matches());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestMatcher)) {
+            return false;
+        }
+        RequestMatcher that = (RequestMatcher) o;
+        return attribute.equals(that.attribute) && (value == null ? that.value == null && pattern.pattern().equals(
+                that.pattern.pattern()) : value.equals(that.value));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * attribute.hashCode() + (value == null ? pattern.pattern().hashCode() : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return attribute + (value == null ? " ~ /" + pattern.pattern() + "/" : " = '" + value + "'");
+    }
+
+    /**
+     * A part of a request which matchers look at.
+     */
+    static final class Attribute {
+
+        static final Attribute BODY_SHA256 = new Attribute(Kind.BODY_SHA256, "", null);
+
+        private enum Kind {
+            HEADER, QUERY, JSON_PATH, BODY_SHA256
+        }
+
+        private final Kind kind;
+        private final String name;
+        private final Object[] steps;
+
+        private Attribute(Kind kind, String name, Object[] steps) {
+            this.kind = kind;
+            this.name = name;
+            this.steps = steps;
+        }
+
+        static Attribute header(String name) {
+            if (name == null) {
+                throw new NullPointerException("Can't resolve the argument 'name'.");
+            }
+            return new Attribute(Kind.HEADER, name.toLowerCase(Locale.ENGLISH), null);
+        }
+
+        static Attribute query(String name) {
+            if (name == null) {
+                throw new NullPointerException("Can't resolve the argument 'name'.");
+            }
+            return new Attribute(Kind.QUERY, name, null);
+        }
+
+        static Attribute jsonPath(String path) {
+            if (path == null) {
+                throw new NullPointerException("Can't resolve the argument 'path'.");
+            }
+            return new Attribute(Kind.JSON_PATH, path, parseJsonPath(path));
+        }
+
+        /**
+         * Splits a JSON path into member names and array indices.
+         */
+        private static Object[] parseJsonPath(String path) {
+            if (!path.startsWith("$")) {
+                throw new IllegalArgumentException("The JSON path '" + path + "' has to start with $.");
+            }
+            List<Object> steps = new ArrayList<Object>();
+            int i = 1;
+            while (i < path.length()) {
+                char c = path.charAt(i);
+                int end;
+                if (c == '.') {
+                    end = i + 1;
+                    while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                        end++;
+                    }
+                    if (end == i + 1) {
+                        throw new IllegalArgumentException("The JSON path '" + path + "' has an empty member name.");
+                    }
+                    steps.add(path.substring(i + 1, end));
+                } else if (c == '[') {
+                    end = path.indexOf(']', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("The JSON path '" + path + "' has an unclosed [.");
+                    }
+                    int index;
+                    try {
+                        index = Integer.parseInt(path.substring(i + 1, end));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("The JSON path '" + path + "' has an invalid index.", e);
+                    }
+                    if (index < 0) {
+                        throw new IllegalArgumentException("The JSON path '" + path + "' has an invalid index.");
+                    }
+                    steps.add(index);
+                    end++;
+                } else {
+                    throw new IllegalArgumentException("Unexpected character '" + c + "' in the JSON path '" + path +
+                            "'.");
+                }
+                i = end;
+            }
+            return steps.toArray();
+        }
+
+        /**
+         * Returns whether the request body has to be read to extract this attribute.
+         */
+        boolean needsBody() {
+            return kind == Kind.JSON_PATH || kind == Kind.BODY_SHA256;
+        }
+
+        /**
+         * Extracts this attribute from the given request.
+         *
+         * @return the value or {@code null} if the request doesn't have this attribute.
+         */
+        String extract(RequestView request) throws IOException {
+            switch (kind) {
+                case HEADER:
+                    return request.header(name);
+                case QUERY:
+                    return request.queryParameter(name);
+                case JSON_PATH:
+                    return select(request.json());
+                default:
+                    return request.bodySha256();
+            }
+        }
+
+        private String select(Object json) {
+            for (Object step : steps) {
+                if (step instanceof String && json instanceof Map && ((Map<?, ?>) json).containsKey(step)) {
+                    json = ((Map<?, ?>) json).get(step);
+                } else if (step instanceof Integer && json instanceof List && (Integer) step >= 0 &&
+                        (Integer) step < ((List<?>) json).size()) {
+                    json = ((List<?>) json).get((Integer) step);
+                } else {
+                    return null;
+                }
+            }
+            if (json == null) {
+                return "null";
+            }
+            return json instanceof Map || json instanceof List || json == RequestView.NO_JSON ? null :
+                    json.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Attribute)) {
+                return false;
+            }
+            Attribute that = (Attribute) o;
+            return kind == that.kind && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case HEADER:
+                    return "header " + name;
+                case QUERY:
+                    return "query " + name;
+                case JSON_PATH:
+                    return "json " + name;
+                default:
+                    return "body sha256";
+            }
+        }
+    }
+}
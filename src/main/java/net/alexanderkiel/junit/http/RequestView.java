@@ -0,0 +1,138 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * The parts of one request which {@link RequestMatcher}s look at. Parts are extracted on first use only.
+ * <p/>
+ * Reading the body buffers it and replaces the request body of the exchange by the buffer, so the handler which is
+ * selected afterwards can still read it.
+ *
+ * @author Alexander Kiel
+ */
+class RequestView {
+
+    /**
+     * Stands for a body which isn't valid JSON.
+     */
+    static final Object NO_JSON = new Object();
+
+    private final HttpExchange httpExchange;
+    private Map<String, String> queryParameters;
+    private byte[] body;
+    private String bodySha256;
+    private Object json;
+
+    RequestView(HttpExchange httpExchange) {
+        this.httpExchange = httpExchange;
+    }
+
+    String header(String name) {
+        return httpExchange.getRequestHeaders().getFirst(name);
+    }
+
+    String queryParameter(String name) {
+        if (queryParameters == null) {
+            queryParameters = parseQuery(httpExchange.getRequestURI().getRawQuery());
+        }
+        return queryParameters.get(name);
+    }
+
+    /**
+     * Decodes the parameters of the given raw query. The first occurrence of a parameter wins.
+     */
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = decode(separator < 0 ? parameter : parameter.substring(0, separator));
+            if (!parameters.containsKey(name)) {
+                parameters.put(name, separator < 0 ? "" : decode(parameter.substring(separator + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always available.", e);
+        } catch (IllegalArgumentException e) {
+            return s;
+        }
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the body.
+     */
+    String bodySha256() throws IOException {
+        if (bodySha256 == null) {
+            MessageDigest digest = JournalFilter.DigestingInputStream.newSha256();
+            digest.update(body());
+            bodySha256 = encodeHexString(digest.digest());
+        }
+        return bodySha256;
+    }
+
+    /**
+     * Returns the body parsed as JSON or {@link #NO_JSON} if it isn't valid JSON.
+     */
+    Object json() throws IOException {
+        if (json == null) {
+            try {
+                json = new JsonParser("the request body", new String(body(), BaseResponse.UTF_8)).parse();
+            } catch (IOException e) {
+                json = NO_JSON;
+            }
+            if (json == null) {
+                json = JsonNull.INSTANCE;
+            }
+        }
+        return json == JsonNull.INSTANCE ? null : json;
+    }
+
+    private byte[] body() throws IOException {
+        if (body == null) {
+            body = TrafficRecorder.readFully(httpExchange.getRequestBody(), null);
+            httpExchange.setStreams(new ByteArrayInputStream(body), null);
+        }
+        return body;
+    }
+
+    /**
+     * Caches a body which is the JSON literal {@code null}.
+     */
+    private enum JsonNull {
+        INSTANCE
+    }
+}
@@ -0,0 +1,174 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+package net.alexanderkiel.junit.http;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Continues the handling of requests after a delay without occupying a thread while waiting.
+ * <p/>
+ * A single daemon timer thread waits for all delays of one server. When a delay elapses, the continuation is handed
+ * over to the executor of the server, so slow response bodies don't hold up the timer. Continuations count as in
+ * flight from their scheduling until they finish, so that a stopping server waits for delayed responses. They take
+ * the count over from the task which schedules them, so an exchange is counted once. Continuations which are still
+ * pending when the scheduler shuts down are aborted, so that they release their resources.
+ *
+ * @author Alexander Kiel
+ */
+final class ResponseScheduler {
+
+    private final String name;
+    private final InFlightCounter inFlight;
+    private final Set<Pending> pending = Collections.newSetFromMap(new ConcurrentHashMap<Pending, Boolean>());
+    private volatile Executor executor;
+    private ScheduledExecutorService timer;
+
+    ResponseScheduler(String name) {
+        this(name, new InFlightCounter());
+    }
+
+    ResponseScheduler(String name, InFlightCounter inFlight) {
+        this.name = name;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Sets the executor on which continuations run. Without executor they run on the timer thread.
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the task after the given delay, or right away in the calling thread if there is no delay.
+     */
+    void schedule(Continuation task, long delayNanos) {
+        if (delayNanos <= 0) {
+            task.run();
+            return;
+        }
+        Pending continuation = new Pending(task);
+        inFlight.handOver();
+        pending.add(continuation);
+        try {
+            timer().schedule(continuation, delayNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(continuation);
+            inFlight.exit();
+            throw e;
+        }
+    }
+
+    private synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            this.timer = timer;
+        }
+        return timer;
+    }
+
+    /**
+     * Stops the timer thread and aborts all pending continuations.
+     */
+    synchronized void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        for (Pending continuation : pending) {
+            continuation.abort();
+        }
+    }
+
+    /**
+     * A task which continues the handling of a request after a delay.
+     */
+    interface Continuation extends Runnable {
+
+        /**
+         * Releases the resources of the task, which won't run anymore because the scheduler shut down.
+         */
+        void abort();
+    }
+
+    /**
+     * A scheduled continuation. Either the timer or the shutdown removes it from the pending ones first and only
+     * that one runs or aborts it.
+     */
+    private final class Pending implements Runnable {
+
+        private final Continuation task;
+
+        private Pending(Continuation task) {
+            this.task = task;
+        }
+
+        /**
+         * Hands the continuation over to the executor once the delay elapsed.
+         */
+        public void run() {
+            if (!pending.remove(this)) {
+                return;
+            }
+            Runnable continuation = new Runnable() {
+                public void run() {
+                    inFlight.hold();
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            };
+            Executor executor = ResponseScheduler.this.executor;
+            if (executor == null) {
+                continuation.run();
+            } else {
+                try {
+                    executor.execute(continuation);
+                } catch (RejectedExecutionException e) {
+                    continuation.run();
+                }
+            }
+        }
+
+        private void abort() {
+            if (pending.remove(this)) {
+                try {
+                    task.abort();
+                } finally {
+                    inFlight.exit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selects the response of a mocking for each call, e.g. to answer the first calls with errors or to fail a fixed
+ * share of all calls.
+ * <p/>
+ * Sequences, cycles and weighted selections advance an atomic cursor by one per authorised call. So the number of
+ * times each response is sent is determined by the number of calls alone, regardless how many of them arrive
+ * concurrently, and no lock is taken.
+ *
+ * @author Alexander Kiel
+ * @see OngoingMocking#willRespond(Responses)
+ */
+public abstract class Responses {
+
+    /**
+     * The maximum sum of weights of a {@link #weighted(int[], Response...) weighted} selection.
+     */
+    public static final int MAX_TOTAL_WEIGHT = 1 << 20;
+
+    /**
+     * The seed of the shuffle of weighted selections, so that the order of responses is the same in every run.
+     */
+    private static final long WEIGHTED_SEED = 0x2545F4914F6CDD1DL;
+
+    Responses() {
+    }
+
+    /**
+     * Returns a selection which always selects the given response.
+     */
+    static Responses single(Response response) {
+        return new SingleResponses(response);
+    }
+
+    /**
+     * Returns a selection which selects the given responses one after another and the last one for all further
+     * calls. For example {@code sequence(unavailable, unavailable, unavailable, ok)} answers the first three calls
+     * with {@code unavailable} and all others with {@code ok}.
+     *
+     * @param responses at least one response
+     */
+    public static Responses sequence(Response... responses) {
+        return new SequenceResponses(checkResponses(responses));
+    }
+
+    /**
+     * Returns a selection which selects the given responses one after another and starts over after the last one.
+     *
+     * @param responses at least one response
+     */
+    public static Responses cycle(Response... responses) {
+        return new CycleResponses(checkResponses(responses));
+    }
+
+    /**
+     * Returns a selection in which each response gets a share of the calls proportional to its weight. For example
+     * the weights {@code 99, 1} with the responses {@code ok, error} answer one of every 100 calls with {@code
+     * error}.
+     * <p/>
+     * The calls are divided into periods of as many calls as the sum of the weights. Within every period each
+     * response is selected exactly as often as its weight, in an order which is shuffled once with a fixed seed. So
+     * the responses look random to the client but the counts are exact after every full period.
+     *
+     * @param weights   non-negative weights, one for each response, with a sum between 1 and {@link
+     *                  #MAX_TOTAL_WEIGHT}
+     * @param responses the responses
+     */
+    public static Responses weighted(int[] weights, Response... responses) {
+        checkResponses(responses);
+        if (weights.length != responses.length) {
+            throw new IllegalArgumentException("There has to be one weight for each response but there are " +
+                    weights.length + " weights and " + responses.length + " responses.");
+        }
+        long totalWeight = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("The weights " + Arrays.toString(weights) +
+                        " have to be non-negative.");
+            }
+            totalWeight += weight;
+        }
+        if (totalWeight < 1 || totalWeight > MAX_TOTAL_WEIGHT) {
+            throw new IllegalArgumentException("The sum of the weights " + Arrays.toString(weights) +
+                    " has to be between 1 and " + MAX_TOTAL_WEIGHT + ".");
+        }
+        int[] schedule = new int[(int) totalWeight];
+        int position = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Arrays.fill(schedule, position, position + weights[i], i);
+            position += weights[i];
+        }
+        Random random = new Random(WEIGHTED_SEED);
+        for (int i = schedule.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = schedule[i];
+            schedule[i] = schedule[j];
+            schedule[j] = swap;
+        }
+        return new WeightedResponses(responses.clone(), weights.clone(), schedule);
+    }
+
+    private static Response[] checkResponses(Response[] responses) {
+        if (responses.length == 0) {
+            throw new IllegalArgumentException("There has to be at least one response.");
+        }
+        for (Response response : responses) {
+            if (response == null) {
+                throw new NullPointerException("Can't resolve the argument 'responses'.");
+            }
+        }
+        return responses.clone();
+    }
+
+    /**
+     * Returns the response for the next call.
+     */
+    abstract Response next();
+
+    /**
+     * Returns all responses this selection can return.
+     */
+    abstract Response[] responses();
+
+    private static class SingleResponses extends Responses {
+
+        private final Response response;
+
+        private SingleResponses(Response response) {
+            this.response = response;
+        }
+
+        Response next() {
+            return response;
+        }
+
+        Response[] responses() {
+            return new Response[]{response};
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(response);
+        }
+    }
+
+    private static class SequenceResponses extends Responses {
+
+        private final Response[] responses;
+        private final AtomicLong cursor;
+
+        private SequenceResponses(Response[] responses) {
+            this.responses = responses;
+            cursor = new AtomicLong();
+        }
+
+        Response next() {
+            int last = responses.length - 1;
+            // Once the sequence is exhausted, the cursor isn't written anymore, so callers don't contend for it.
+            if (cursor.get() >= last) {
+                return responses[last];
+            }
+            return responses[(int) Math.min(cursor.getAndIncrement(), last)];
+        }
+
+        Response[] responses() {
+            return responses.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "sequence " + Arrays.toString(responses);
+        }
+    }
+
+    private static class CycleResponses extends Responses {
+
+        private final Response[] responses;
+        private final AtomicLong cursor;
+
+        private CycleResponses(Response[] responses) {
+            this.responses = responses;
+            cursor = new AtomicLong();
+        }
+
+        Response next() {
+            return responses[(int) (cursor.getAndIncrement() % responses.length)];
+        }
+
+        Response[] responses() {
+            return responses.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "cycle " + Arrays.toString(responses);
+        }
+    }
+
+    private static class WeightedResponses extends Responses {
+
+        private final Response[] responses;
+        private final int[] weights;
+        private final int[] schedule;
+        private final AtomicLong cursor;
+
+        private WeightedResponses(Response[] responses, int[] weights, int[] schedule) {
+            this.responses = responses;
+            this.weights = weights;
+            this.schedule = schedule;
+            cursor = new AtomicLong();
+        }
+
+        Response next() {
+            return responses[schedule[(int) (cursor.getAndIncrement() % schedule.length)]];
+        }
+
+        Response[] responses() {
+            return responses.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "weighted " + Arrays.toString(weights) + " " + Arrays.toString(responses);
+        }
+    }
+}
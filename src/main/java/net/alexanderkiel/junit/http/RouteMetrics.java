@@ -0,0 +1,91 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+/**
+ * The metrics of one mocking at the time of a {@link ServerMetrics snapshot}.
+ * <p/>
+ * The time of a request is split into three phases: the wait for a thread of the executor, the handling until the
+ * response headers are sent, which includes reading the request body and any latency of the mocking, and writing
+ * the response body.
+ *
+ * @author Alexander Kiel
+ */
+public final class RouteMetrics {
+
+    private final HttpMock.Method method;
+    private final String path;
+    private final long callCount;
+    private final HistogramSnapshot queueWait;
+    private final HistogramSnapshot handling;
+    private final HistogramSnapshot bodyWrite;
+
+    RouteMetrics(HttpMock.Method method, String path, long callCount, HistogramSnapshot queueWait,
+                 HistogramSnapshot handling, HistogramSnapshot bodyWrite) {
+        this.method = method;
+        this.path = path;
+        this.callCount = callCount;
+        this.queueWait = queueWait;
+        this.handling = handling;
+        this.bodyWrite = bodyWrite;
+    }
+
+    public HttpMock.Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the path of the mocking, which may be a template.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of requests the mocking received.
+     */
+    public long getCallCount() {
+        return callCount;
+    }
+
+    /**
+     * Returns how long the requests waited for a thread before they were handled.
+     */
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns how long it took from the start of the handling until the response headers were sent.
+     */
+    public HistogramSnapshot getHandling() {
+        return handling;
+    }
+
+    /**
+     * Returns how long it took to write the response bodies after the headers were sent.
+     */
+    public HistogramSnapshot getBodyWrite() {
+        return bodyWrite;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteMetrics[method = " + method + ", path = '" + path + "', callCount = " + callCount +
+                ", queueWait = " + queueWait + ", handling = " + handling + ", bodyWrite = " + bodyWrite + "]";
+    }
+}
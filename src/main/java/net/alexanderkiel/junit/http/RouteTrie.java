@@ -0,0 +1,273 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * A segment trie of path templates.
+ * <p/>
+ * Templates are split at slashes into segments. A segment is either a literal, a parameter like {@code {id}} or
+ * {@code *}, which both match exactly one arbitrary segment, or {@code **}, which matches all remaining segments and
+ * is only allowed at the end. Literals take precedence over parameters and parameters over {@code **}.
+ * <p/>
+ * Handlers of the same method and template which use {@link RequestMatcher}s are combined into a {@link
+ * RequestIndex}.
+ * <p/>
+ * Lookups are lock-free and don't allocate. They run directly on a region of the request path. Registrations are
+ * serialized and publish new child arrays and handler maps by copy-on-write.
+ *
+ * @author Alexander Kiel
+ */
+class RouteTrie {
+
+    private static final String REST_WILDCARD = "**";
+    private static final String SEGMENT_WILDCARD = "*";
+
+    private final Route root;
+
+    RouteTrie() {
+        root = new Route("");
+    }
+
+    void register(HttpMock.Method method, String pattern, HttpHandler handler) {
+        register(method, pattern, Collections.<RequestMatcher>emptySet(), handler);
+    }
+
+    synchronized void register(HttpMock.Method method, String pattern, Collection<RequestMatcher> matchers,
+                               HttpHandler handler) {
+        Route route = root;
+        String[] segments = pattern.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (REST_WILDCARD.equals(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("The wildcard ** is only allowed at the end of a path " +
+                            "template but was used in '" + pattern + "'.");
+                }
+                route = route.restChild();
+            } else if (isParameter(segment)) {
+                route = route.parameterChild();
+            } else {
+                route = route.literalChild(segment);
+            }
+        }
+        route.putHandler(method, pattern, RequestIndex.merge(route.getHandler(method), matchers, handler));
+    }
+
+    private static boolean isParameter(String segment) {
+        return SEGMENT_WILDCARD.equals(segment) ||
+                (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}');
+    }
+
+    /**
+     * Finds the route which matches {@code path} starting at index {@code start}.
+     *
+     * @return the matching route which has at least one handler or {@code null} if no route matches.
+     */
+    Route find(String path, int start) {
+        return find(root, path, start, path.length(), null);
+    }
+
+    /**
+     * Finds the route which matches {@code path} starting at index {@code start} and has a handler for the given
+     * method. If a more specific route matches without such a handler, less specific routes are tried before.
+     *
+     * @return the matching route with a handler for the method, otherwise the matching route which has at least one
+     *         handler or {@code null} if no route matches.
+     */
+    Route find(String path, int start, HttpMock.Method method) {
+        Route match = method == null ? null : find(root, path, start, path.length(), method);
+        return match != null ? match : find(root, path, start, path.length(), null);
+    }
+
+    private static Route find(Route route, String path, int start, int end, HttpMock.Method method) {
+        if (start > end) {
+            return route.accepts(method) ? route : null;
+        }
+        int segmentEnd = path.indexOf('/', start);
+        if (segmentEnd < 0) {
+            segmentEnd = end;
+        }
+        Route literal = route.findLiteralChild(path, start, segmentEnd);
+        if (literal != null) {
+            Route match = find(literal, path, segmentEnd + 1, end, method);
+            if (match != null) {
+                return match;
+            }
+        }
+        Route parameter = route.parameterChild;
+        if (parameter != null) {
+            Route match = find(parameter, path, segmentEnd + 1, end, method);
+            if (match != null) {
+                return match;
+            }
+        }
+        Route rest = route.restChild;
+        return rest != null && rest.accepts(method) ? rest : null;
+    }
+
+    List<Route> routes() {
+        List<Route> routes = new ArrayList<Route>();
+        root.collect(routes);
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteTrie" + routes();
+    }
+
+    static class Route {
+
+        private static final Route[] NO_CHILDREN = new Route[0];
+
+        private final String segment;
+        private volatile String pattern;
+        private volatile Route[] literalChildren;
+        private volatile Route parameterChild;
+        private volatile Route restChild;
+        private volatile EnumMap<HttpMock.Method, HttpHandler> handlers;
+
+        private Route(String segment) {
+            this.segment = segment;
+            literalChildren = NO_CHILDREN;
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        HttpHandler getHandler(HttpMock.Method method) {
+            EnumMap<HttpMock.Method, HttpHandler> handlers = this.handlers;
+            return handlers == null ? null : handlers.get(method);
+        }
+
+        /**
+         * Returns whether the route has a handler for the method or any handler if the method is {@code null}.
+         */
+        private boolean accepts(HttpMock.Method method) {
+            EnumMap<HttpMock.Method, HttpHandler> handlers = this.handlers;
+            return handlers != null && (method == null || handlers.containsKey(method));
+        }
+
+        private void putHandler(HttpMock.Method method, String pattern, HttpHandler handler) {
+            EnumMap<HttpMock.Method, HttpHandler> newHandlers = handlers == null
+                    ? new EnumMap<HttpMock.Method, HttpHandler>(HttpMock.Method.class)
+                    : new EnumMap<HttpMock.Method, HttpHandler>(handlers);
+            newHandlers.put(method, handler);
+            this.pattern = pattern;
+            handlers = newHandlers;
+        }
+
+        private Route literalChild(String segment) {
+            Route[] children = literalChildren;
+            int index = Arrays.binarySearch(children, new Route(segment), SegmentComparator.INSTANCE);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertionPoint = -index - 1;
+            Route child = new Route(segment);
+            Route[] newChildren = new Route[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertionPoint);
+            newChildren[insertionPoint] = child;
+            System.arraycopy(children, insertionPoint, newChildren, insertionPoint + 1,
+                    children.length - insertionPoint);
+            literalChildren = newChildren;
+            return child;
+        }
+
+        private Route parameterChild() {
+            if (parameterChild == null) {
+                parameterChild = new Route(SEGMENT_WILDCARD);
+            }
+            return parameterChild;
+        }
+
+        private Route restChild() {
+            if (restChild == null) {
+                restChild = new Route(REST_WILDCARD);
+            }
+            return restChild;
+        }
+
+        private Route findLiteralChild(String path, int start, int end) {
+            Route[] children = literalChildren;
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(children[middle].segment, path, start, end);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+
+        private static int compare(String segment, String path, int start, int end) {
+            int length = Math.min(segment.length(), end - start);
+            for (int i = 0; i < length; i++) {
+                int difference = segment.charAt(i) - path.charAt(start + i);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return segment.length() - (end - start);
+        }
+
+        private void collect(List<Route> routes) {
+            if (handlers != null) {
+                routes.add(this);
+            }
+            for (Route child : literalChildren) {
+                child.collect(routes);
+            }
+            if (parameterChild != null) {
+                parameterChild.collect(routes);
+            }
+            if (restChild != null) {
+                restChild.collect(routes);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "'" + pattern + "' " + (handlers == null ? "{}" : handlers.keySet());
+        }
+    }
+
+    private enum SegmentComparator implements Comparator<Route> {
+        INSTANCE;
+
+        public int compare(Route route1, Route route2) {
+            return route1.segment.compareTo(route2.segment);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A snapshot of the metrics of a mock server.
+ * <p/>
+ * The metrics are always recorded. Their overhead is a few reads of the clock and atomic increments per request, so
+ * they can stay on during throughput measurements.
+ *
+ * @author Alexander Kiel
+ * @see HttpMockServer#getMetrics()
+ */
+public final class ServerMetrics {
+
+    private final HistogramSnapshot queueWait;
+    private final List<RouteMetrics> routes;
+    private final int inFlight;
+    private final ShutdownMetrics lastShutdown;
+
+    ServerMetrics(HistogramSnapshot queueWait, List<RouteMetrics> routes, int inFlight, ShutdownMetrics lastShutdown) {
+        this.queueWait = queueWait;
+        this.routes = unmodifiableList(routes);
+        this.inFlight = inFlight;
+        this.lastShutdown = lastShutdown;
+    }
+
+    /**
+     * Returns how long all requests, including the ones without a mocking, waited for a thread.
+     */
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns the number of exchanges which were queued or running or waited for a delayed response.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the metrics of the last stop of the server.
+     *
+     * @return the shutdown metrics or {@code null} if the server wasn't stopped yet.
+     */
+    public ShutdownMetrics getLastShutdown() {
+        return lastShutdown;
+    }
+
+    /**
+     * Returns the metrics of all mockings in the order in which they were registered.
+     *
+     * @return an unmodifiable list of the route metrics.
+     */
+    public List<RouteMetrics> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Returns the metrics of the mocking with the given method and path.
+     *
+     * @param method the method of the mocking
+     * @param path   the path of the mocking as it was given
+     * @return the metrics or {@code null} if there is no such mocking.
+     */
+    public RouteMetrics getRoute(HttpMock.Method method, String path) {
+        for (RouteMetrics route : routes) {
+            if (route.getMethod() == method && route.getPath().equals(path)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerMetrics[queueWait = " + queueWait + ", inFlight = " + inFlight + ", lastShutdown = " +
+                lastShutdown + ", routes = " + routes + "]";
+    }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+/**
+ * The metrics of the last stop of a mock server.
+ * <p/>
+ * A stop first drains the server, i.e. waits until the exchanges in flight finished, then closes the socket and
+ * shuts the executor down. Exchanges which didn't finish within the drain timeout are abandoned, and threads of the
+ * executor which don't terminate are leaked.
+ *
+ * @author Alexander Kiel
+ * @see ServerMetrics#getLastShutdown()
+ */
+public final class ShutdownMetrics {
+
+    private final long drainNanos;
+    private final long shutdownNanos;
+    private final int abandonedExchanges;
+    private final boolean executorTerminated;
+
+    ShutdownMetrics(long drainNanos, long shutdownNanos, int abandonedExchanges, boolean executorTerminated) {
+        this.drainNanos = drainNanos;
+        this.shutdownNanos = shutdownNanos;
+        this.abandonedExchanges = abandonedExchanges;
+        this.executorTerminated = executorTerminated;
+    }
+
+    /**
+     * Returns how long the stop waited for the exchanges in flight.
+     */
+    public long getDrainNanos() {
+        return drainNanos;
+    }
+
+    /**
+     * Returns how long the whole stop took, including the drain and the termination of the executor.
+     */
+    public long getShutdownNanos() {
+        return shutdownNanos;
+    }
+
+    /**
+     * Returns the number of exchanges which were still in flight when the drain timeout elapsed.
+     */
+    public int getAbandonedExchanges() {
+        return abandonedExchanges;
+    }
+
+    /**
+     * Returns whether all threads of the executor terminated. If not, the threads leaked.
+     */
+    public boolean isExecutorTerminated() {
+        return executorTerminated;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownMetrics[drain = " + drainNanos + " ns, shutdown = " + shutdownNanos +
+                " ns, abandonedExchanges = " + abandonedExchanges + ", executorTerminated = " + executorTerminated +
+                "]";
+    }
+}
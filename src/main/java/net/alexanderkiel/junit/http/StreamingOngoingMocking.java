@@ -0,0 +1,102 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.String.format;
+import static net.alexanderkiel.junit.http.WritableOngoingMocking.extractContentType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A mocking which compares request bodies with an expected {@link Payload} while they are received.
+ * <p/>
+ * Unlike {@link WritableOngoingMocking} the body is never held in memory, so uploads of any size can be verified.
+ * The first request whose body doesn't match is reported by {@link #verify()}.
+ *
+ * @author Alexander Kiel
+ */
+class StreamingOngoingMocking extends BaseOngoingMocking {
+
+    private final String payloadContentType;
+    private final Payload payload;
+    private final AtomicReference<String> firstMismatch;
+
+    @Nullable
+    private volatile String requestContentType;
+
+    StreamingOngoingMocking(HttpMock.Method method, String path, String payloadContentType, Payload payload) {
+        super(method, path);
+        this.payloadContentType = payloadContentType;
+        this.payload = payload;
+        firstMismatch = new AtomicReference<String>();
+    }
+
+    public void handle(HttpExchange httpExchange) throws IOException {
+        logRequest(httpExchange);
+        long startNanos = startCall();
+        requestContentType = extractContentType(httpExchange);
+        final Payload.Comparison comparison = payload.compare();
+        receive(httpExchange, new BodySink() {
+            public void update(byte[] bytes, int offset, int length) throws IOException {
+                comparison.update(bytes, offset, length);
+            }
+
+            public void finish() throws IOException {
+                String mismatch = comparison.finish();
+                if (mismatch != null) {
+                    firstMismatch.compareAndSet(null, mismatch);
+                }
+            }
+
+            public void close() {
+                comparison.close();
+            }
+        }, startNanos);
+    }
+
+    public void verify() {
+        assertTrue(format("request %s called", describeRequest()), getCallCount() > 0);
+        assertPayload();
+    }
+
+    public void verify(VerificationMode mode) {
+        mode.verify(describeRequest(), getCallCount());
+        if (getCallCount() > 0) {
+            assertPayload();
+        }
+    }
+
+    private void assertPayload() {
+        assertEquals(format("request %s content type", describeRequest()), payloadContentType, requestContentType);
+        String mismatch = firstMismatch.get();
+        if (mismatch != null) {
+            fail(format("request %s payload %s", describeRequest(), mismatch));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingOngoingMocking[" + super.toString() + ", payload = " + payload + "]";
+    }
+}
@@ -17,18 +17,33 @@
 package net.alexanderkiel.junit.http;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
+ * A response with a text body which is encoded in UTF-8.
+ * <p/>
+ * The body is encoded once at construction, so all requests share the same bytes. Compressed bodies are computed on
+ * first use and shared as well.
+ *
  * @author Alexander Kiel
  */
-public class StringResponse extends BaseResponse {
+public class StringResponse extends BaseResponse implements ByteArrayResponse, EncodableResponse {
 
     private final String contentType;
     private final String body;
+    private final byte[] bodyBytes;
+    private final EncodedBodyCache encodedBodies;
 
     public StringResponse(int statusCode, String contentType, String body) {
-        super(statusCode);
+        this(statusCode, Collections.<String, List<String>>emptyMap(), contentType, body);
+    }
+
+    public StringResponse(int statusCode, Map<String, List<String>> headers, String contentType, String body) {
+        super(statusCode, headers);
         if (contentType == null) {
             throw new NullPointerException("Can't resolve the argument 'contentType'.");
         }
@@ -37,6 +52,8 @@ public class StringResponse extends BaseResponse {
         }
         this.contentType = contentType;
         this.body = body;
+        bodyBytes = body.getBytes(UTF_8);
+        encodedBodies = new EncodedBodyCache();
     }
 
     public String getContentType() {
@@ -48,11 +65,23 @@ public class StringResponse extends BaseResponse {
     }
 
     public long getBodyLength() {
-        return body.length();
+        return bodyBytes.length;
     }
 
     public InputStream getBodyInputStream() {
-        return new ByteArrayInputStream(body.getBytes(UTF_8));
+        return new ByteArrayInputStream(bodyBytes);
+    }
+
+    public byte[] getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public byte[] getEncodedBody(ContentEncoding encoding) throws IOException {
+        return encodedBodies.get(encoding, this).getBodyBytes();
+    }
+
+    public Response getEncodedResponse(ContentEncoding encoding) throws IOException {
+        return encodedBodies.get(encoding, this);
     }
 
     @Override
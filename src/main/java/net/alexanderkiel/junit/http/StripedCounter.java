@@ -0,0 +1,83 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which is incremented by many threads concurrently without contention.
+ * <p/>
+ * Each thread increments one of several cells which are spread over distinct cache lines. Reading the counter sums
+ * up all cells.
+ *
+ * @author Alexander Kiel
+ */
+class StripedCounter {
+
+    /**
+     * The distance between two cells in longs, so that every cell lives in its own cache line.
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells;
+
+    StripedCounter() {
+        cells = new AtomicLongArray(STRIPES * PADDING);
+    }
+
+    private static int stripeCount(int processors) {
+        int count = 1;
+        while (count < 2 * processors && count < 64) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    void increment() {
+        cells.incrementAndGet(cellIndex());
+    }
+
+    void add(long delta) {
+        cells.addAndGet(cellIndex(), delta);
+    }
+
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,311 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reads stub definitions from a JSON file.
+ * <p/>
+ * The file holds an array of stubs or an object with such an array under {@code stubs}. Each stub is an object with
+ * these members:
+ * <pre>
+ * method         the HTTP method, e.g. "GET"
+ * path           the path template relative to the context path, e.g. "users/{id}"
+ * status         the status code, 200 by default
+ * headers        an object of response headers whose values are strings or arrays of strings
+ * contentType    the content type of the body, "text/plain" for inline and "application/octet-stream" for file
+ *                bodies by default
+ * body           an inline body which is sent in UTF-8
+ * bodyFile       the path of a file with the body, relative to the stub file
+ * latencyMillis  a fixed latency of the response
+ * request        an object of request matchers which select between stubs of the same method and path:
+ *                headers, headerPatterns, query, queryPatterns, json and jsonPatterns are objects from header
+ *                names, query parameter names or JSON paths to values or regular expressions, bodySha256 is the
+ *                hex encoded SHA-256 digest of the body
+ * </pre>
+ * Body files are checked to exist while the stub file is read but only mapped into memory on the first request.
+ *
+ * @author Alexander Kiel
+ */
+class StubFile {
+
+    private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+    private static final String DEFAULT_FILE_CONTENT_TYPE = "application/octet-stream";
+
+    private StubFile() {
+    }
+
+    /**
+     * Reads all stubs of the given file.
+     *
+     * @throws IOException if the file can't be read or is invalid
+     */
+    static List<Stub> read(File file) throws IOException {
+        Object json = new JsonParser(file.toString(), new String(readFully(file), BaseResponse.UTF_8)).parse();
+        if (json instanceof Map) {
+            json = ((Map<?, ?>) json).get("stubs");
+        }
+        if (!(json instanceof List)) {
+            throw new IOException(format("The stub file %s has to contain an array of stubs.", file));
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        List<Stub> stubs = new ArrayList<Stub>();
+        List<?> definitions = (List<?>) json;
+        for (int i = 0; i < definitions.size(); i++) {
+            if (!(definitions.get(i) instanceof Map)) {
+                throw new IOException(format("The stub %d of %s has to be an object.", i, file));
+            }
+            stubs.add(stub((Map<?, ?>) definitions.get(i), directory, format("stub %d of %s", i, file)));
+        }
+        return stubs;
+    }
+
+    private static Stub stub(Map<?, ?> definition, File directory, String name) throws IOException {
+        String methodName = string(definition, "method", name, true);
+        HttpMock.Method method;
+        try {
+            method = HttpMock.Method.valueOf(methodName);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(format("The method %s of the %s is unknown.", methodName, name));
+        }
+        String path = string(definition, "path", name, true);
+        int status = (int) number(definition, "status", name, 200);
+        Map<String, List<String>> headers = headers(definition.get("headers"), name);
+        String contentType = string(definition, "contentType", name, false);
+        String body = string(definition, "body", name, false);
+        String bodyFile = string(definition, "bodyFile", name, false);
+
+        Response response;
+        if (body != null && bodyFile != null) {
+            throw new IOException(format("The %s can't have both a body and a bodyFile.", name));
+        } else if (body != null) {
+            response = new StringResponse(status, headers, contentType == null ? DEFAULT_CONTENT_TYPE : contentType,
+                    body);
+        } else if (bodyFile != null) {
+            File file = new File(bodyFile);
+            if (!file.isAbsolute()) {
+                file = new File(directory, bodyFile);
+            }
+            if (!file.isFile()) {
+                throw new IOException(format("The body file %s of the %s doesn't exist.", file, name));
+            }
+            response = new FileResponse(status, headers, contentType == null ? DEFAULT_FILE_CONTENT_TYPE :
+                    contentType, file);
+        } else {
+            response = new EmptyResponse(status, headers);
+        }
+
+        long latencyMillis = number(definition, "latencyMillis", name, -1);
+        return new Stub(method, path, matchers(definition.get("request"), name), response, latencyMillis < 0 ? null :
+                Latency.fixed(latencyMillis, MILLISECONDS));
+    }
+
+    private static List<RequestMatcher> matchers(Object value, String name) throws IOException {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (!(value instanceof Map)) {
+            throw new IOException(format("The request of the %s has to be an object.", name));
+        }
+        Map<?, ?> request = (Map<?, ?>) value;
+        List<RequestMatcher> matchers = new ArrayList<RequestMatcher>();
+        try {
+            for (Map.Entry<String, String> entry : strings(request, "headers", name).entrySet()) {
+                matchers.add(RequestMatcher.header(entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : strings(request, "headerPatterns", name).entrySet()) {
+                matchers.add(RequestMatcher.headerMatches(entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : strings(request, "query", name).entrySet()) {
+                matchers.add(RequestMatcher.query(entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : strings(request, "queryPatterns", name).entrySet()) {
+                matchers.add(RequestMatcher.queryMatches(entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : strings(request, "json", name).entrySet()) {
+                matchers.add(RequestMatcher.jsonPath(entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : strings(request, "jsonPatterns", name).entrySet()) {
+                matchers.add(RequestMatcher.jsonPathMatches(entry.getKey(), entry.getValue()));
+            }
+            String bodySha256 = string(request, "bodySha256", "request of the " + name, false);
+            if (bodySha256 != null) {
+                matchers.add(RequestMatcher.bodySha256(bodySha256));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(format("The request of the %s is invalid: %s", name, e.getMessage()), e);
+        }
+        return matchers;
+    }
+
+    /**
+     * Returns the member of the given object which is an object of strings.
+     */
+    private static Map<String, String> strings(Map<?, ?> definition, String member, String name)
+            throws IOException {
+        Object value = definition.get(member);
+        if (value == null) {
+            return Collections.emptyMap();
+        }
+        if (!(value instanceof Map)) {
+            throw new IOException(format("The %s of the request of the %s have to be an object.", member, name));
+        }
+        Map<String, String> strings = new LinkedHashMap<String, String>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            if (!(entry.getValue() instanceof String)) {
+                throw new IOException(format("The %s %s of the request of the %s has to be a string.", member,
+                        entry.getKey(), name));
+            }
+            strings.put((String) entry.getKey(), (String) entry.getValue());
+        }
+        return strings;
+    }
+
+    private static String string(Map<?, ?> definition, String member, String name, boolean required)
+            throws IOException {
+        Object value = definition.get(member);
+        if (value == null) {
+            if (required) {
+                throw new IOException(format("The %s has no %s.", name, member));
+            }
+            return null;
+        }
+        if (!(value instanceof String)) {
+            throw new IOException(format("The %s of the %s has to be a string.", member, name));
+        }
+        return (String) value;
+    }
+
+    private static long number(Map<?, ?> definition, String member, String name, long defaultValue)
+            throws IOException {
+        Object value = definition.get(member);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Long)) {
+            throw new IOException(format("The %s of the %s has to be an integer.", member, name));
+        }
+        return (Long) value;
+    }
+
+    private static Map<String, List<String>> headers(Object value, String name) throws IOException {
+        if (value == null) {
+            return Collections.emptyMap();
+        }
+        if (!(value instanceof Map)) {
+            throw new IOException(format("The headers of the %s have to be an object.", name));
+        }
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (Map.Entry<?, ?> header : ((Map<?, ?>) value).entrySet()) {
+            List<String> values = new ArrayList<String>();
+            if (header.getValue() instanceof String) {
+                values.add((String) header.getValue());
+            } else if (header.getValue() instanceof List) {
+                for (Object element : (List<?>) header.getValue()) {
+                    if (!(element instanceof String)) {
+                        throw new IOException(format("The values of the header %s of the %s have to be strings.",
+                                header.getKey(), name));
+                    }
+                    values.add((String) element);
+                }
+            } else {
+                throw new IOException(format("The header %s of the %s has to be a string or an array of strings.",
+                        header.getKey(), name));
+            }
+            headers.put((String) header.getKey(), values);
+        }
+        return headers;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int length;
+            while (offset < bytes.length && (length = in.read(bytes, offset, bytes.length - offset)) >= 0) {
+                offset += length;
+            }
+            return offset == bytes.length ? bytes : Arrays.copyOf(bytes, offset);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * One stub definition.
+     */
+    static class Stub {
+
+        private final HttpMock.Method method;
+        private final String path;
+        private final List<RequestMatcher> matchers;
+        private final Response response;
+        private final Latency latency;
+
+        Stub(HttpMock.Method method, String path, List<RequestMatcher> matchers, Response response,
+             Latency latency) {
+            this.method = method;
+            this.path = path;
+            this.matchers = matchers;
+            this.response = response;
+            this.latency = latency;
+        }
+
+        HttpMock.Method getMethod() {
+            return method;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        List<RequestMatcher> getMatchers() {
+            return matchers;
+        }
+
+        Response getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the latency of the stub or {@code null} if it has none.
+         */
+        Latency getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "Stub[method = " + method + ", path = '" + path + "', matchers = " + matchers + ", response = " +
+                    response + "]";
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A token bucket which limits the bandwidth of bodies to a number of bytes per second.
+ * <p/>
+ * The bucket is implemented as generic cell rate algorithm: it only stores the time at which the link becomes idle
+ * again. Reserving bytes pushes this time forward and tells the caller how long to wait before it may transfer more,
+ * so callers can schedule their continuation on a timer instead of sleeping. All requests which share one bucket
+ * share its bandwidth.
+ *
+ * @author Alexander Kiel
+ */
+final class Throttle {
+
+    static final int MIN_CHUNK_SIZE = 512;
+    static final int MAX_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The number of chunks per second at which bodies are transferred, which determines how smooth the rate is.
+     */
+    private static final int CHUNKS_PER_SECOND = 20;
+
+    private volatile long bytesPerSecond;
+    private final AtomicLong idleAt;
+
+    Throttle() {
+        idleAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Sets the bandwidth. A bandwidth of 0 means unlimited.
+     *
+     * @param bytesPerSecond the number of bytes per second
+     */
+    void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The bandwidth has to be non-negative but was " + bytesPerSecond + ".");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Returns the number of bytes to transfer at once, so that about 20 chunks are transferred per second.
+     */
+    int chunkSize() {
+        long chunkSize = bytesPerSecond / CHUNKS_PER_SECOND;
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+    }
+
+    /**
+     * Reserves the bandwidth for the given number of bytes which were just transferred.
+     *
+     * @return the number of nanoseconds to wait before transferring more bytes.
+     */
+    long reserve(long bytes) {
+        long bytesPerSecond = this.bytesPerSecond;
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return 0;
+        }
+        long duration = (long) ((double) bytes * SECONDS.toNanos(1) / bytesPerSecond);
+        long now = System.nanoTime();
+        while (true) {
+            long current = idleAt.get();
+            long next = (current - now > 0 ? current : now) + duration;
+            if (idleAt.compareAndSet(current, next)) {
+                return next - now;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return bytesPerSecond > 0 ? bytesPerSecond + " bytes/s" : "unlimited";
+    }
+}
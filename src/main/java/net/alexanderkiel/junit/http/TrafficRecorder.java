@@ -0,0 +1,239 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Forwards requests to a target server and appends each exchange to a {@link TrafficStore traffic store}.
+ *
+ * @author Alexander Kiel
+ */
+class TrafficRecorder implements HttpHandler, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TrafficRecorder.class.getName());
+    private static final int BAD_GATEWAY = 502;
+
+    /**
+     * Headers which only concern one connection and are therefore neither forwarded nor recorded.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList("connection",
+            "keep-alive", "proxy-connection", "transfer-encoding", "te", "trailer", "upgrade", "host",
+            "content-length"));
+
+    private final String target;
+    private final File file;
+    private final FileChannel channel;
+
+    /**
+     * Opens the store for appending and writes the file header if the store is empty.
+     *
+     * @param target the base URI of the target server, e.g. {@code http://localhost:8080}
+     * @param file   the traffic store
+     */
+    TrafficRecorder(URI target, File file) throws IOException {
+        if (target == null) {
+            throw new NullPointerException("Can't resolve the argument 'target'.");
+        }
+        if (file == null) {
+            throw new NullPointerException("Can't resolve the argument 'file'.");
+        }
+        String targetString = target.toString();
+        this.target = targetString.endsWith("/") ? targetString.substring(0, targetString.length() - 1) :
+                targetString;
+        this.file = file;
+        channel = new FileOutputStream(file, true).getChannel();
+        synchronized (this) {
+            if (channel.size() == 0) {
+                write(ByteBuffer.wrap(TrafficStore.fileHeader()));
+            }
+        }
+    }
+
+    public void handle(HttpExchange httpExchange) throws IOException {
+        String method = httpExchange.getRequestMethod();
+        String requestTarget = requestTarget(httpExchange.getRequestURI());
+        MessageDigest digest = JournalFilter.DigestingInputStream.newSha256();
+        byte[] requestBody = readFully(httpExchange.getRequestBody(), digest);
+
+        HttpURLConnection connection;
+        int status;
+        ByteBuffer responseBody;
+        try {
+            connection = (HttpURLConnection) new URL(target + requestTarget).openConnection();
+            connection.setRequestMethod(method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, List<String>> header : httpExchange.getRequestHeaders().entrySet()) {
+                if (!HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                    for (String value : header.getValue()) {
+                        connection.addRequestProperty(header.getKey(), value);
+                    }
+                }
+            }
+            if (requestBody.length > 0) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(requestBody.length);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(requestBody);
+                } finally {
+                    out.close();
+                }
+            }
+            status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            responseBody = in == null ? ByteBuffer.allocate(0) : readBody(in);
+        } catch (IOException e) {
+            LOGGER.log(SEVERE, format("Can't forward %s %s to %s.", method, requestTarget, target), e);
+            httpExchange.sendResponseHeaders(BAD_GATEWAY, -1);
+            httpExchange.close();
+            return;
+        }
+
+        Map<String, List<String>> responseHeaders = responseHeaders(connection);
+        int bodyLength = responseBody.remaining();
+        append(TrafficStore.encodeHead(method, requestTarget, digest.digest(), status, responseHeaders, bodyLength),
+                responseBody.duplicate());
+
+        Headers headers = httpExchange.getResponseHeaders();
+        headers.putAll(responseHeaders);
+        httpExchange.sendResponseHeaders(status, bodyLength == 0 ? -1 : bodyLength);
+        OutputStream out = httpExchange.getResponseBody();
+        out.write(responseBody.array(), responseBody.arrayOffset() + responseBody.position(), bodyLength);
+        out.close();
+        httpExchange.close();
+    }
+
+    /**
+     * Returns the raw path and query of the given request URI.
+     */
+    static String requestTarget(URI requestUri) {
+        String path = requestUri.getRawPath();
+        String query = requestUri.getRawQuery();
+        return (path == null ? "" : path) + (query == null ? "" : "?" + query);
+    }
+
+    /**
+     * Reads the given stream to its end and closes it.
+     *
+     * @param digest a digest which is updated with all bytes or {@code null}
+     */
+    static byte[] readFully(InputStream in, MessageDigest digest) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(in, out, digest);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the given stream to its end and closes it. Other than {@link #readFully(InputStream, MessageDigest)} the
+     * bytes aren't copied once more, so the array behind the returned buffer may be longer than its content.
+     */
+    private static ByteBuffer readBody(InputStream in) throws IOException {
+        Body body = new Body();
+        copy(in, body, null);
+        return body.toByteBuffer();
+    }
+
+    private static void copy(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+        byte[] buffer = BufferPool.DEFAULT.acquire(0);
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+                if (digest != null) {
+                    digest.update(buffer, 0, length);
+                }
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            in.close();
+        }
+    }
+
+    private static Map<String, List<String>> responseHeaders(HttpURLConnection connection) {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // The status line is returned under the null key.
+            if (header.getKey() != null && !HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Appends a record, given as its head and its body, as a whole.
+     */
+    private synchronized void append(ByteBuffer head, ByteBuffer body) throws IOException {
+        ByteBuffer[] record = {head, body};
+        while (head.hasRemaining() || body.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Gives access to the collected bytes without copying them.
+     */
+    private static final class Body extends ByteArrayOutputStream {
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficRecorder[target = " + target + ", file = " + file + "]";
+    }
+}
@@ -0,0 +1,212 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Answers requests with the responses of a {@link TrafficStore traffic store}.
+ * <p/>
+ * Requests are matched by method, path, query and the SHA-256 digest of their body. If the same request was recorded
+ * several times, the recorded responses are replayed in order and the last one is repeated. Response bodies are
+ * sent directly from the mapping of the store.
+ *
+ * @author Alexander Kiel
+ */
+class TrafficReplayer implements HttpHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(TrafficReplayer.class.getName());
+    private static final int NOT_FOUND = 404;
+
+    private final TrafficStore.Index index;
+    private final AtomicIntegerArray cursors;
+
+    TrafficReplayer(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("Can't resolve the argument 'file'.");
+        }
+        index = TrafficStore.load(file);
+        cursors = new AtomicIntegerArray(index.size());
+    }
+
+    public void handle(HttpExchange httpExchange) throws IOException {
+        String method = httpExchange.getRequestMethod();
+        String requestTarget = TrafficRecorder.requestTarget(httpExchange.getRequestURI());
+        MessageDigest digest = JournalFilter.DigestingInputStream.newSha256();
+        TrafficRecorder.readFully(httpExchange.getRequestBody(), digest);
+
+        int id = index.id(TrafficStore.key(method, requestTarget, digest.digest()));
+        if (id < 0) {
+            LOGGER.severe(format("No recorded response for %s %s.", method, requestTarget));
+            httpExchange.sendResponseHeaders(NOT_FOUND, -1);
+            httpExchange.close();
+            return;
+        }
+        Response response = read(index.offsets(id)[nextRecord(id)]);
+        if ("GET".equals(method)) {
+            response = PartialResponse.select(response, httpExchange.getRequestHeaders().getFirst("Range"),
+                    httpExchange.getRequestHeaders().getFirst("If-Range"));
+        }
+        BaseOngoingMocking.setResponseHeaders(httpExchange.getResponseHeaders(), response);
+        BaseOngoingMocking.sendResponseHeaders(httpExchange, response);
+        BaseOngoingMocking.sendResponseBody(httpExchange.getResponseBody(), response);
+        httpExchange.close();
+    }
+
+    /**
+     * Advances the cursor of the given key unless it points to the last record already.
+     */
+    private int nextRecord(int id) {
+        int last = index.offsets(id).length - 1;
+        int current;
+        do {
+            current = cursors.get(id);
+            if (current >= last) {
+                return last;
+            }
+        } while (!cursors.compareAndSet(id, current, current + 1));
+        return current;
+    }
+
+    private ReplayedResponse read(long offset) throws IOException {
+        TrafficStore.Reader reader = new TrafficStore.Reader(index.getMappedFile(), offset);
+        reader.skip(4);
+        reader.readString();
+        reader.readString();
+        reader.skip(TrafficStore.DIGEST_LENGTH);
+        int status = reader.readInt();
+        int headerCount = reader.readInt();
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < headerCount; i++) {
+            String name = reader.readString();
+            String value = reader.readString();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        long bodyLength = reader.readLong();
+        return new ReplayedResponse(status, headers, index.getMappedFile(), reader.getPosition(), bodyLength);
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficReplayer[index = " + index + "]";
+    }
+
+    /**
+     * A recorded response whose body is a range of the mapped store.
+     */
+    private static class ReplayedResponse extends BaseResponse implements ByteBufferResponse {
+
+        private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+        private final MappedFile mappedFile;
+        private final long bodyOffset;
+        private final long bodyLength;
+        private final String contentType;
+
+        private ReplayedResponse(int status, Map<String, List<String>> headers, MappedFile mappedFile,
+                                 long bodyOffset, long bodyLength) {
+            super(status, headers);
+            this.mappedFile = mappedFile;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+            String contentType = DEFAULT_CONTENT_TYPE;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Content-Type") && !header.getValue().isEmpty()) {
+                    contentType = header.getValue().get(0);
+                }
+            }
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public boolean hasBody() {
+            return bodyLength > 0;
+        }
+
+        public long getBodyLength() {
+            return bodyLength;
+        }
+
+        public ByteBuffer getBodyBuffer(long offset, long length) throws IOException {
+            return mappedFile.slice(bodyOffset + offset, length);
+        }
+
+        public InputStream getBodyInputStream() {
+            return new InputStream() {
+
+                private long position;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (position == bodyLength) {
+                        return -1;
+                    }
+                    if (length == 0) {
+                        return 0;
+                    }
+                    ByteBuffer slice = getBodyBuffer(position, Math.min(length, bodyLength - position));
+                    int count = slice.remaining();
+                    slice.get(bytes, offset, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public long skip(long n) {
+                    long count = Math.max(0, Math.min(n, bodyLength - position));
+                    position += count;
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "ReplayedResponse[" + super.toString() + ", contentType = '" + contentType + "', bodyLength = " +
+                    bodyLength + "]";
+        }
+    }
+}
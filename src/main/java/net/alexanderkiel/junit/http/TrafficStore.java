@@ -0,0 +1,329 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * The binary format of recorded traffic.
+ * <p/>
+ * A store starts with the magic number {@code HMTS} and the format version, both 4 bytes. Records follow, which are
+ * only ever appended. Each record starts with its length in 4 bytes, followed by:
+ * <pre>
+ * string method
+ * string target        raw path and query of the request
+ * byte[32] digest      SHA-256 of the request body
+ * int status
+ * int headerCount
+ * (string name, string value) * headerCount
+ * long bodyLength
+ * byte[bodyLength] body
+ * </pre>
+ * Strings are their UTF-8 length in 4 bytes followed by the bytes; all numbers are big-endian. A record which was cut
+ * off at the end of the file, e.g. because recording was interrupted, is ignored.
+ *
+ * @author Alexander Kiel
+ */
+final class TrafficStore {
+
+    private static final Logger LOGGER = Logger.getLogger(TrafficStore.class.getName());
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final int MAGIC = 0x484D5453;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    static final int DIGEST_LENGTH = 32;
+
+    /**
+     * The length of a record with empty strings and no headers, not counting the length itself.
+     */
+    static final int MIN_RECORD_LENGTH = 4 + 4 + DIGEST_LENGTH + 4 + 4 + 8;
+
+    /**
+     * The indexes of the stores which were loaded already by their canonical path, so that many servers replaying the
+     * same store share one mapping. The indexes are only weakly referenced, so that the mapping of a store which is
+     * no longer replayed or which was replaced because its store changed can be released.
+     */
+    private static final ConcurrentMap<String, IndexReference> INDEXES =
+            new ConcurrentHashMap<String, IndexReference>();
+
+    private static final ReferenceQueue<Index> RELEASED_INDEXES = new ReferenceQueue<Index>();
+
+    private TrafficStore() {
+    }
+
+    /**
+     * Returns the key of an exchange.
+     */
+    static String key(String method, String target, byte[] digest) {
+        return method + ' ' + target + ' ' + encodeHexString(digest);
+    }
+
+    static byte[] fileHeader() {
+        return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    /**
+     * Encodes one exchange as record without its body, which follows the returned bytes in the store. The body isn't
+     * copied, so that it is held in memory only once while it is recorded.
+     *
+     * @param bodyLength the length of the body which has to be written right after the returned bytes
+     */
+    static ByteBuffer encodeHead(String method, String target, byte[] digest, int status,
+                                 Map<String, List<String>> headers, int bodyLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        writeString(out, method);
+        writeString(out, target);
+        out.write(digest);
+        out.writeInt(status);
+        int headerCount = 0;
+        for (List<String> values : headers.values()) {
+            headerCount += values.size();
+        }
+        out.writeInt(headerCount);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                writeString(out, header.getKey());
+                writeString(out, value);
+            }
+        }
+        out.writeLong(bodyLength);
+        out.close();
+        ByteBuffer head = ByteBuffer.wrap(bytes.toByteArray());
+        long recordLength = head.capacity() - 4L + bodyLength;
+        if (recordLength > Integer.MAX_VALUE) {
+            throw new IOException(format("The record of %s %s with a body of %d bytes is too long.", method, target,
+                    bodyLength));
+        }
+        head.putInt(0, (int) recordLength);
+        return head;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Returns the index of the given store. The store is mapped but only the keys of its records are read; bodies are
+     * read when they are replayed.
+     */
+    static Index load(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException(format("The traffic store %s doesn't exist.", file));
+        }
+        String path = file.getCanonicalPath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        removeReleasedIndexes();
+        IndexReference reference = INDEXES.get(path);
+        Index index = reference == null ? null : reference.get();
+        if (index == null || index.length != length || index.lastModified != lastModified) {
+            index = buildIndex(file, length, lastModified);
+            INDEXES.put(path, new IndexReference(path, index));
+        }
+        return index;
+    }
+
+    private static void removeReleasedIndexes() {
+        Reference<? extends Index> reference;
+        while ((reference = RELEASED_INDEXES.poll()) != null) {
+            INDEXES.remove(((IndexReference) reference).path, reference);
+        }
+    }
+
+    private static Index buildIndex(File file, long length, long lastModified) throws IOException {
+        MappedFile mappedFile = new MappedFile(file, length);
+        if (mappedFile.getLength() < HEADER_LENGTH) {
+            throw new IOException(format("The traffic store %s is too short.", file));
+        }
+        Reader reader = new Reader(mappedFile, 0);
+        if (reader.readInt() != MAGIC || reader.readInt() != VERSION) {
+            throw new IOException(format("The file %s isn't a traffic store of version %d.", file, VERSION));
+        }
+        Map<String, List<Long>> offsets = new HashMap<String, List<Long>>();
+        long position = HEADER_LENGTH;
+        while (position + 4 <= mappedFile.getLength()) {
+            reader = new Reader(mappedFile, position);
+            int recordLength = reader.readInt();
+            if (recordLength < MIN_RECORD_LENGTH) {
+                throw new IOException(format("Invalid record length %d at offset %d of the traffic store %s.",
+                        recordLength, position, file));
+            }
+            long next = position + 4 + recordLength;
+            if (next > mappedFile.getLength()) {
+                LOGGER.warning(format("Ignore the incomplete record at offset %d of the traffic store %s.", position,
+                        file));
+                break;
+            }
+            String key = key(reader.readString(), reader.readString(), reader.readBytes(DIGEST_LENGTH));
+            List<Long> keyOffsets = offsets.get(key);
+            if (keyOffsets == null) {
+                keyOffsets = new ArrayList<Long>(1);
+                offsets.put(key, keyOffsets);
+            }
+            keyOffsets.add(position);
+            position = next;
+        }
+        return new Index(mappedFile, lastModified, offsets);
+    }
+
+    private static final class IndexReference extends WeakReference<Index> {
+
+        private final String path;
+
+        private IndexReference(String path, Index index) {
+            super(index, RELEASED_INDEXES);
+            this.path = path;
+        }
+    }
+
+    /**
+     * The offsets of all records of a store by their key. Records with the same key are kept in the order in which
+     * they were recorded.
+     */
+    static final class Index {
+
+        private final MappedFile mappedFile;
+        private final long length;
+        private final long lastModified;
+        private final Map<String, Integer> ids;
+        private final long[][] offsets;
+
+        private Index(MappedFile mappedFile, long lastModified, Map<String, List<Long>> offsets) {
+            this.mappedFile = mappedFile;
+            length = mappedFile.getLength();
+            this.lastModified = lastModified;
+            ids = new HashMap<String, Integer>(offsets.size() * 2);
+            this.offsets = new long[offsets.size()][];
+            int id = 0;
+            for (Map.Entry<String, List<Long>> entry : offsets.entrySet()) {
+                ids.put(entry.getKey(), id);
+                long[] keyOffsets = new long[entry.getValue().size()];
+                for (int i = 0; i < keyOffsets.length; i++) {
+                    keyOffsets[i] = entry.getValue().get(i);
+                }
+                this.offsets[id++] = keyOffsets;
+            }
+        }
+
+        MappedFile getMappedFile() {
+            return mappedFile;
+        }
+
+        /**
+         * Returns the number of distinct keys.
+         */
+        int size() {
+            return offsets.length;
+        }
+
+        /**
+         * Returns the id of the given key, which is between 0 and {@link #size()} exclusive.
+         *
+         * @return the id or -1 if no exchange with this key was recorded.
+         */
+        int id(String key) {
+            Integer id = ids.get(key);
+            return id == null ? -1 : id;
+        }
+
+        /**
+         * Returns the offsets of all records with the key of the given id.
+         */
+        long[] offsets(int id) {
+            return offsets[id];
+        }
+
+        @Override
+        public String toString() {
+            return "Index[mappedFile = " + mappedFile + ", size = " + offsets.length + "]";
+        }
+    }
+
+    /**
+     * Reads consecutive values from a mapped store, also across the boundaries of its segments.
+     */
+    static final class Reader {
+
+        private final MappedFile mappedFile;
+        private long position;
+
+        Reader(MappedFile mappedFile, long position) {
+            this.mappedFile = mappedFile;
+            this.position = position;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        int readInt() throws IOException {
+            return ByteBuffer.wrap(readBytes(4)).getInt();
+        }
+
+        long readLong() throws IOException {
+            return ByteBuffer.wrap(readBytes(8)).getLong();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || position + length > mappedFile.getLength()) {
+                throw new IOException(format("Invalid string length %d at offset %d of the traffic store %s.",
+                        length, position - 4, mappedFile));
+            }
+            return new String(readBytes(length), UTF_8);
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                ByteBuffer slice = mappedFile.slice(position, length - offset);
+                int count = slice.remaining();
+                slice.get(bytes, offset, count);
+                offset += count;
+                position += count;
+            }
+            return bytes;
+        }
+
+        void skip(long length) {
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import static java.lang.String.format;
+import static org.junit.Assert.fail;
+
+/**
+ * Specifies how often a mocked request has to be called.
+ * <p/>
+ * Use it with {@link OngoingMocking#verify(VerificationMode)}:<pre>{@code
+ * mocking.verify(times(3));}</pre>
+ *
+ * @author Alexander Kiel
+ */
+public final class VerificationMode {
+
+    private final long min;
+    private final long max;
+    private final String description;
+
+    private VerificationMode(long min, long max, String description) {
+        this.min = min;
+        this.max = max;
+        this.description = description;
+    }
+
+    public static VerificationMode times(long count) {
+        checkNotNegative(count);
+        return new VerificationMode(count, count, format("exactly %d times", count));
+    }
+
+    public static VerificationMode never() {
+        return times(0);
+    }
+
+    public static VerificationMode atLeastOnce() {
+        return atLeast(1);
+    }
+
+    public static VerificationMode atLeast(long count) {
+        checkNotNegative(count);
+        return new VerificationMode(count, Long.MAX_VALUE, format("at least %d times", count));
+    }
+
+    public static VerificationMode atMost(long count) {
+        checkNotNegative(count);
+        return new VerificationMode(0, count, format("at most %d times", count));
+    }
+
+    private static void checkNotNegative(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count has to be non-negative but was " + count + ".");
+        }
+    }
+
+    boolean isSatisfiedBy(long callCount) {
+        return min <= callCount && callCount <= max;
+    }
+
+    /**
+     * Returns the number of calls needed at least, so that this mode can be satisfied.
+     */
+    long getMinimum() {
+        return min;
+    }
+
+    void verify(String request, long callCount) {
+        if (!isSatisfiedBy(callCount)) {
+            fail(format("request %s called %s but was called %d times", request, description, callCount));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -19,10 +19,7 @@ package net.alexanderkiel.junit.http;
 import com.sun.net.httpserver.HttpExchange;
 
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.regex.Pattern;
@@ -39,45 +36,26 @@ class WritableOngoingMocking extends BaseOngoingMocking {
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final Pattern SEMICOLON_SPLIT_PATTERN = Pattern.compile(";");
 
-    private final HttpMock.Method method;
-    private final String path;
     private final String payloadContentType;
     private final String payload;
-    private final char[] charBuffer;
-    private boolean called;
-    private URI requestUri;
+    private volatile URI requestUri;
 
     @Nullable
-    private String requestContentType;
-    private String requestBody;
+    private volatile String requestContentType;
+    private volatile String requestBody;
 
     WritableOngoingMocking(HttpMock.Method method, String path, String payloadContentType, String payload) {
-        this.method = method;
-        this.path = path;
+        super(method, path);
         this.payloadContentType = payloadContentType;
         this.payload = payload;
-        charBuffer = new char[BUFFER_SIZE];
     }
 
     public void handle(HttpExchange httpExchange) throws IOException {
         logRequest(httpExchange);
-        setCalled();
-        verifyPayload(httpExchange);
-        checkAuthorisation(httpExchange);
-        setResponseHeaders(httpExchange.getResponseHeaders());
-        sendResponseHeaders(httpExchange);
-        sendResponseBody(httpExchange.getResponseBody());
-        httpExchange.close();
-    }
-
-    private void setCalled() {
-        called = true;
-    }
-
-    private void verifyPayload(HttpExchange httpExchange) throws IOException {
+        long startNanos = startCall();
         requestUri = httpExchange.getRequestURI();
         requestContentType = extractContentType(httpExchange);
-        requestBody = readBody(httpExchange.getRequestBody());
+        receive(httpExchange, new BodyCollector(contentLength(httpExchange)), startNanos);
     }
 
     @Nullable
@@ -91,25 +69,56 @@ class WritableOngoingMocking extends BaseOngoingMocking {
         }
     }
 
-    private String readBody(InputStream requestBodyInputStream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(requestBodyInputStream, UTF_8));
-        try {
-            StringBuilder buffer = new StringBuilder();
-            int length = 0;
-            do {
-                buffer.append(charBuffer, 0, length);
-                length = reader.read(charBuffer);
-            } while (length >= 0);
-            return buffer.toString();
-        } finally {
-            reader.close();
+    /**
+     * Collects the whole body in a pooled buffer and decodes it at once, so multibyte characters can't be split.
+     */
+    private class BodyCollector implements BodySink {
+
+        private byte[] buffer;
+        private int size;
+
+        private BodyCollector(long contentLength) {
+            buffer = BufferPool.DEFAULT.acquire(contentLength);
+        }
+
+        public void update(byte[] bytes, int offset, int length) {
+            if (size + length > buffer.length) {
+                byte[] larger = new byte[Math.max(buffer.length * 2, size + length)];
+                System.arraycopy(buffer, 0, larger, 0, size);
+                BufferPool.DEFAULT.release(buffer);
+                buffer = larger;
+            }
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        public void finish() {
+            requestBody = new String(buffer, 0, size, UTF_8);
+        }
+
+        public void close() {
+            if (buffer != null) {
+                BufferPool.DEFAULT.release(buffer);
+                buffer = null;
+            }
         }
     }
 
     public void verify() {
-        assertTrue(format("request %s %s called", method, path), called);
-        assertEquals(format("request %s %s content type", method, path), payloadContentType, requestContentType);
-        assertEquals(format("request %s %s payload", method, path), payload, requestBody);
+        assertTrue(format("request %s called", describeRequest()), getCallCount() > 0);
+        assertPayload();
+    }
+
+    public void verify(VerificationMode mode) {
+        mode.verify(describeRequest(), getCallCount());
+        if (getCallCount() > 0) {
+            assertPayload();
+        }
+    }
+
+    private void assertPayload() {
+        assertEquals(format("request %s content type", describeRequest()), payloadContentType, requestContentType);
+        assertEquals(format("request %s payload", describeRequest()), payload, requestBody);
     }
 
     @Override
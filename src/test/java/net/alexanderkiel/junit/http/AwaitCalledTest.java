@@ -0,0 +1,155 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.VerificationMode.times;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class AwaitCalledTest {
+
+    private HttpMockServer server;
+    private ExecutorService client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+        client = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.shutdown();
+        client.awaitTermination(30, SECONDS);
+        server.stop();
+    }
+
+    @Test
+    public void testAwaitAsynchronousCalls() throws Exception {
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new EmptyResponse(204));
+        for (int i = 0; i < 3; i++) {
+            requestLater("GET", "/bar", null, 50);
+        }
+
+        mocking.awaitCalled(3, 30, SECONDS);
+
+        mocking.verify(times(3));
+    }
+
+    @Test
+    public void testReturnsRightAwayIfCalledAlready() throws Exception {
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new EmptyResponse(204));
+        request("GET", "/bar", null);
+
+        long start = System.nanoTime();
+        mocking.awaitCalled(1, 30, SECONDS);
+
+        assertTrue("returned right away", System.nanoTime() - start < SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new EmptyResponse(204));
+        request("GET", "/bar", null);
+
+        try {
+            mocking.awaitCalled(2, 50, MILLISECONDS);
+        } catch (AssertionError e) {
+            assertEquals("message", "request GET bar called at least 2 times within the timeout but was called 1 " +
+                    "times", e.getMessage());
+            return;
+        }
+        throw new AssertionError("no timeout");
+    }
+
+    @Test
+    public void testPayloadIsReceivedAfterAwait() throws Exception {
+        OngoingMocking mocking = server.given(POST, "bar", "text/plain", "payload").willRespond(new EmptyResponse(204));
+        requestLater("POST", "/bar", "payload", 50);
+
+        mocking.awaitCalled(1, 30, SECONDS);
+
+        mocking.verify();
+    }
+
+    @Test
+    public void testAwaitAll() throws Exception {
+        server.given(GET, "bar").willRespond(new EmptyResponse(204));
+        server.given(POST, "baz", "text/plain", "payload").willRespond(new EmptyResponse(204));
+        requestLater("GET", "/bar", null, 20);
+        requestLater("POST", "/baz", "payload", 50);
+
+        server.awaitAll(30, SECONDS);
+
+        server.verify();
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testAwaitAllTimeout() throws Exception {
+        server.given(GET, "bar").willRespond(new EmptyResponse(204));
+        server.given(GET, "baz").willRespond(new EmptyResponse(204));
+        request("GET", "/bar", null);
+
+        server.awaitAll(50, MILLISECONDS);
+    }
+
+    private void requestLater(final String method, final String path, final String body, final long delayMillis) {
+        client.execute(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(delayMillis);
+                    request(method, path, body);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    private void request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain");
+            OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+        }
+        connection.getResponseCode();
+        connection.disconnect();
+    }
+}
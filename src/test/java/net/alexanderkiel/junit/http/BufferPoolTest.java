@@ -0,0 +1,121 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testBufferSize() throws Exception {
+        assertEquals("unknown length", BufferPool.DEFAULT_SIZE, BufferPool.bufferSize(0));
+        assertEquals("small body", BufferPool.MIN_SIZE, BufferPool.bufferSize(10));
+        assertEquals("exact power of two", 2048, BufferPool.bufferSize(2048));
+        assertEquals("rounded up", 4096, BufferPool.bufferSize(2049));
+        assertEquals("large body", BufferPool.MAX_SIZE, BufferPool.bufferSize(1L << 40));
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        BufferPool pool = new BufferPool(16);
+        byte[] buffer = pool.acquire(100);
+        pool.release(buffer);
+
+        assertSame("reused", buffer, pool.acquire(100));
+    }
+
+    @Test
+    public void testTooSmallBufferIsNotReused() throws Exception {
+        BufferPool pool = new BufferPool(16);
+        byte[] buffer = pool.acquire(100);
+        pool.release(buffer);
+
+        byte[] larger = pool.acquire(10000);
+        assertNotSame("not reused", buffer, larger);
+        assertTrue("large enough", larger.length >= 10000);
+    }
+
+    @Test
+    public void testOversizedBufferIsDropped() throws Exception {
+        BufferPool pool = new BufferPool(16);
+        pool.release(new byte[BufferPool.MAX_SIZE * 2]);
+
+        assertEquals("pooled", 0, pool.pooledCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSlotCountNotPowerOfTwo() throws Exception {
+        new BufferPool(12);
+    }
+
+    /**
+     * Many threads acquire and release buffers concurrently. No buffer may ever be handed out to two threads at the
+     * same time.
+     */
+    @Test
+    public void testExclusiveOwnership() throws Exception {
+        final BufferPool pool = new BufferPool(16);
+        final Map<byte[], Thread> owners = new ConcurrentHashMap<byte[], Thread>();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int j = 0; j < 20000; j++) {
+                            byte[] buffer = pool.acquire(j % 3 == 0 ? 0 : 100);
+                            assertNull("buffer owned by another thread", owners.put(buffer,
+                                    Thread.currentThread()));
+                            buffer[0] = (byte) j;
+                            owners.remove(buffer);
+                            pool.release(buffer);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("buffers pooled", pool.pooledCount() > 0);
+    }
+}
@@ -0,0 +1,213 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static net.alexanderkiel.junit.http.ContentEncoding.DEFLATE;
+import static net.alexanderkiel.junit.http.ContentEncoding.GZIP;
+import static net.alexanderkiel.junit.http.ContentEncoding.negotiate;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Alexander Kiel
+ */
+public class ContentEncodingTest {
+
+    private static final String BODY = "Lorem ipsum dolor sit amet, consectetur adipisici elit. Lorem ipsum dolor sit.";
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testNegotiate() throws Exception {
+        assertNull("no header", negotiate(null));
+        assertNull("identity", negotiate("identity"));
+        assertEquals("gzip", GZIP, negotiate("gzip"));
+        assertEquals("both", GZIP, negotiate("deflate, gzip"));
+        assertEquals("deflate preferred", DEFLATE, negotiate("gzip;q=0.5, deflate"));
+        assertEquals("gzip excluded", DEFLATE, negotiate("gzip;q=0, *"));
+        assertEquals("wildcard", GZIP, negotiate("*"));
+        assertNull("all excluded", negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals("x-gzip", GZIP, negotiate("x-gzip"));
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        byte[] encoded = GZIP.encodeFully(new ByteArrayInputStream(BODY.getBytes("UTF-8")));
+
+        assertEquals("decoded", BODY, readAll(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+    }
+
+    @Test
+    public void testGzipEmptyBody() throws Exception {
+        byte[] encoded = GZIP.encodeFully(new ByteArrayInputStream(new byte[0]));
+
+        assertEquals("decoded", "", readAll(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        byte[] encoded = DEFLATE.encodeFully(new ByteArrayInputStream(BODY.getBytes("UTF-8")));
+
+        assertEquals("decoded", BODY, readAll(new InflaterInputStream(new ByteArrayInputStream(encoded))));
+    }
+
+    @Test
+    public void testEncodedBodyIsCached() throws Exception {
+        StringResponse response = new StringResponse(200, "text/plain", BODY);
+
+        assertSame("cached", response.getEncodedBody(GZIP), response.getEncodedBody(GZIP));
+    }
+
+    @Test
+    public void testEncodedResponseIsCached() throws Exception {
+        StringResponse response = new StringResponse(200, "text/plain", BODY);
+
+        assertSame("cached", response.getEncodedResponse(GZIP), response.getEncodedResponse(GZIP));
+        assertEquals("content encoding", "gzip", response.getEncodedResponse(GZIP).getHeaders()
+                .get("Content-Encoding").get(0));
+    }
+
+    @Test
+    public void testCompressedStringResponse() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY)).withCompression();
+
+        HttpURLConnection connection = open("gzip");
+
+        assertEquals("content encoding", "gzip", connection.getHeaderField("Content-Encoding"));
+        assertEquals("content length", Integer.toString(GZIP.encodeFully(new ByteArrayInputStream(
+                BODY.getBytes("UTF-8"))).length), connection.getHeaderField("Content-Length"));
+        assertEquals("body", BODY, readAll(new GZIPInputStream(connection.getInputStream())));
+    }
+
+    @Test
+    public void testCompressedGeneratedResponse() throws Exception {
+        GeneratedResponse response = GeneratedResponse.fixed(200, "text/plain", 100000, (byte) 'x');
+        server.given(GET, "bar").willRespond(response).withCompression();
+
+        HttpURLConnection connection = open("deflate");
+
+        assertEquals("content encoding", "deflate", connection.getHeaderField("Content-Encoding"));
+        assertEquals("body length", 100000, readAll(new InflaterInputStream(connection.getInputStream())).length());
+    }
+
+    @Test
+    public void testUncompressedWithoutAcceptEncoding() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY)).withCompression();
+
+        HttpURLConnection connection = open(null);
+
+        assertNull("content encoding", connection.getHeaderField("Content-Encoding"));
+        assertEquals("vary", "Accept-Encoding", connection.getHeaderField("Vary"));
+        assertEquals("body", BODY, readAll(connection.getInputStream()));
+    }
+
+    @Test
+    public void testUncompressedWithoutAcceptEncodingOnNio() throws Exception {
+        server.stop();
+        server = HttpMock.create("localhost", 0, "/foo", HttpEngines.nio(1), ExecutorStrategies.sameThread());
+        server.start();
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY)).withCompression();
+
+        HttpURLConnection connection = open(null);
+
+        assertNull("content encoding", connection.getHeaderField("Content-Encoding"));
+        assertEquals("vary", "Accept-Encoding", connection.getHeaderField("Vary"));
+        assertEquals("body", BODY, readAll(connection.getInputStream()));
+    }
+
+    @Test
+    public void testVaryIsAppended() throws Exception {
+        Map<String, List<String>> headers = Collections.singletonMap("Vary", Collections.singletonList("Origin"));
+        Set<String> expected = new HashSet<String>(Arrays.asList("Origin", "Accept-Encoding"));
+        for (HttpEngine engine : new HttpEngine[]{HttpEngines.jdk(), HttpEngines.nio(1)}) {
+            server.stop();
+            server = HttpMock.create("localhost", 0, "/foo", engine, ExecutorStrategies.sameThread());
+            server.start();
+            server.given(GET, "bar").willRespond(new StringResponse(200, headers, "text/plain", BODY))
+                    .withCompression();
+
+            HttpURLConnection compressed = open("gzip");
+            assertEquals("compressed " + engine, expected, new HashSet<String>(compressed.getHeaderFields()
+                    .get("Vary")));
+            readAll(new GZIPInputStream(compressed.getInputStream()));
+            HttpURLConnection identity = open(null);
+            assertEquals("identity " + engine, expected, new HashSet<String>(identity.getHeaderFields()
+                    .get("Vary")));
+            readAll(identity.getInputStream());
+        }
+    }
+
+    @Test
+    public void testNoVaryWithoutCompression() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        assertNull("vary", open("gzip").getHeaderField("Vary"));
+    }
+
+    private HttpURLConnection open(String acceptEncoding) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        return connection;
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -99,6 +99,51 @@ public class DefaultHandlerTest {
         verify(httpExchange).close();
     }
 
+    @Test
+    public void testHandlePathTemplate() throws Exception {
+        handler.registerSubHandler(GET, "users/{id}", subHandler);
+        givenRequestMethod("GET");
+        givenRequestPath("/users/42");
+
+        handler.handle(httpExchange);
+
+        verify(subHandler).handle(httpExchange);
+    }
+
+    @Test
+    public void testHandleRestWildcard() throws Exception {
+        handler.registerSubHandler(GET, "files/**", subHandler);
+        givenRequestMethod("GET");
+        givenRequestPath("/files/a/b/c.txt");
+
+        handler.handle(httpExchange);
+
+        verify(subHandler).handle(httpExchange);
+    }
+
+    @Test
+    public void testHandleQueryIsIgnored() throws Exception {
+        handler.registerSubHandler(GET, "bar", subHandler);
+        givenRequestMethod("GET");
+        givenRequestPath("/bar?baz=1");
+
+        handler.handle(httpExchange);
+
+        verify(subHandler).handle(httpExchange);
+    }
+
+    @Test
+    public void testHandleUnknownMethod() throws Exception {
+        handler.registerSubHandler(GET, "bar", subHandler);
+        givenRequestMethod("PROPFIND");
+        givenRequestPath("/bar");
+
+        handler.handle(httpExchange);
+
+        verify(httpExchange).sendResponseHeaders(405, -1);
+        verify(httpExchange).close();
+    }
+
     private void givenRequestMethod(String method) {
         given(httpExchange.getRequestMethod()).willReturn(method);
     }
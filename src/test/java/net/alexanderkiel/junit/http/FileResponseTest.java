@@ -0,0 +1,129 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Alexander Kiel
+ */
+public class FileResponseTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("file-response", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("0123456789".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testBodyLength() throws Exception {
+        FileResponse response = new FileResponse(200, "text/plain", file);
+
+        assertEquals("body length", 10, response.getBodyLength());
+    }
+
+    @Test
+    public void testBodyBuffer() throws Exception {
+        FileResponse response = new FileResponse(200, "text/plain", file);
+
+        assertEquals("part", "345", toString(response.getBodyBuffer(3, 3)));
+        assertEquals("all", "0123456789", toString(response.getBodyBuffer(0, 10)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBodyBufferBeyondEnd() throws Exception {
+        new FileResponse(200, "text/plain", file).getBodyBuffer(8, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingFile() throws Exception {
+        new FileResponse(200, "text/plain", new File(file.getPath() + ".missing"));
+    }
+
+    @Test
+    public void testBodyInputStream() throws Exception {
+        InputStream in = new FileResponse(200, "text/plain", file).getBodyInputStream();
+        try {
+            assertEquals("first byte", '0', in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testCachedClasspathResourceResponse() throws Exception {
+        ClasspathResourceResponse response = new ClasspathResourceResponse(200, "text/plain", file.toURI().toURL(),
+                true);
+
+        assertEquals("body length", 10, response.getBodyLength());
+        assertEquals("part", "789", toString(response.getBodyBuffer(7, 3)));
+    }
+
+    @Test
+    public void testCachedClasspathResourceIsNotOpenedAgain() throws Exception {
+        ClasspathResourceResponse response = new ClasspathResourceResponse(200, "text/plain", file.toURI().toURL(),
+                true);
+        response.getBodyBuffer(0, 1);
+        file.delete();
+
+        InputStream in = response.getBodyInputStream();
+        try {
+            byte[] bytes = new byte[16];
+            int length = in.read(bytes);
+            assertEquals("body", "0123456789", new String(bytes, 0, length, "US-ASCII"));
+            assertEquals("end", -1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testUncachedClasspathResourceResponse() throws Exception {
+        ClasspathResourceResponse response = new ClasspathResourceResponse(200, "text/plain", file.toURI().toURL());
+
+        assertEquals("body length", 0, response.getBodyLength());
+        assertNull("no buffer", response.getBodyBuffer(0, 10));
+    }
+
+    private static String toString(ByteBuffer buffer) throws Exception {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, "US-ASCII");
+    }
+}
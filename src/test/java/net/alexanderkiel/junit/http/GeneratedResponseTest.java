@@ -0,0 +1,178 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Alexander Kiel
+ */
+public class GeneratedResponseTest {
+
+    @Test
+    public void testFixed() throws Exception {
+        GeneratedResponse response = GeneratedResponse.fixed(200, "text/plain", 5, (byte) 'x');
+
+        assertEquals("body length", 5, response.getBodyLength());
+        assertEquals("body", "xxxxx", readAll(response.getBodyInputStream()));
+    }
+
+    @Test
+    public void testPattern() throws Exception {
+        GeneratedResponse response = GeneratedResponse.pattern(200, "text/plain", 8, "abc".getBytes("US-ASCII"));
+
+        assertEquals("body", "abcabcab", readAll(response.getBodyInputStream()));
+        assertEquals("buffer at offset", "bcab", toString(response.getBodyBuffer(4, 4)));
+    }
+
+    @Test
+    public void testPatternBufferMatchesStream() throws Exception {
+        GeneratedResponse response = GeneratedResponse.pattern(200, "text/plain", 300000,
+                "0123456789".getBytes("US-ASCII"));
+
+        StringBuilder fromBuffers = new StringBuilder();
+        long offset = 0;
+        while (offset < response.getBodyLength()) {
+            ByteBuffer buffer = response.getBodyBuffer(offset, response.getBodyLength() - offset);
+            offset += buffer.remaining();
+            fromBuffers.append(toString(buffer));
+        }
+
+        assertEquals("body", readAll(response.getBodyInputStream()), fromBuffers.toString());
+    }
+
+    @Test
+    public void testRandomIsDeterministic() throws Exception {
+        GeneratedResponse response1 = GeneratedResponse.random(200, "application/octet-stream", 1000, 42);
+        GeneratedResponse response2 = GeneratedResponse.random(200, "application/octet-stream", 1000, 42);
+        GeneratedResponse response3 = GeneratedResponse.random(200, "application/octet-stream", 1000, 43);
+
+        assertEquals("same seed", readAll(response1.getBodyInputStream()), readAll(response2.getBodyInputStream()));
+        assertFalse("other seed", readAll(response1.getBodyInputStream()).equals(
+                readAll(response3.getBodyInputStream())));
+    }
+
+    @Test
+    public void testRandomSkip() throws Exception {
+        GeneratedResponse response = GeneratedResponse.random(200, "application/octet-stream", 1000, 42);
+        byte[] all = new byte[1000];
+        readFully(response.getBodyInputStream(), all);
+
+        InputStream in = response.getBodyInputStream();
+        assertEquals("skipped", 333, in.skip(333));
+        byte[] rest = new byte[667];
+        readFully(in, rest);
+
+        byte[] expected = new byte[667];
+        System.arraycopy(all, 333, expected, 0, 667);
+        assertArrayEquals("rest", expected, rest);
+    }
+
+    @Test
+    public void testSha256() throws Exception {
+        GeneratedResponse response = GeneratedResponse.random(200, "application/octet-stream", 100000, 7);
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        InputStream in = response.getBodyInputStream();
+        byte[] buffer = new byte[777];
+        int length;
+        while ((length = in.read(buffer)) >= 0) {
+            digest.update(buffer, 0, length);
+        }
+
+        assertEquals("sha256", encodeHexString(digest.digest()), response.getSha256());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPattern() throws Exception {
+        GeneratedResponse.pattern(200, "text/plain", 10, new byte[0]);
+    }
+
+    @Test
+    public void testServeLargeBody() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo", HttpEngines.nio(1),
+                ExecutorStrategies.sameThread());
+        server.start();
+        try {
+            GeneratedResponse[] responses = {
+                    GeneratedResponse.random(200, "application/octet-stream", 20 * 1000 * 1000, 1),
+                    GeneratedResponse.pattern(200, "application/octet-stream", 20 * 1000 * 1000,
+                            "0123456789".getBytes("US-ASCII"))};
+            for (int i = 0; i < responses.length; i++) {
+                GeneratedResponse response = responses[i];
+                server.given(GET, "bar" + i).willRespond(response);
+
+                HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar" + i)
+                        .openConnection();
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                InputStream in = connection.getInputStream();
+                long received = 0;
+                try {
+                    byte[] buffer = new byte[64 * 1024];
+                    int length;
+                    while ((length = in.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, length);
+                        received += length;
+                    }
+                } finally {
+                    in.close();
+                }
+
+                assertEquals("received", 20 * 1000 * 1000, received);
+                assertEquals("sha256", response.getSha256(), encodeHexString(digest.digest()));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws Exception {
+        int offset = 0;
+        while (offset < bytes.length) {
+            offset += in.read(bytes, offset, bytes.length - offset);
+        }
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            builder.append((char) b);
+        }
+        return builder.toString();
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        StringBuilder builder = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            builder.append((char) buffer.get());
+        }
+        return builder.toString();
+    }
+}
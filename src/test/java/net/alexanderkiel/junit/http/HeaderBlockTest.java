@@ -0,0 +1,136 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Alexander Kiel
+ */
+public class HeaderBlockTest {
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("localhost", 0, "/foo", HttpEngines.nio(2), ExecutorStrategies.sameThread());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testNamesAreNormalized() throws Exception {
+        HeaderBlock block = HeaderBlock.of(headers("content-TYPE", "text/plain"));
+
+        assertEquals("headers", headers("Content-type", "text/plain"), block.getHeaders());
+    }
+
+    @Test
+    public void testWithReplacesHeaders() throws Exception {
+        HeaderBlock block = HeaderBlock.of(headers("A", "1", "B", "2")).with(HeaderBlock.of(headers("b", "3")));
+
+        assertEquals("headers", headers("A", "1", "B", "3"), block.getHeaders());
+    }
+
+    @Test
+    public void testWithEmptyKeepsBlock() throws Exception {
+        HeaderBlock block = HeaderBlock.of(headers("A", "1"));
+
+        assertSame("block", block, block.with(HeaderBlock.EMPTY));
+        assertSame("empty", block, HeaderBlock.EMPTY.with(block));
+    }
+
+    @Test
+    public void testCommonAndResponseHeaders() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, headers("X-Foo", "foo"), "text/plain", "bar"));
+
+        HttpURLConnection connection = open("/bar");
+
+        assertEquals("status", 200, connection.getResponseCode());
+        assertEquals("common", "*", connection.getHeaderField("Access-Control-Allow-Origin"));
+        assertEquals("response", "foo", connection.getHeaderField("X-Foo"));
+        assertEquals("content type", "text/plain", connection.getContentType());
+        assertEquals("accept ranges", "bytes", connection.getHeaderField("Accept-Ranges"));
+        assertEquals("body", "bar", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+    }
+
+    @Test
+    public void testResponseHeadersReplaceCommonHeaders() throws Exception {
+        server.given(GET, "bar").willRespond(new EmptyResponse(204, headers("access-control-allow-origin",
+                "http://example.com")));
+
+        HttpURLConnection connection = open("/bar");
+
+        assertEquals("status", 204, connection.getResponseCode());
+        assertEquals("origin", Collections.singletonList("http://example.com"),
+                connection.getHeaderFields().get("Access-control-allow-origin"));
+    }
+
+    @Test
+    public void testDerivedResponsesKeepHeaders() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, headers("X-Foo", "foo"), "text/plain", "bar"))
+                .withCompression();
+
+        HttpURLConnection connection = open("/bar");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+
+        assertEquals("encoding", "gzip", connection.getHeaderField("Content-Encoding"));
+        assertEquals("common", "*", connection.getHeaderField("Access-Control-Allow-Origin"));
+        assertEquals("response", "foo", connection.getHeaderField("X-Foo"));
+        assertEquals("content type", "text/plain", connection.getContentType());
+    }
+
+    @Test
+    public void testNotFoundHasCommonHeaders() throws Exception {
+        HttpURLConnection connection = open("/bar");
+
+        assertEquals("status", 404, connection.getResponseCode());
+        assertEquals("common", "*", connection.getHeaderField("Access-Control-Allow-Origin"));
+        assertNull("accept ranges", connection.getHeaderField("Accept-Ranges"));
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        return (HttpURLConnection) new URL(server.getBaseUri() + path).openConnection();
+    }
+
+    private static Map<String, List<String>> headers(String... namesAndValues) {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], Arrays.asList(namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+}
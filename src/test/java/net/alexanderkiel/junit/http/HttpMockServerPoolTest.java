@@ -0,0 +1,151 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class HttpMockServerPoolTest {
+
+    private HttpMockServerPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new HttpMockServerPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testReleasedServerIsReused() throws Exception {
+        HttpMockServer server = pool.acquire("/foo");
+        int port = server.getPort();
+        pool.release(server);
+
+        HttpMockServer reused = pool.acquire("/foo");
+
+        assertSame("server", server, reused);
+        assertEquals("port", port, reused.getPort());
+        assertEquals("idle", 0, pool.getIdleCount());
+        pool.release(reused);
+    }
+
+    @Test
+    public void testServersArePooledPerContextPath() throws Exception {
+        HttpMockServer foo = pool.acquire("/foo");
+        pool.release(foo);
+
+        HttpMockServer bar = pool.acquire("/bar");
+
+        assertNotSame("server", foo, bar);
+        assertEquals("base uri", "/bar", bar.getBaseUri().getPath());
+        pool.release(bar);
+    }
+
+    @Test
+    public void testReleaseResetsServer() throws Exception {
+        HttpMockServer server = pool.acquire("/foo");
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"));
+        assertEquals("before", "bar", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+        pool.release(server);
+
+        server = pool.acquire("/foo");
+
+        assertEquals("status", 404, status(server, "/bar"));
+        assertEquals("journal", 1, server.getRequestJournal().getEntries().size());
+        assertTrue("metrics", server.getMetrics().getRoutes().isEmpty());
+        server.verify();
+        pool.release(server);
+    }
+
+    @Test
+    public void testResetRemovesStubs() throws Exception {
+        File stubFile = File.createTempFile("stubs", ".json");
+        try {
+            OutputStream out = new FileOutputStream(stubFile);
+            out.write("[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"stub\"}]".getBytes("UTF-8"));
+            out.close();
+            HttpMockServer server = pool.acquire("/foo");
+            server.loadStubs(stubFile);
+            assertEquals("before", 200, status(server, "/bar"));
+
+            server.reset();
+
+            assertEquals("after", 404, status(server, "/bar"));
+            pool.release(server);
+        } finally {
+            stubFile.delete();
+        }
+    }
+
+    @Test
+    public void testStoppedServerIsDropped() throws Exception {
+        HttpMockServer server = pool.acquire("/foo");
+        server.stop();
+
+        pool.release(server);
+
+        assertEquals("idle", 0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testCloseStopsIdleServers() throws Exception {
+        HttpMockServer server = pool.acquire("/foo");
+        pool.release(server);
+
+        pool.close();
+
+        assertFalse("running", server.isRunning());
+        assertEquals("idle", 0, pool.getIdleCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcquireAfterClose() throws Exception {
+        pool.close();
+
+        pool.acquire("/foo");
+    }
+
+    private static int status(HttpMockServer server, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
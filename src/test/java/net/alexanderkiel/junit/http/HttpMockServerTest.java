@@ -0,0 +1,231 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.VerificationMode.times;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class HttpMockServerTest {
+
+    private HttpMockServer server1;
+    private HttpMockServer server2;
+
+    @Before
+    public void setUp() throws Exception {
+        server1 = HttpMock.create("/foo");
+        server2 = HttpMock.create("/foo");
+        server1.start();
+        server2.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server1.stop();
+        server2.stop();
+    }
+
+    @Test
+    public void testEphemeralPorts() throws Exception {
+        assertTrue("port 1 is bound", server1.getPort() > 0);
+        assertTrue("port 2 is bound", server2.getPort() > 0);
+        assertFalse("ports differ", server1.getPort() == server2.getPort());
+    }
+
+    @Test
+    public void testBaseUri() throws Exception {
+        assertEquals("port", server1.getPort(), server1.getBaseUri().getPort());
+        assertEquals("path", "/foo", server1.getBaseUri().getPath());
+    }
+
+    @Test
+    public void testIndependentMockings() throws Exception {
+        server1.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "one"));
+        server2.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "two"));
+
+        assertEquals("body 1", "one", get(new URL(server1.getBaseUri() + "/bar")));
+        assertEquals("body 2", "two", get(new URL(server2.getBaseUri() + "/bar")));
+
+        server1.verify();
+        server2.verify();
+    }
+
+    @Test
+    public void testConcurrentCallCount() throws Exception {
+        OngoingMocking mocking = server1.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "one"));
+        final URL url = new URL(server1.getBaseUri() + "/bar");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return get(url);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertEquals("body", "one", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        mocking.verify(times(200));
+        assertEquals("call count", 200, mocking.getCallCount());
+    }
+
+    @Test
+    public void testConcurrentStreamingBodies() throws Exception {
+        File file = File.createTempFile("streaming-body", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                content.append(i).append('\n');
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.toString().getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+            server1.given(GET, "bar").willRespond(new ClasspathResourceResponse(200, "text/plain",
+                    file.toURI().toURL()));
+            final URL url = new URL(server1.getBaseUri() + "/bar");
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<String>> futures = new ArrayList<Future<String>>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(executor.submit(new Callable<String>() {
+                        public String call() throws Exception {
+                            return get(url);
+                        }
+                    }));
+                }
+                for (Future<String> future : futures) {
+                    assertEquals("body", content.toString(), future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCachedThreadPool() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo", ExecutorStrategies.cachedThreadPool());
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "three"));
+        server.start();
+        try {
+            assertEquals("body", "three", get(new URL(server.getBaseUri() + "/bar")));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetExecutorStrategyAfterStart() throws Exception {
+        server1.setExecutorStrategy(ExecutorStrategies.cachedThreadPool());
+    }
+
+    @Test
+    public void testNonAsciiStringResponse() throws Exception {
+        server1.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "d\u00fcsseldorf \u20ac"));
+
+        assertEquals("body", "d\u00fcsseldorf \u20ac", get(new URL(server1.getBaseUri() + "/bar")));
+    }
+
+    @Test
+    public void testFileResponse() throws Exception {
+        File file = File.createTempFile("file-response", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 64 * 1024; i++) {
+                content.append("0123456789abcdef");
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.toString().getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+            server1.given(GET, "bar").willRespond(new FileResponse(200, "text/plain", file));
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(server1.getBaseUri() + "/bar").openConnection();
+            assertEquals("content length", "1048576", connection.getHeaderField("Content-Length"));
+            connection.disconnect();
+            assertEquals("body", content.toString(), get(new URL(server1.getBaseUri() + "/bar")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    static String get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Waits until the handling of the request of the given journal entry completed, which may be shortly after the
+     * client received the response.
+     */
+    static JournalEntry awaitCompleted(JournalEntry entry) throws InterruptedException {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (entry.getDurationNanos() < 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertTrue("completed " + entry, entry.getDurationNanos() >= 0);
+        return entry;
+    }
+}
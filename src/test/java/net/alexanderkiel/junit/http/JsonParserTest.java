@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Alexander Kiel
+ */
+public class JsonParserTest {
+
+    @Test
+    public void testValues() throws Exception {
+        assertEquals("string", "foo", parse("\"foo\""));
+        assertEquals("integer", 42L, parse("42"));
+        assertEquals("negative", -1L, parse("-1"));
+        assertEquals("double", 1.5, parse("1.5e0"));
+        assertEquals("true", Boolean.TRUE, parse("true"));
+        assertEquals("false", Boolean.FALSE, parse(" false "));
+        assertNull("null", parse("null"));
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        assertEquals("escapes", "a\"b\\c/d\n\t\u00e4", parse("\"a\\\"b\\\\c\\/d\\n\\t\\u00e4\""));
+    }
+
+    @Test
+    public void testObjectKeepsOrder() throws Exception {
+        Map<?, ?> object = (Map<?, ?>) parse("{\"b\": 1, \"a\": [true, {}], \"c\": []}");
+
+        assertEquals("keys", Arrays.asList("b", "a", "c"), Arrays.asList(object.keySet().toArray()));
+        assertEquals("array", 2, ((List<?>) object.get("a")).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTrailingComma() throws Exception {
+        parse("[1, 2,]");
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedString() throws Exception {
+        parse("\"foo");
+    }
+
+    @Test(expected = IOException.class)
+    public void testTrailingContent() throws Exception {
+        parse("{} {}");
+    }
+
+    @Test
+    public void testErrorPosition() throws Exception {
+        try {
+            parse("{\n  \"a\": x\n}");
+        } catch (IOException e) {
+            assertEquals("message", "Unexpected character 'x' at line 2, column 8 of test.", e.getMessage());
+            return;
+        }
+        throw new AssertionError("no error");
+    }
+
+    private static Object parse(String json) throws IOException {
+        return new JsonParser("test", json).parse();
+    }
+}
@@ -0,0 +1,97 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception {
+        for (int value = 0; value < 2 * LatencyHistogram.SUB_BUCKETS; value++) {
+            assertEquals("value " + value, value, LatencyHistogram.highestValue(LatencyHistogram.bucketIndex(value)));
+        }
+    }
+
+    @Test
+    public void testBucketsCoverValues() throws Exception {
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE; value = value * 3 + 1) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("highest value of " + value, LatencyHistogram.highestValue(index) >= value);
+            assertTrue("previous bucket of " + value, LatencyHistogram.highestValue(index - 1) < value);
+            assertTrue("precision of " + value, LatencyHistogram.highestValue(index) - value <=
+                    value / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void testLargeValuesAreClamped() throws Exception {
+        assertEquals("last bucket", LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmptySnapshot() throws Exception {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals("count", 0, snapshot.getCount());
+        assertEquals("mean", 0, snapshot.getMeanNanos(), 0);
+        assertEquals("max", 0, snapshot.getMaxNanos());
+        assertEquals("p99", 0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals("count", 1000, snapshot.getCount());
+        assertEquals("mean", 500500, snapshot.getMeanNanos(), 0);
+        assertEquals("max", 1000000, snapshot.getMaxNanos());
+        assertWithinPrecision("p50", 500000, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision("p99", 990000, snapshot.getValueAtPercentile(99));
+        assertEquals("p100", 1000000, snapshot.getValueAtPercentile(100));
+        assertEquals("p0", 1000, snapshot.getValueAtPercentile(0), 1000 / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void testNegativeValuesCountAsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals("p50", 0, histogram.snapshot().getValueAtPercentile(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() throws Exception {
+        new LatencyHistogram().snapshot().getValueAtPercentile(101);
+    }
+
+    private static void assertWithinPrecision(String message, long expected, long actual) {
+        assertTrue(message + " expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
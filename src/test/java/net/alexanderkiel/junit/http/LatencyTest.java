@@ -0,0 +1,140 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.awaitCompleted;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class LatencyTest {
+
+    @Test
+    public void testFixed() throws Exception {
+        assertEquals("latency", MILLISECONDS.toNanos(20), Latency.fixed(20, MILLISECONDS).sampleNanos());
+    }
+
+    @Test
+    public void testUniform() throws Exception {
+        Latency latency = Latency.uniform(10, 20, MILLISECONDS);
+        for (int i = 0; i < 1000; i++) {
+            long nanos = latency.sampleNanos();
+            assertTrue("within bounds", nanos >= MILLISECONDS.toNanos(10) && nanos <= MILLISECONDS.toNanos(20));
+        }
+    }
+
+    @Test
+    public void testNormalIsNeverNegative() throws Exception {
+        Latency latency = Latency.normal(1, 100, MILLISECONDS);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue("non-negative", latency.sampleNanos() >= 0);
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        Latency latency = Latency.percentiles(NANOSECONDS, new double[]{50, 90, 100}, new long[]{10, 50, 250});
+        Random random = new Random(4711);
+        long[] samples = new long[10000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+
+        assertTrue("p50", samples[samples.length / 2 - 1] >= 10 && samples[samples.length / 2 - 1] <= 12);
+        assertTrue("p90", samples[samples.length * 9 / 10] > 40 && samples[samples.length * 9 / 10] < 100);
+        assertTrue("max", samples[samples.length - 1] <= 250);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentilesNotAscending() throws Exception {
+        Latency.percentiles(MILLISECONDS, new double[]{90, 50}, new long[]{10, 20});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUniformMaxBelowMin() throws Exception {
+        Latency.uniform(20, 10, MILLISECONDS);
+    }
+
+    @Test
+    public void testJournalRecordsDelay() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "late"))
+                .withLatency(Latency.fixed(200, MILLISECONDS));
+        server.start();
+        try {
+            get(new URL(server.getBaseUri() + "/bar"));
+
+            JournalEntry entry = awaitCompleted(server.getRequestJournal().getEntries().get(0));
+            assertTrue("duration " + entry.getDurationNanos(), entry.getDurationNanos() >= MILLISECONDS.toNanos(200));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * With two worker threads, 100 requests delayed by 500 ms each would take 25 s if the delay occupied a worker.
+     */
+    @Test
+    public void testDelayedRequestsDontOccupyThreads() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo", ExecutorStrategies.fixedThreadPool(2));
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "late"))
+                .withLatency(Latency.fixed(500, MILLISECONDS));
+        server.start();
+        ExecutorService executor = Executors.newFixedThreadPool(100);
+        try {
+            final URL url = new URL(server.getBaseUri() + "/bar");
+            long start = System.nanoTime();
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return get(url);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertEquals("body", "late", future.get());
+            }
+            long millis = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue("delayed " + millis + " ms", millis >= 500);
+            assertTrue("concurrent " + millis + " ms", millis < 10000);
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+}
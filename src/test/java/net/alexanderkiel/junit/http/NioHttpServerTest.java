@@ -0,0 +1,191 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class NioHttpServerTest {
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("localhost", 0, "/foo", HttpEngines.nio(2), ExecutorStrategies.sameThread());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("body", "bar", get(new URL(server.getBaseUri() + "/bar")));
+        }
+        server.verify();
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+
+        assertEquals("status code", 404, connection.getResponseCode());
+    }
+
+    @Test
+    public void testOutsideOfContext() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/bar")
+                .openConnection();
+
+        assertEquals("status code", 404, connection.getResponseCode());
+    }
+
+    @Test
+    public void testPostFixedLength() throws Exception {
+        server.given(POST, "bar", "text/plain", "payload").willRespond(new EmptyResponse(201));
+
+        assertEquals("status code", 201, post(-1, "payload"));
+        server.verify();
+    }
+
+    @Test
+    public void testPostChunked() throws Exception {
+        server.given(POST, "bar", "text/plain", "payload").willRespond(new EmptyResponse(201));
+
+        assertEquals("status code", 201, post(3, "payload"));
+        server.verify();
+    }
+
+    @Test
+    public void testRequestJournal() throws Exception {
+        server.given(POST, "bar", "text/plain", "payload").willRespond(new EmptyResponse(201));
+
+        post(-1, "payload");
+
+        JournalEntry entry = server.getRequestJournal().getEntries(POST, "/foo/bar").get(0);
+        assertEquals("body length", 7, entry.getBodyLength());
+        assertEquals("body digest", "239f59ed55e737c77147cf55ad0c1b030b6d7ee748a7426952f9b852d5a935e5",
+                entry.getBodyDigest());
+        assertEquals("content type", "text/plain", entry.getHeaders().get("Content-type").get(0));
+    }
+
+    @Test
+    public void testPipelining() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"));
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            String request = "GET /foo/bar HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            out.write((request + request + "GET /foo/bar HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+
+            String response = readAll(socket.getInputStream());
+
+            assertEquals("responses", 3, response.split("HTTP/1.1 200 OK").length - 1);
+            assertTrue("last body", response.endsWith("\r\n\r\nbar"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testFileResponse() throws Exception {
+        File file = File.createTempFile("file-response", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 64 * 1024; i++) {
+                content.append("0123456789abcdef");
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.toString().getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+            server.given(GET, "bar").willRespond(new FileResponse(200, "text/plain", file));
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+            assertEquals("content length", "1048576", connection.getHeaderField("Content-Length"));
+            connection.disconnect();
+            assertEquals("body", content.toString(), get(new URL(server.getBaseUri() + "/bar")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"))
+                .withLatency(Latency.fixed(100, MILLISECONDS));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("body", "bar", get(new URL(server.getBaseUri() + "/bar")));
+        }
+
+        assertTrue("delayed", System.nanoTime() - start >= MILLISECONDS.toNanos(300));
+    }
+
+    private int post(int chunkLength, String payload) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "text/plain");
+        if (chunkLength > 0) {
+            connection.setChunkedStreamingMode(chunkLength);
+        }
+        OutputStream out = connection.getOutputStream();
+        out.write(payload.getBytes("UTF-8"));
+        out.close();
+        return connection.getResponseCode();
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,255 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class PartialResponseTest {
+
+    private static final String BODY = "0123456789abcdefghij";
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        assertRanges("closed", "bytes=0-4", 20, new long[]{0, 4});
+        assertRanges("open", "bytes=15-", 20, new long[]{15, 19});
+        assertRanges("suffix", "bytes=-5", 20, new long[]{15, 19});
+        assertRanges("clipped", "bytes=10-100", 20, new long[]{10, 19});
+        assertRanges("long suffix", "bytes=-100", 20, new long[]{0, 19});
+        assertRanges("multi", "bytes=0-1, 5-6", 20, new long[]{0, 1}, new long[]{5, 6});
+        assertRanges("unsatisfiable dropped", "bytes=0-1,30-40", 20, new long[]{0, 1});
+        assertRanges("unsatisfiable", "bytes=20-", 20);
+    }
+
+    @Test
+    public void testParseInvalid() throws Exception {
+        assertNull("unit", PartialResponse.parse("items=0-1", 20));
+        assertNull("reversed", PartialResponse.parse("bytes=5-1", 20));
+        assertNull("no dash", PartialResponse.parse("bytes=5", 20));
+        assertNull("sign", PartialResponse.parse("bytes=+1-5", 20));
+        assertNull("empty", PartialResponse.parse("bytes=", 20));
+    }
+
+    @Test
+    public void testSelectWithoutRange() throws Exception {
+        Response response = new StringResponse(200, "text/plain", BODY);
+
+        assertSame("response", response, PartialResponse.select(response, null, null));
+    }
+
+    @Test
+    public void testSelectNotRangeable() throws Exception {
+        Response response = new StringResponse(404, "text/plain", BODY);
+
+        assertSame("response", response, PartialResponse.select(response, "bytes=0-1", null));
+    }
+
+    @Test
+    public void testSelectIfRangeMismatch() throws Exception {
+        Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList("\"v1\""));
+        Response response = new StringResponse(200, headers, "text/plain", BODY);
+
+        assertSame("mismatch", response, PartialResponse.select(response, "bytes=0-1", "\"v2\""));
+        assertSame("weak", response, PartialResponse.select(response, "bytes=0-1", "W/\"v1\""));
+        assertEquals("match", 206, PartialResponse.select(response, "bytes=0-1", "\"v1\"").getStatusCode());
+    }
+
+    @Test
+    public void testSelectUnsatisfiable() throws Exception {
+        Response response = PartialResponse.select(new StringResponse(200, "text/plain", BODY), "bytes=50-", null);
+
+        assertEquals("status", 416, response.getStatusCode());
+        assertEquals("content range", Collections.singletonList("bytes */20"), response.getHeaders().get(
+                "Content-Range"));
+    }
+
+    @Test
+    public void testBufferAndStreamAgree() throws Exception {
+        GeneratedResponse generated = GeneratedResponse.random(200, "application/octet-stream", 1L << 32, 42);
+        Response response = PartialResponse.select(generated, "bytes=4000000000-4000000099,-10", null);
+
+        byte[] streamed = readAll(response.getBodyInputStream());
+        assertEquals("length", response.getBodyLength(), streamed.length);
+
+        byte[] expected = new byte[100];
+        InputStream in = generated.getBodyInputStream();
+        assertEquals("skipped", 4000000000L, in.skip(4000000000L));
+        assertEquals("read", 100, in.read(expected));
+        String text = new String(streamed, "ISO-8859-1");
+        int start = text.indexOf("\r\n\r\n") + 4;
+        byte[] actual = new byte[100];
+        System.arraycopy(streamed, start, actual, 0, 100);
+        assertArrayEquals("first part", expected, actual);
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        HttpURLConnection connection = open("bytes=5-9", null);
+
+        assertEquals("status", 206, connection.getResponseCode());
+        assertEquals("content range", "bytes 5-9/20", connection.getHeaderField("Content-Range"));
+        assertEquals("content length", "5", connection.getHeaderField("Content-Length"));
+        assertEquals("body", "56789", new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    @Test
+    public void testSingleRangeOfFile() throws Exception {
+        server.given(GET, "bar").willRespond(GeneratedResponse.fixed(200, "text/plain", 100000, (byte) 'x'));
+
+        HttpURLConnection connection = open("bytes=-3", null);
+
+        assertEquals("status", 206, connection.getResponseCode());
+        assertEquals("content range", "bytes 99997-99999/100000", connection.getHeaderField("Content-Range"));
+        assertEquals("body", "xxx", new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        HttpURLConnection connection = open("bytes=0-1,18-", null);
+
+        assertEquals("status", 206, connection.getResponseCode());
+        assertTrue("content type", connection.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = new String(readAll(connection.getInputStream()), "UTF-8");
+        assertTrue("first part", body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+        assertTrue("second part", body.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+    }
+
+    @Test
+    public void testMultipleRangesOfRandomBody() throws Exception {
+        GeneratedResponse generated = GeneratedResponse.random(200, "application/octet-stream", 1000, 42);
+        byte[] expected = readAll(PartialResponse.select(generated, "bytes=0-9,20-29", null).getBodyInputStream());
+        server.given(GET, "bar").willRespond(generated);
+        HttpMockServer nioServer = HttpMock.create("localhost", 0, "/foo", HttpEngines.nio(1),
+                ExecutorStrategies.sameThread());
+        nioServer.given(GET, "bar").willRespond(generated);
+        nioServer.start();
+        try {
+            for (HttpMockServer engineServer : new HttpMockServer[]{server, nioServer}) {
+                HttpURLConnection connection = (HttpURLConnection) new URL(engineServer.getBaseUri() + "/bar")
+                        .openConnection();
+                connection.setRequestProperty("Range", "bytes=0-9,20-29");
+
+                assertEquals("status", 206, connection.getResponseCode());
+                assertEquals("content length", String.valueOf(expected.length),
+                        connection.getHeaderField("Content-Length"));
+                assertArrayEquals("body", expected, readAll(connection.getInputStream()));
+            }
+        } finally {
+            nioServer.stop();
+        }
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        HttpURLConnection connection = open("bytes=20-", null);
+
+        assertEquals("status", 416, connection.getResponseCode());
+        assertEquals("content range", "bytes */20", connection.getHeaderField("Content-Range"));
+    }
+
+    @Test
+    public void testFullResponseAcceptsRanges() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        HttpURLConnection connection = open(null, null);
+
+        assertEquals("status", 200, connection.getResponseCode());
+        assertEquals("accept ranges", "bytes", connection.getHeaderField("Accept-Ranges"));
+        assertEquals("body", BODY, new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    @Test
+    public void testIfRangeMismatchSendsFullBody() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", BODY));
+
+        HttpURLConnection connection = open("bytes=0-1", "\"v1\"");
+
+        assertEquals("status", 200, connection.getResponseCode());
+        assertEquals("body", BODY, new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    private static void assertRanges(String message, String range, long length, long[]... expected) {
+        List<long[]> ranges = PartialResponse.parse(range, length);
+        assertEquals(message + " count", expected.length, ranges.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(message + " " + i, expected[i], ranges.get(i));
+        }
+    }
+
+    private HttpURLConnection open(String range, String ifRange) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        if (ifRange != null) {
+            connection.setRequestProperty("If-Range", ifRange);
+        }
+        return connection;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.PUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Alexander Kiel
+ */
+public class PayloadTest {
+
+    private static final String FOO_SHA256 = "2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae";
+    private static final String BAR_SHA256 = "fcde2b2edba56bf408601fb721fe9b5c338d10ee429ea04fae5511b68fbf8fb9";
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testStringMatches() throws Exception {
+        assertNull("match", compare(Payload.of("foo"), "foo"));
+    }
+
+    @Test
+    public void testStringDiffers() throws Exception {
+        assertEquals("mismatch", "differs at byte offset 2; 3 bytes were received", compare(Payload.of("foo"), "fox"));
+    }
+
+    @Test
+    public void testBodyTooShort() throws Exception {
+        assertEquals("mismatch", "differs at byte offset 2; 2 bytes were received", compare(Payload.of("foo"), "fo"));
+    }
+
+    @Test
+    public void testBodyTooLong() throws Exception {
+        assertEquals("mismatch", "differs at byte offset 3; 5 bytes were received",
+                compare(Payload.of("foo"), "foooo"));
+    }
+
+    @Test
+    public void testDigestMatches() throws Exception {
+        assertNull("match", compare(Payload.digest(3, FOO_SHA256.toUpperCase()), "foo"));
+    }
+
+    @Test
+    public void testDigestLengthDiffers() throws Exception {
+        assertEquals("mismatch", "has 4 bytes but expected 3 bytes", compare(Payload.digest(3, FOO_SHA256), "fooo"));
+    }
+
+    @Test
+    public void testDigestDiffers() throws Exception {
+        assertEquals("mismatch", "has the SHA-256 digest " + BAR_SHA256 + " but expected " + FOO_SHA256,
+                compare(Payload.digest(3, FOO_SHA256), "bar"));
+    }
+
+    @Test
+    public void testLargeFileUpload() throws Exception {
+        File file = createFile(5 * 1000 * 1000, -1);
+        try {
+            OngoingMocking mocking = server.given(PUT, "bar", "application/octet-stream", Payload.of(file))
+                    .willRespond(new EmptyResponse(204));
+
+            assertEquals("status", 204, put(file, -1));
+
+            mocking.verify();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeFileUploadDiffers() throws Exception {
+        File expected = createFile(1000 * 1000, -1);
+        File actual = createFile(1000 * 1000, 654321);
+        try {
+            OngoingMocking mocking = server.given(PUT, "bar", "application/octet-stream", Payload.of(expected))
+                    .willRespond(new EmptyResponse(204));
+
+            assertEquals("status", 204, put(actual, 64 * 1024));
+
+            try {
+                mocking.verify();
+                fail();
+            } catch (AssertionError e) {
+                assertEquals("assertion message", "request PUT bar payload differs at byte offset 654321; " +
+                        "1000000 bytes were received", e.getMessage());
+            }
+        } finally {
+            expected.delete();
+            actual.delete();
+        }
+    }
+
+    @Test
+    public void testCloseWithoutFinishClosesExpectedStream() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        URL url = new URL(null, "test:payload", new URLStreamHandler() {
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+                    public void connect() {
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(new byte[]{'f', 'o', 'o'}) {
+                            @Override
+                            public void close() {
+                                closed.set(true);
+                            }
+                        };
+                    }
+                };
+            }
+        });
+        Payload.Comparison comparison = Payload.of(url).compare();
+        comparison.update(new byte[]{'f'}, 0, 1);
+
+        comparison.close();
+
+        assertTrue("closed", closed.get());
+    }
+
+    private static String compare(Payload payload, String body) throws Exception {
+        Payload.Comparison comparison = payload.compare();
+        byte[] bytes = body.getBytes("UTF-8");
+        for (int i = 0; i < bytes.length; i++) {
+            comparison.update(bytes, i, 1);
+        }
+        return comparison.finish();
+    }
+
+    /**
+     * Creates a file with a repeating byte pattern which differs at the given offset if it is non-negative.
+     */
+    private static File createFile(int length, int differingOffset) throws Exception {
+        File file = File.createTempFile("payload", ".bin");
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        if (differingOffset >= 0) {
+            content[differingOffset]++;
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private int put(File file, int chunkLength) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        if (chunkLength > 0) {
+            connection.setChunkedStreamingMode(chunkLength);
+        } else {
+            connection.setFixedLengthStreamingMode((int) file.length());
+        }
+        OutputStream out = connection.getOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+        out.close();
+        return connection.getResponseCode();
+    }
+}
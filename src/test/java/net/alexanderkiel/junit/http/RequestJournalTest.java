@@ -0,0 +1,102 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alexander Kiel
+ */
+public class RequestJournalTest {
+
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private RequestJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        journal = new RequestJournal(3);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertEquals("entries", 0, journal.getEntries().size());
+        assertEquals("total count", 0, journal.getTotalCount());
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        record("/foo/a");
+        record("/foo/b");
+
+        List<JournalEntry> entries = journal.getEntries();
+        assertEquals("entries", 2, entries.size());
+        assertEquals("first path", "/foo/a", entries.get(0).getPath());
+        assertEquals("second path", "/foo/b", entries.get(1).getPath());
+    }
+
+    @Test
+    public void testOverwriteOldest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            record("/foo/" + i);
+        }
+
+        List<JournalEntry> entries = journal.getEntries();
+        assertEquals("entries", 3, entries.size());
+        assertEquals("oldest path", "/foo/7", entries.get(0).getPath());
+        assertEquals("newest path", "/foo/9", entries.get(2).getPath());
+        assertEquals("oldest sequence number", 7, entries.get(0).getSequenceNumber());
+        assertEquals("total count", 10, journal.getTotalCount());
+    }
+
+    @Test
+    public void testEntriesForMethodAndPath() throws Exception {
+        record("/foo/a");
+        record("/foo/b");
+        record("/foo/a");
+
+        assertEquals("entries", 2, journal.getEntries(GET, "/foo/a").size());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        record("/foo/a");
+
+        journal.clear();
+
+        assertEquals("entries", 0, journal.getEntries().size());
+        assertEquals("total count", 1, journal.getTotalCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() throws Exception {
+        new RequestJournal(0);
+    }
+
+    private void record(String path) {
+        journal.record("GET", URI.create(path), NO_HEADERS, System.nanoTime());
+    }
+}
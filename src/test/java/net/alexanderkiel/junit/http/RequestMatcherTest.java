@@ -0,0 +1,223 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.RequestMatcher.bodySha256;
+import static net.alexanderkiel.junit.http.RequestMatcher.header;
+import static net.alexanderkiel.junit.http.RequestMatcher.headerMatches;
+import static net.alexanderkiel.junit.http.RequestMatcher.jsonPath;
+import static net.alexanderkiel.junit.http.RequestMatcher.jsonPathMatches;
+import static net.alexanderkiel.junit.http.RequestMatcher.query;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class RequestMatcherTest {
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        server.given(GET, "users").willRespond(text("page 1"));
+        server.given(GET, "users", query("page", "2")).willRespond(text("page 2"));
+        server.given(GET, "users", query("q", "a b")).willRespond(text("search"));
+
+        assertEquals("no query", "200 page 1", request("GET", "/users", null, null));
+        assertEquals("page 2", "200 page 2", request("GET", "/users?page=2", null, null));
+        assertEquals("page 3", "200 page 1", request("GET", "/users?page=3", null, null));
+        assertEquals("decoded", "200 search", request("GET", "/users?q=a+b", null, null));
+    }
+
+    @Test
+    public void testHeader() throws Exception {
+        server.given(GET, "bar", header("accept", "application/json")).willRespond(text("json"));
+        server.given(GET, "bar", headerMatches("Accept", "text/.*")).willRespond(text("text"));
+
+        assertEquals("json", "200 json", request("GET", "/bar", "application/json", null));
+        assertEquals("text", "200 text", request("GET", "/bar", "text/html", null));
+        assertEquals("none", "404 ", request("GET", "/bar", "image/png", null));
+    }
+
+    @Test
+    public void testMostMatchersWin() throws Exception {
+        server.given(GET, "bar", query("a", "1")).willRespond(text("a"));
+        server.given(GET, "bar", query("a", "1"), query("b", "2")).willRespond(text("ab"));
+        server.given(GET, "bar", query("b", "2")).willRespond(text("b"));
+
+        assertEquals("a", "200 a", request("GET", "/bar?a=1", null, null));
+        assertEquals("ab", "200 ab", request("GET", "/bar?b=2&a=1", null, null));
+        assertEquals("b", "200 b", request("GET", "/bar?b=2", null, null));
+    }
+
+    @Test
+    public void testContradictingMatchers() throws Exception {
+        server.given(GET, "bar", query("a", "1"), query("a", "2"), query("a", "3")).willRespond(text("never"));
+        server.given(GET, "bar", query("b", "2")).willRespond(text("b"));
+
+        assertEquals("contradicting", "404 ", request("GET", "/bar?a=1", null, null));
+        assertEquals("b", "200 b", request("GET", "/bar?b=2", null, null));
+    }
+
+    @Test
+    public void testSameMatchersReplace() throws Exception {
+        server.given(GET, "bar", query("a", "1")).willRespond(text("old"));
+        server.given(GET, "bar", query("a", "1")).willRespond(text("new"));
+
+        assertEquals("new", "200 new", request("GET", "/bar?a=1", null, null));
+    }
+
+    @Test
+    public void testJsonPath() throws Exception {
+        server.given(POST, "orders", jsonPath("$.items[0].sku", "A-1")).willRespond(text("a"));
+        server.given(POST, "orders", jsonPath("$.express", "true")).willRespond(text("express"));
+        server.given(POST, "orders", jsonPathMatches("$.customer.id", "[0-9]+")).willRespond(text("customer"));
+
+        assertEquals("sku", "200 a", request("POST", "/orders", null, "{\"items\": [{\"sku\": \"A-1\"}]}"));
+        assertEquals("boolean", "200 express", request("POST", "/orders", null, "{\"express\": true}"));
+        assertEquals("regex", "200 customer", request("POST", "/orders", null, "{\"customer\": {\"id\": 4711}}"));
+        assertEquals("invalid json", "404 ", request("POST", "/orders", null, "{\"express\": "));
+    }
+
+    @Test
+    public void testBodySha256() throws Exception {
+        server.given(POST, "bar", bodySha256("2C26B46B68FFC68FF99B453C1D30413413422D706483BFA0F98A5E886266E7AE"))
+                .willRespond(text("foo"));
+
+        assertEquals("match", "200 foo", request("POST", "/bar", null, "foo"));
+        assertEquals("mismatch", "404 ", request("POST", "/bar", null, "bar"));
+        assertEquals("journal", "2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae",
+                server.getRequestJournal().getEntries().get(0).getBodyDigest());
+    }
+
+    @Test
+    public void testHeadersAreCheckedBeforeBody() throws Exception {
+        server.given(POST, "bar", header("X-Variant", "a"), jsonPath("$.id", "1")).willRespond(text("a"));
+        server.given(POST, "bar", header("X-Variant", "b")).willRespond(text("b"));
+
+        assertEquals("b", "200 b", request("POST", "/bar", null, "{\"id\": 1}", "X-Variant", "b"));
+        assertEquals("a", "200 a", request("POST", "/bar", null, "{\"id\": 1}", "X-Variant", "a"));
+    }
+
+    @Test
+    public void testManyVariants() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            server.given(GET, "items", query("id", String.valueOf(i))).willRespond(text("item " + i));
+        }
+        server.given(GET, "items").willRespond(text("all"));
+
+        assertEquals("first", "200 item 0", request("GET", "/items?id=0", null, null));
+        assertEquals("last", "200 item 499", request("GET", "/items?id=499", null, null));
+        assertEquals("default", "200 all", request("GET", "/items?id=500", null, null));
+    }
+
+    @Test
+    public void testMethodNotAllowedStays() throws Exception {
+        server.given(POST, "bar", query("a", "1")).willRespond(text("a"));
+
+        assertEquals("method", "405 ", request("GET", "/bar?a=1", null, null));
+    }
+
+    @Test
+    public void testVerifyNamesMatchers() throws Exception {
+        OngoingMocking mocking = server.given(GET, "bar", query("a", "1")).willRespond(text("a"));
+        try {
+            mocking.verify();
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("GET bar [query a = '1']"));
+            return;
+        }
+        throw new AssertionError("no error");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJsonPath() throws Exception {
+        jsonPath("items[0]", "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeJsonPathIndex() throws Exception {
+        jsonPath("$.a[-1]", "1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRegex() throws Exception {
+        headerMatches("Accept", "(");
+    }
+
+    private static Response text(String body) {
+        return new StringResponse(200, "text/plain", body);
+    }
+
+    /**
+     * Sends a request and returns the status code and body separated by a space.
+     */
+    private String request(String method, String path, String accept, String body, String... header)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (accept != null) {
+            connection.setRequestProperty("Accept", accept);
+        }
+        for (int i = 0; i < header.length; i += 2) {
+            connection.setRequestProperty(header[i], header[i + 1]);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                content.write(buffer, 0, length);
+            }
+            in.close();
+        }
+        return status + " " + content.toString("UTF-8");
+    }
+}
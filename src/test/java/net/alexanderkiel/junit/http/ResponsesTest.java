@@ -0,0 +1,191 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Alexander Kiel
+ */
+public class ResponsesTest {
+
+    private static final Response OK = new StringResponse(200, "text/plain", "ok");
+    private static final Response UNAVAILABLE = new EmptyResponse(503);
+    private static final Response ERROR = new EmptyResponse(500);
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testSequence() throws Exception {
+        Responses responses = Responses.sequence(UNAVAILABLE, UNAVAILABLE, OK);
+
+        assertSame("1", UNAVAILABLE, responses.next());
+        assertSame("2", UNAVAILABLE, responses.next());
+        assertSame("3", OK, responses.next());
+        assertSame("4", OK, responses.next());
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        Responses responses = Responses.cycle(OK, ERROR);
+
+        assertSame("1", OK, responses.next());
+        assertSame("2", ERROR, responses.next());
+        assertSame("3", OK, responses.next());
+    }
+
+    @Test
+    public void testWeightedCountsAreExactPerPeriod() throws Exception {
+        Responses responses = Responses.weighted(new int[]{97, 2, 1}, OK, UNAVAILABLE, ERROR);
+
+        int[] counts = new int[3];
+        for (int i = 0; i < 1000; i++) {
+            Response response = responses.next();
+            counts[response == OK ? 0 : response == UNAVAILABLE ? 1 : 2]++;
+        }
+
+        assertEquals("ok", 970, counts[0]);
+        assertEquals("unavailable", 20, counts[1]);
+        assertEquals("error", 10, counts[2]);
+    }
+
+    @Test
+    public void testWeightedOrderIsTheSameInEveryRun() throws Exception {
+        Responses responses1 = Responses.weighted(new int[]{9, 1}, OK, ERROR);
+        Responses responses2 = Responses.weighted(new int[]{9, 1}, OK, ERROR);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame("call " + i, responses1.next(), responses2.next());
+        }
+    }
+
+    @Test
+    public void testConcurrentSequence() throws Exception {
+        Response[] sequence = new Response[101];
+        for (int i = 0; i < 100; i++) {
+            sequence[i] = UNAVAILABLE;
+        }
+        sequence[100] = OK;
+        final Responses responses = Responses.sequence(sequence);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int unavailable = 0;
+                        for (int i = 0; i < 1000; i++) {
+                            if (responses.next() == UNAVAILABLE) {
+                                unavailable++;
+                            }
+                        }
+                        return unavailable;
+                    }
+                }));
+            }
+            int unavailable = 0;
+            for (Future<Integer> future : futures) {
+                unavailable += future.get();
+            }
+            assertEquals("unavailable", 100, unavailable);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySequence() throws Exception {
+        Responses.sequence();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullResponse() throws Exception {
+        Responses.cycle(OK, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWeightCountMismatch() throws Exception {
+        Responses.weighted(new int[]{1}, OK, ERROR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() throws Exception {
+        Responses.weighted(new int[]{2, -1}, OK, ERROR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroTotalWeight() throws Exception {
+        Responses.weighted(new int[]{0, 0}, OK, ERROR);
+    }
+
+    @Test
+    public void testSequenceOverHttp() throws Exception {
+        server.given(GET, "bar").willRespond(Responses.sequence(UNAVAILABLE, UNAVAILABLE, OK));
+
+        assertEquals("1", 503, status());
+        assertEquals("2", 503, status());
+        assertEquals("3", 200, status());
+        assertEquals("4", 200, status());
+    }
+
+    @Test
+    public void testUnauthorisedCallsDontAdvance() throws Exception {
+        server.given(GET, "bar").willRespond(Responses.sequence(UNAVAILABLE, OK)).withBasicAuth("foo", "bar");
+
+        assertEquals("unauthorised", 401, status());
+        assertEquals("1", 503, authorisedStatus());
+        assertEquals("2", 200, authorisedStatus());
+    }
+
+    private int status() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        return connection.getResponseCode();
+    }
+
+    private int authorisedStatus() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        connection.setRequestProperty("Authorization", new BasicAuthToken("foo", "bar").getAuthHeaderValue());
+        return connection.getResponseCode();
+    }
+}
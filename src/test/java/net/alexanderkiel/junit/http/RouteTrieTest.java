@@ -0,0 +1,190 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.HttpMock.Method.PUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Alexander Kiel
+ */
+public class RouteTrieTest {
+
+    private RouteTrie routes;
+    private HttpHandler literal;
+    private HttpHandler parameter;
+    private HttpHandler rest;
+
+    @Before
+    public void setUp() throws Exception {
+        routes = new RouteTrie();
+        literal = new NamedHandler("literal");
+        parameter = new NamedHandler("parameter");
+        rest = new NamedHandler("rest");
+    }
+
+    @Test
+    public void testLiteral() throws Exception {
+        routes.register(GET, "users/me", literal);
+
+        assertSame("handler", literal, routes.find("users/me", 0).getHandler(GET));
+        assertNull("other path", routes.find("users/you", 0));
+        assertNull("prefix", routes.find("users", 0));
+        assertNull("trailing slash", routes.find("users/me/", 0));
+    }
+
+    @Test
+    public void testLiteralWithOffset() throws Exception {
+        routes.register(GET, "bar", literal);
+
+        assertSame("handler", literal, routes.find("/foo/bar", 5).getHandler(GET));
+    }
+
+    @Test
+    public void testEmptyPath() throws Exception {
+        routes.register(GET, "", literal);
+
+        assertSame("handler", literal, routes.find("", 0).getHandler(GET));
+        assertNull("other path", routes.find("bar", 0));
+    }
+
+    @Test
+    public void testParameter() throws Exception {
+        routes.register(GET, "users/{id}/orders", parameter);
+
+        assertSame("42", parameter, routes.find("users/42/orders", 0).getHandler(GET));
+        assertSame("43", parameter, routes.find("users/43/orders", 0).getHandler(GET));
+        assertNull("missing segment", routes.find("users/orders", 0));
+    }
+
+    @Test
+    public void testSegmentWildcard() throws Exception {
+        routes.register(GET, "users/*", parameter);
+
+        assertSame("handler", parameter, routes.find("users/42", 0).getHandler(GET));
+        assertNull("two segments", routes.find("users/42/orders", 0));
+    }
+
+    @Test
+    public void testRestWildcard() throws Exception {
+        routes.register(GET, "files/**", rest);
+
+        assertSame("one segment", rest, routes.find("files/a", 0).getHandler(GET));
+        assertSame("many segments", rest, routes.find("files/a/b/c", 0).getHandler(GET));
+        assertNull("other prefix", routes.find("dirs/a", 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestWildcardInTheMiddle() throws Exception {
+        routes.register(GET, "files/**/foo", rest);
+    }
+
+    @Test
+    public void testPrecedence() throws Exception {
+        routes.register(GET, "users/{id}", parameter);
+        routes.register(GET, "users/me", literal);
+        routes.register(GET, "users/**", rest);
+
+        assertSame("literal", literal, routes.find("users/me", 0).getHandler(GET));
+        assertSame("parameter", parameter, routes.find("users/42", 0).getHandler(GET));
+        assertSame("rest", rest, routes.find("users/42/orders", 0).getHandler(GET));
+    }
+
+    @Test
+    public void testBacktracking() throws Exception {
+        routes.register(GET, "users/me/profile", literal);
+        routes.register(GET, "users/{id}/orders", parameter);
+
+        assertSame("parameter", parameter, routes.find("users/me/orders", 0).getHandler(GET));
+    }
+
+    @Test
+    public void testBacktrackingByMethod() throws Exception {
+        routes.register(GET, "users/{id}", parameter);
+        routes.register(POST, "users/new", literal);
+
+        assertSame("parameter", parameter, routes.find("users/new", 0, GET).getHandler(GET));
+        assertSame("literal", literal, routes.find("users/new", 0, POST).getHandler(POST));
+    }
+
+    @Test
+    public void testNoRouteWithMethod() throws Exception {
+        routes.register(POST, "users/new", literal);
+        routes.register(PUT, "users/{id}", parameter);
+
+        RouteTrie.Route route = routes.find("users/new", 0, GET);
+        assertSame("most specific route", literal, route.getHandler(POST));
+        assertNull("no handler", route.getHandler(GET));
+    }
+
+    @Test
+    public void testMethods() throws Exception {
+        routes.register(GET, "users", literal);
+        routes.register(POST, "users", parameter);
+
+        RouteTrie.Route route = routes.find("users", 0);
+        assertSame("get", literal, route.getHandler(GET));
+        assertSame("post", parameter, route.getHandler(POST));
+        assertNull("put", route.getHandler(HttpMock.Method.PUT));
+    }
+
+    @Test
+    public void testPattern() throws Exception {
+        routes.register(GET, "users/{id}/orders", parameter);
+        routes.register(GET, "users/{id}", parameter);
+
+        assertEquals("pattern", "users/{id}", routes.find("users/42", 0).getPattern());
+    }
+
+    @Test
+    public void testManyRoutes() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            routes.register(GET, "resources/" + i, new NamedHandler(Integer.toString(i)));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("handler " + i, Integer.toString(i), routes.find("resources/" + i, 0).getHandler(GET)
+                    .toString());
+        }
+    }
+
+    private static class NamedHandler implements HttpHandler {
+
+        private final String name;
+
+        private NamedHandler(String name) {
+            this.name = name;
+        }
+
+        public void handle(HttpExchange httpExchange) {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class ServerLifecycleTest {
+
+    @Test
+    public void testNoShutdownMetricsBeforeStop() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        server.start();
+        try {
+            assertNull("last shutdown", server.getMetrics().getLastShutdown());
+            assertEquals("in flight", 0, server.getMetrics().getInFlight());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStopWithoutRequests() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        server.start();
+        server.stop();
+
+        ShutdownMetrics shutdown = server.getMetrics().getLastShutdown();
+        assertNotNull("last shutdown", shutdown);
+        assertEquals("abandoned", 0, shutdown.getAbandonedExchanges());
+        assertTrue("executor terminated", shutdown.isExecutorTerminated());
+        assertTrue("drain " + shutdown.getDrainNanos() + " ns", shutdown.getDrainNanos() < SECONDS.toNanos(1));
+        assertTrue("shutdown", shutdown.getShutdownNanos() >= shutdown.getDrainNanos());
+    }
+
+    @Test
+    public void testStopWaitsForDelayedResponse() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "late"))
+                .withLatency(Latency.fixed(300, MILLISECONDS));
+        server.start();
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> response = request(client, server);
+            mocking.awaitCalled(1, 5, SECONDS);
+
+            assertEquals("in flight", 1, server.getMetrics().getInFlight());
+
+            server.stop();
+
+            assertEquals("body", "late", response.get(5, SECONDS));
+            ShutdownMetrics shutdown = server.getMetrics().getLastShutdown();
+            assertEquals("abandoned", 0, shutdown.getAbandonedExchanges());
+            assertTrue("executor terminated", shutdown.isExecutorTerminated());
+            assertTrue("drain " + shutdown.getDrainNanos() + " ns", shutdown.getDrainNanos() > 0);
+        } finally {
+            if (server.isRunning()) {
+                server.stop();
+            }
+            client.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStopAbandonsExchangesAfterDrainTimeout() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "late"))
+                .withLatency(Latency.fixed(10, SECONDS));
+        server.setDrainTimeout(100, MILLISECONDS);
+        server.start();
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            request(client, server);
+            mocking.awaitCalled(1, 5, SECONDS);
+            long start = System.nanoTime();
+
+            server.stop();
+
+            long millis = NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("stopped after " + millis + " ms", millis < 5000);
+            ShutdownMetrics shutdown = server.getMetrics().getLastShutdown();
+            assertEquals("abandoned", 1, shutdown.getAbandonedExchanges());
+            assertTrue("drain " + shutdown.getDrainNanos() + " ns",
+                    shutdown.getDrainNanos() >= MILLISECONDS.toNanos(100));
+            JournalEntry entry = server.getRequestJournal().getEntries().get(0);
+            assertTrue("journal entry completed", entry.getDurationNanos() >= 0);
+            assertEquals("in flight", 0, server.getMetrics().getInFlight());
+        } finally {
+            if (server.isRunning()) {
+                server.stop();
+            }
+            client.shutdownNow();
+            client.awaitTermination(5, SECONDS);
+        }
+    }
+
+    @Test
+    public void testStopTerminatesExecutorThreads() throws Exception {
+        RecordingStrategy strategy = new RecordingStrategy();
+        for (int i = 0; i < 3; i++) {
+            HttpMockServer server = HttpMock.create("localhost", 0, "/foo", strategy);
+            server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "baz"));
+            server.start();
+            try {
+                assertEquals("body", "baz", get(new URL(server.getBaseUri() + "/bar")));
+                assertFalse("threads started", strategy.threads.isEmpty());
+            } finally {
+                server.stop();
+            }
+
+            for (Thread thread : strategy.threads) {
+                thread.join(1000);
+                assertFalse("alive " + thread, thread.isAlive());
+            }
+            strategy.threads.clear();
+            assertTrue("executor terminated", server.getMetrics().getLastShutdown().isExecutorTerminated());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDrainTimeout() throws Exception {
+        HttpMock.create("localhost", 0, "/foo").setDrainTimeout(-1, SECONDS);
+    }
+
+    @Test
+    public void testZeroDrainTimeoutDoesntWait() throws Exception {
+        HttpMockServer server = HttpMock.create("localhost", 0, "/foo");
+        OngoingMocking mocking = server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "late"))
+                .withLatency(Latency.fixed(10, SECONDS));
+        server.setDrainTimeout(0, SECONDS);
+        server.start();
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            request(client, server);
+            mocking.awaitCalled(1, 5, SECONDS);
+
+            server.stop();
+
+            ShutdownMetrics shutdown = server.getMetrics().getLastShutdown();
+            assertTrue("abandoned", shutdown.getAbandonedExchanges() >= 1);
+            assertTrue("drain " + shutdown.getDrainNanos() + " ns", shutdown.getDrainNanos() < SECONDS.toNanos(1));
+        } finally {
+            if (server.isRunning()) {
+                server.stop();
+            }
+            client.shutdownNow();
+            client.awaitTermination(5, SECONDS);
+        }
+    }
+
+    private static Future<String> request(ExecutorService client, HttpMockServer server) throws Exception {
+        final URL url = new URL(server.getBaseUri() + "/bar");
+        return client.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return get(url);
+            }
+        });
+    }
+
+    /**
+     * Creates fixed thread pools and remembers their threads.
+     */
+    private static class RecordingStrategy implements ExecutorStrategy {
+
+        private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+        public ExecutorService newExecutor() {
+            return Executors.newFixedThreadPool(2, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable);
+                    threads.add(thread);
+                    return thread;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class ServerMetricsTest {
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testRouteMetrics() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"));
+        server.given(GET, "baz").willRespond(new StringResponse(200, "text/plain", "baz"));
+
+        for (int i = 0; i < 5; i++) {
+            HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar"));
+        }
+
+        RouteMetrics bar = awaitBodyWrites(GET, "bar", 5);
+        assertEquals("call count", 5, bar.getCallCount());
+        assertEquals("queue wait", 5, bar.getQueueWait().getCount());
+        assertEquals("handling", 5, bar.getHandling().getCount());
+        assertEquals("routes", 2, server.getMetrics().getRoutes().size());
+        assertEquals("baz", 0, server.getMetrics().getRoute(GET, "baz").getCallCount());
+    }
+
+    @Test
+    public void testServerQueueWaitCountsUnknownPaths() throws Exception {
+        try {
+            HttpMockServerTest.get(new URL(server.getBaseUri() + "/unknown"));
+        } catch (FileNotFoundException expected) {
+            // 404
+        }
+
+        assertTrue("queue wait", server.getMetrics().getQueueWait().getCount() >= 1);
+    }
+
+    @Test
+    public void testHandlingIncludesLatency() throws Exception {
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "bar"))
+                .withLatency(Latency.fixed(50, MILLISECONDS));
+
+        HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar"));
+
+        RouteMetrics bar = awaitBodyWrites(GET, "bar", 1);
+        assertTrue("handling", bar.getHandling().getMaxNanos() >= MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testUnknownRoute() throws Exception {
+        assertNull("route", server.getMetrics().getRoute(GET, "bar"));
+    }
+
+    /**
+     * The body write is recorded after the response is complete, so the client may see the response a moment
+     * earlier.
+     */
+    private RouteMetrics awaitBodyWrites(HttpMock.Method method, String path, long count) throws Exception {
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(1000);
+        RouteMetrics route = server.getMetrics().getRoute(method, path);
+        while (route.getBodyWrite().getCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+            route = server.getMetrics().getRoute(method, path);
+        }
+        assertEquals("body writes", count, route.getBodyWrite().getCount());
+        return route;
+    }
+}
@@ -0,0 +1,59 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Alexander Kiel
+ */
+public class StringResponseTest {
+
+    @Test
+    public void testBodyLengthIsInBytes() throws Exception {
+        StringResponse response = new StringResponse(200, "text/plain", "d\u00fcsseldorf \u20ac");
+
+        assertEquals("body length", 15, response.getBodyLength());
+    }
+
+    @Test
+    public void testBodyBytesAreEncodedOnce() throws Exception {
+        StringResponse response = new StringResponse(200, "text/plain", "foo");
+
+        assertSame("same bytes", response.getBodyBytes(), response.getBodyBytes());
+    }
+
+    @Test
+    public void testBodyInputStream() throws Exception {
+        StringResponse response = new StringResponse(200, "text/plain", "\u00fc");
+
+        InputStream in = response.getBodyInputStream();
+        assertEquals("first byte", 0xC3, in.read());
+        assertEquals("second byte", 0xBC, in.read());
+        assertEquals("end of stream", -1, in.read());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullBody() throws Exception {
+        new StringResponse(200, "text/plain", null);
+    }
+}
@@ -0,0 +1,227 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class StubFileTest {
+
+    private HttpMockServer server;
+    private File directory;
+    private File stubFile;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("/foo");
+        server.start();
+        directory = Files.createTempDirectory("stubs").toFile();
+        stubFile = new File(directory, "stubs.json");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testInlineBody() throws Exception {
+        write(stubFile, "{\"stubs\": [{\"method\": \"GET\", \"path\": \"users/{id}\", \"body\": \"user\", " +
+                "\"headers\": {\"X-Stub\": [\"a\", \"b\"]}}]}");
+        server.loadStubs(stubFile);
+
+        HttpURLConnection connection = open("/users/4711");
+
+        assertEquals("status", 200, connection.getResponseCode());
+        assertEquals("content type", "text/plain", connection.getContentType());
+        assertEquals("body", "user", HttpMockServerTest.get(new URL(server.getBaseUri() + "/users/4711")));
+    }
+
+    @Test
+    public void testBodyFile() throws Exception {
+        write(new File(directory, "body.json"), "{\"id\": 1}");
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"contentType\": \"application/json\", " +
+                "\"bodyFile\": \"body.json\"}]");
+        server.loadStubs(stubFile);
+
+        assertEquals("body", "{\"id\": 1}", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+        assertEquals("content type", "application/json", open("/bar").getContentType());
+    }
+
+    @Test
+    public void testEmptyResponse() throws Exception {
+        write(stubFile, "[{\"method\": \"DELETE\", \"path\": \"bar\", \"status\": 204}]");
+        server.loadStubs(stubFile);
+
+        HttpURLConnection connection = open("/bar");
+        connection.setRequestMethod("DELETE");
+
+        assertEquals("status", 204, connection.getResponseCode());
+    }
+
+    @Test
+    public void testRequestMatchers() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"users\", \"body\": \"page 1\"}, " +
+                "{\"method\": \"GET\", \"path\": \"users\", \"request\": {\"query\": {\"page\": \"2\"}}, " +
+                "\"body\": \"page 2\"}]");
+        server.loadStubs(stubFile);
+
+        assertEquals("page 1", "page 1", HttpMockServerTest.get(new URL(server.getBaseUri() + "/users")));
+        assertEquals("page 2", "page 2", HttpMockServerTest.get(new URL(server.getBaseUri() + "/users?page=2")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRequestMatcher() throws Exception {
+        write(stubFile, "[{\"method\": \"POST\", \"path\": \"bar\", \"request\": {\"json\": {\"id\": \"1\"}}}]");
+        server.loadStubs(stubFile);
+    }
+
+    @Test
+    public void testMockingsTakePrecedence() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"stub\"}]");
+        server.loadStubs(stubFile);
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "mocking"));
+
+        assertEquals("body", "mocking", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+    }
+
+    @Test
+    public void testReloadReplacesStubs() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"old\"}]");
+        server.loadStubs(stubFile);
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"baz\", \"body\": \"new\"}]");
+        server.loadStubs(stubFile);
+
+        assertEquals("old", 404, open("/bar").getResponseCode());
+        assertEquals("new", 200, open("/baz").getResponseCode());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingBodyFile() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"bodyFile\": \"missing.json\"}]");
+        server.loadStubs(stubFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownMethod() throws Exception {
+        write(stubFile, "[{\"method\": \"FETCH\", \"path\": \"bar\"}]");
+        server.loadStubs(stubFile);
+    }
+
+    @Test
+    public void testInvalidFileKeepsStubs() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"old\"}]");
+        server.loadStubs(stubFile);
+        write(stubFile, "[{\"method\": \"GET\"");
+        try {
+            server.loadStubs(stubFile);
+        } catch (IOException expected) {
+            assertEquals("old", "old", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+            return;
+        }
+        throw new AssertionError("no error");
+    }
+
+    @Test
+    public void testHotReload() throws Exception {
+        write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"old\"}]");
+        server.watchStubs(stubFile);
+        assertEquals("old", "old", HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar")));
+
+        File next = new File(directory, "next.tmp");
+        write(next, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"new\"}]");
+        Files.move(next.toPath(), stubFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        long deadline = System.nanoTime() + SECONDS.toNanos(30);
+        String body = "old";
+        while (!"new".equals(body) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            body = HttpMockServerTest.get(new URL(server.getBaseUri() + "/bar"));
+        }
+        assertEquals("new", "new", body);
+    }
+
+    @Test
+    public void testCloseWaitsForRunningReload() throws Exception {
+        write(stubFile, "[]");
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean finished = new AtomicBoolean();
+        FileWatcher watcher = new FileWatcher(stubFile, new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.set(true);
+            }
+        });
+        try {
+            write(stubFile, "[{\"method\": \"GET\", \"path\": \"bar\", \"body\": \"new\"}]");
+            assertTrue("started", started.await(30, SECONDS));
+        } finally {
+            watcher.close();
+        }
+        assertTrue("finished", finished.get());
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL(server.getBaseUri() + path).openConnection();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.awaitCompleted;
+import static net.alexanderkiel.junit.http.HttpMockServerTest.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alexander Kiel
+ */
+public class ThrottleTest {
+
+    private HttpMockServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpMock.create("localhost", 0, "/foo", ExecutorStrategies.fixedThreadPool(2));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        Throttle throttle = new Throttle();
+
+        assertEquals("wait", 0, throttle.reserve(1000000));
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+        Throttle throttle = new Throttle();
+        throttle.setBytesPerSecond(1000);
+
+        long first = throttle.reserve(100);
+        long second = throttle.reserve(100);
+
+        assertTrue("first waits about 100 ms", first > MILLISECONDS.toNanos(90) && first <= MILLISECONDS.toNanos(100));
+        assertTrue("second waits about 200 ms", second > MILLISECONDS.toNanos(190) &&
+                second <= MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testChunkSize() throws Exception {
+        Throttle throttle = new Throttle();
+        throttle.setBytesPerSecond(256 * 1024);
+
+        assertEquals("chunk size", 256 * 1024 / 20, throttle.chunkSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBandwidth() throws Exception {
+        new Throttle().setBytesPerSecond(-1);
+    }
+
+    @Test
+    public void testThrottledResponse() throws Exception {
+        server.given(GET, "bar").willRespond(GeneratedResponse.fixed(200, "text/plain", 64 * 1024, (byte) 'x'))
+                .withBandwidth(256 * 1024);
+
+        long millis = millis(new Callable<String>() {
+            public String call() throws Exception {
+                return get(new URL(server.getBaseUri() + "/bar"));
+            }
+        });
+
+        assertTrue("about 250 ms but was " + millis, millis >= 200 && millis < 2000);
+    }
+
+    @Test
+    public void testThrottledRequest() throws Exception {
+        final StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 32 * 1024; i++) {
+            payload.append('x');
+        }
+        OngoingMocking mocking = server.given(POST, "bar", "text/plain", payload.toString())
+                .willRespond(new EmptyResponse(204)).withBandwidth(128 * 1024);
+
+        long millis = millis(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return post(payload.toString());
+            }
+        });
+
+        assertTrue("about 250 ms but was " + millis, millis >= 200 && millis < 2000);
+        mocking.verify();
+        JournalEntry entry = awaitCompleted(server.getRequestJournal().getEntries().get(0));
+        assertEquals("body length", 32 * 1024, entry.getBodyLength());
+        assertTrue("duration " + entry.getDurationNanos(), entry.getDurationNanos() >= MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testAbortedThrottledResponseClosesBody() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        server.given(GET, "bar").willRespond(new Response() {
+            public int getStatusCode() {
+                return 200;
+            }
+
+            public Map<String, List<String>> getHeaders() {
+                return Collections.emptyMap();
+            }
+
+            public String getContentType() {
+                return "text/plain";
+            }
+
+            public boolean hasBody() {
+                return true;
+            }
+
+            public long getBodyLength() {
+                return 1024 * 1024;
+            }
+
+            public InputStream getBodyInputStream() {
+                return new InputStream() {
+                    private int remaining = 1024 * 1024;
+
+                    @Override
+                    public int read() {
+                        return remaining-- > 0 ? 'x' : -1;
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                };
+            }
+        }).withBandwidth(64 * 1024);
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        assertEquals("first byte", 'x', connection.getInputStream().read());
+
+        connection.disconnect();
+
+        assertTrue("body closed", closed.await(10, SECONDS));
+    }
+
+    /**
+     * Eight concurrent requests share the bandwidth of the server, so they take eight times as long as one. With two
+     * worker threads they would take even longer if waiting occupied a worker.
+     */
+    @Test
+    public void testServerBandwidthIsShared() throws Exception {
+        server.setBandwidth(256 * 1024);
+        server.given(GET, "bar").willRespond(GeneratedResponse.fixed(200, "text/plain", 16 * 1024, (byte) 'x'));
+        final URL url = new URL(server.getBaseUri() + "/bar");
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            long millis = millis(new Callable<Void>() {
+                public Void call() throws Exception {
+                    List<Future<String>> futures = new ArrayList<Future<String>>();
+                    for (int i = 0; i < 8; i++) {
+                        futures.add(executor.submit(new Callable<String>() {
+                            public String call() throws Exception {
+                                return get(url);
+                            }
+                        }));
+                    }
+                    for (Future<String> future : futures) {
+                        assertEquals("body length", 16 * 1024, future.get().length());
+                    }
+                    return null;
+                }
+            });
+
+            assertTrue("about 500 ms but was " + millis, millis >= 400 && millis < 4000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long millis(Callable<?> callable) throws Exception {
+        long start = System.nanoTime();
+        callable.call();
+        return NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private int post(String payload) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUri() + "/bar").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "text/plain");
+        OutputStream out = connection.getOutputStream();
+        out.write(payload.getBytes("UTF-8"));
+        out.close();
+        return connection.getResponseCode();
+    }
+}
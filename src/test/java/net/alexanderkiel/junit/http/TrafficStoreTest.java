@@ -0,0 +1,220 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+
+import static net.alexanderkiel.junit.http.HttpMock.Method.GET;
+import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alexander Kiel
+ */
+public class TrafficStoreTest {
+
+    private HttpMockServer backend;
+    private HttpMockServer server;
+    private File store;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = HttpMock.create("/foo");
+        backend.given(GET, "bar").willRespond(Responses.sequence(new StringResponse(200, "text/plain", "first"),
+                new StringResponse(200, "text/plain", "second")));
+        backend.given(POST, "baz", "text/plain", "hello").willRespond(new StringResponse(201, "text/plain",
+                "created"));
+        backend.given(GET, "large").willRespond(GeneratedResponse.pattern(200, "application/octet-stream", 100000,
+                "0123456789".getBytes("US-ASCII")));
+        backend.start();
+        store = File.createTempFile("traffic", ".hmts");
+        if (!store.delete()) {
+            throw new IOException("Can't delete " + store);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+        backend.stop();
+        if (!store.delete()) {
+            store.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        record();
+
+        assertEquals("first", "200 first", get("/bar", null));
+        assertEquals("second", "200 second", get("/bar", null));
+        assertEquals("last repeats", "200 second", get("/bar", null));
+        assertEquals("post", "201 created", post("/baz", "hello"));
+        assertEquals("other body", 404, status(post("/baz", "bye")));
+        assertEquals("unknown", 404, status(get("/unknown", null)));
+    }
+
+    @Test
+    public void testReplayServesRanges() throws Exception {
+        record();
+
+        assertEquals("range", "206 3456", get("/large", "bytes=99993-99996"));
+        assertEquals("full length", 100004, get("/large", null).length());
+    }
+
+    @Test
+    public void testMockingsTakePrecedence() throws Exception {
+        record();
+        server.given(GET, "bar").willRespond(new StringResponse(200, "text/plain", "mocked"));
+
+        assertEquals("mocked", "200 mocked", get("/bar", null));
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnored() throws Exception {
+        record();
+        server.stop();
+        OutputStream out = new FileOutputStream(store, true);
+        try {
+            out.write(new byte[]{0, 0, 1, 0, 42});
+        } finally {
+            out.close();
+        }
+        server = HttpMock.create("/foo");
+        server.replay(store);
+        server.start();
+
+        assertEquals("post", "201 created", post("/baz", "hello"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRecordLength() throws Exception {
+        OutputStream out = new FileOutputStream(store);
+        try {
+            out.write(TrafficStore.fileHeader());
+            out.write(new byte[]{-1, -1, -1, -4, 0, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+        HttpMock.create("/foo").replay(store);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidStore() throws Exception {
+        OutputStream out = new FileOutputStream(store);
+        try {
+            out.write("no traffic store".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        HttpMock.create("/foo").replay(store);
+    }
+
+    /**
+     * Records the traffic of all test requests and starts a server which replays it without the backend.
+     */
+    private void record() throws Exception {
+        HttpMockServer recorder = HttpMock.create("/foo");
+        recorder.record(URI.create("http://localhost:" + backend.getPort()), store);
+        recorder.start();
+        try {
+            URI baseUri = recorder.getBaseUri();
+            assertEquals("record first", "200 first", get(baseUri, "/bar", null));
+            assertEquals("record second", "200 second", get(baseUri, "/bar", null));
+            assertEquals("record post", "201 created", post(baseUri, "/baz", "hello"));
+            get(baseUri, "/large", null);
+        } finally {
+            recorder.stop();
+        }
+        backend.stop();
+        backend = HttpMock.create("/foo");
+        backend.start();
+
+        server = HttpMock.create("/foo");
+        server.replay(store);
+        server.start();
+    }
+
+    private String get(String path, String range) throws Exception {
+        return get(server.getBaseUri(), path, range);
+    }
+
+    private String post(String path, String body) throws Exception {
+        return post(server.getBaseUri(), path, body);
+    }
+
+    private static String get(URI baseUri, String path, String range) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUri + path).openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        return read(connection);
+    }
+
+    private static String post(URI baseUri, String path, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUri + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "text/plain");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return read(connection);
+    }
+
+    /**
+     * Returns the status code and the body separated by a space.
+     */
+    private static String read(HttpURLConnection connection) throws Exception {
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                int length;
+                while ((length = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status + " " + out.toString("UTF-8");
+    }
+
+    private static int status(String response) {
+        return Integer.parseInt(response.substring(0, 3));
+    }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ * Copyright 2010 Alexander Kiel                                              *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package net.alexanderkiel.junit.http;
+
+import org.junit.Test;
+
+import static net.alexanderkiel.junit.http.VerificationMode.atLeast;
+import static net.alexanderkiel.junit.http.VerificationMode.atMost;
+import static net.alexanderkiel.junit.http.VerificationMode.never;
+import static net.alexanderkiel.junit.http.VerificationMode.times;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Alexander Kiel
+ */
+public class VerificationModeTest {
+
+    @Test
+    public void testTimes() throws Exception {
+        assertFalse("2", times(3).isSatisfiedBy(2));
+        assertTrue("3", times(3).isSatisfiedBy(3));
+        assertFalse("4", times(3).isSatisfiedBy(4));
+    }
+
+    @Test
+    public void testNever() throws Exception {
+        assertTrue("0", never().isSatisfiedBy(0));
+        assertFalse("1", never().isSatisfiedBy(1));
+    }
+
+    @Test
+    public void testAtLeast() throws Exception {
+        assertFalse("1", atLeast(2).isSatisfiedBy(1));
+        assertTrue("2", atLeast(2).isSatisfiedBy(2));
+        assertTrue("max", atLeast(2).isSatisfiedBy(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAtMost() throws Exception {
+        assertTrue("0", atMost(2).isSatisfiedBy(0));
+        assertTrue("2", atMost(2).isSatisfiedBy(2));
+        assertFalse("3", atMost(2).isSatisfiedBy(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCount() throws Exception {
+        times(-1);
+    }
+
+    @Test
+    public void testVerifyMessage() throws Exception {
+        try {
+            times(3).verify("GET /foo", 2);
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("assertion message", "request GET /foo called exactly 3 times but was called 2 times",
+                    e.getMessage());
+        }
+    }
+}
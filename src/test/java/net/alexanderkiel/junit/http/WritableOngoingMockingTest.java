@@ -26,6 +26,8 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import static net.alexanderkiel.junit.http.HttpMock.Method.POST;
+import static net.alexanderkiel.junit.http.VerificationMode.never;
+import static net.alexanderkiel.junit.http.VerificationMode.times;
 import static net.alexanderkiel.junit.http.WritableOngoingMocking.extractContentType;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -110,4 +112,20 @@ public class WritableOngoingMockingTest {
             assertEquals("assertion message", "request POST /foo called", e.getMessage());
         }
     }
+
+    @Test
+    public void testVerifyTimesWithoutRequestCalled() throws Exception {
+        try {
+            mocking.verify(times(2));
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("assertion message", "request POST /foo called exactly 2 times but was called 0 times",
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    public void testVerifyNeverWithoutRequestCalled() throws Exception {
+        mocking.verify(never());
+    }
 }